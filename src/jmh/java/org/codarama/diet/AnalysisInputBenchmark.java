@@ -0,0 +1,122 @@
+package org.codarama.diet;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.codarama.diet.api.IndexedMinimizer;
+import org.codarama.diet.api.reporting.MinimizationReport;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ReachableDependencies;
+import org.codarama.diet.packaging.MinimizedJarWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Wall time of minimizing a module from its sources (the Diet engine) next to minimizing it from its compiled classes
+ * (see {@link AnalysisInput#CLASSES}).
+ * </p>
+ * <p>
+ * By default the module is this project, against the jars of the benchmark class path. Point it at a large module
+ * to see the difference that matters :
+ * </p>
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="AnalysisInputBenchmark -p sources=../app/src/main/java \
+ *     -p classes=../app/target/classes -p classpath=$(cd ../app; mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+ * </pre>
+ * <p>
+ * The class index cache is deliberately not used, so both modes read every dependency jar on every invocation.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalysisInputBenchmark {
+
+    @Param({"src/main/java"})
+    private String sources;
+
+    @Param({"target/classes"})
+    private String classes;
+
+    // the dependencies, separated like a class path, the jars of the benchmark class path when empty
+    @Param({""})
+    private String classpath;
+
+    private Set<File> dependencies;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void resolveDependencies() throws IOException {
+        dependencies = new LinkedHashSet<File>();
+        final String path = classpath.isEmpty() ? System.getProperty("java.class.path") : classpath;
+        for (String dependency : path.split(File.pathSeparator)) {
+            if (!dependency.isEmpty() && (!classpath.isEmpty() || dependency.endsWith(".jar"))) {
+                dependencies.add(new File(dependency));
+            }
+        }
+
+        output = File.createTempFile("diet-analysis-benchmark", "");
+        output.delete();
+        output.mkdirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+        final File[] files = output.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        output.delete();
+    }
+
+    @Benchmark
+    public int minimizeSources() throws IOException {
+        final MinimizationReport report = IndexedMinimizer.sources(sources).libs(dependencies)
+                .output(output.getPath()).minimize();
+        try {
+            return report.getJar().size();
+        } finally {
+            report.getJar().close();
+        }
+    }
+
+    @Benchmark
+    public int minimizeClasses() throws IOException {
+        final Map<File, JarIndex> indexes = Maps.newLinkedHashMap();
+        for (File dependency : dependencies) {
+            indexes.put(dependency, JarIndex.build(dependency));
+        }
+
+        final Set<String> roots = Sets.newHashSet();
+        final JarIndex project = JarIndex.build(new File(classes));
+        for (String className : project.classes()) {
+            roots.addAll(project.referencesOf(className));
+        }
+
+        return MinimizedJarWriter.write(new ReachableDependencies(indexes).classesFrom(roots),
+                new File(output, "classes-minimized.jar"));
+    }
+}
@@ -0,0 +1,127 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Cost of indexing the entry names of an archive with {@link EntryNames}, next to the hash set of decoded names the
+ * packagers used before, and of looking names up in either.
+ * </p>
+ * <p>
+ * The entries are synthetic central directory records, shaped like the ones of a WAR, so only the index itself is
+ * measured. The point is the allocation, run with the GC profiler to see the bytes allocated per operation :
+ * </p>
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc EntryNamesBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryNamesBenchmark {
+
+    // a WAR holds one library for every LIBRARY_RATIO entries
+    private static final int LIBRARY_RATIO = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    private int entryCount;
+
+    private List<ZipArchiveEntry> entries;
+    private EntryNames names;
+    private Set<String> nameSet;
+
+    @Setup(Level.Trial)
+    public void generateEntries() {
+        entries = Lists.newArrayListWithCapacity(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            final ZipArchiveEntry entry = new ZipArchiveEntry();
+            entry.flags = ZipArchiveEntry.FLAG_UTF8;
+            entry.rawName = ZipArchiveEntry.encodeName(i % LIBRARY_RATIO == 0
+                    ? "WEB-INF/lib/library-" + i + ".jar"
+                    : "WEB-INF/classes/org/codarama/benchmark/package" + i % 100 + "/Entry" + i + ".class");
+            entries.add(entry);
+        }
+        names = EntryNames.of(entries);
+        nameSet = hashSet(entries);
+    }
+
+    @Benchmark
+    public EntryNames indexNames() {
+        return EntryNames.of(entries);
+    }
+
+    @Benchmark
+    public Set<String> indexNamesInHashSet() {
+        return hashSet(entries);
+    }
+
+    @Benchmark
+    public int lookUpNames() {
+        int found = 0;
+        for (ZipArchiveEntry entry : entries) {
+            if (names.positionOf(entry) >= 0) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int lookUpNamesInHashSet() {
+        int found = 0;
+        for (ZipArchiveEntry entry : entries) {
+            if (nameSet.contains(new String(entry.rawName, Charsets.UTF_8))) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public BitSet findLibraries() {
+        return names.positionsWithPrefix("WEB-INF/lib/");
+    }
+
+    @Benchmark
+    public BitSet findLibrariesInHashSet() {
+        // what a hash set offers for a prefix, a pass over every name
+        final BitSet libraries = new BitSet(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            if (new String(entries.get(i).rawName, Charsets.UTF_8).startsWith("WEB-INF/lib/")) {
+                libraries.set(i);
+            }
+        }
+        return libraries;
+    }
+
+    private static Set<String> hashSet(List<ZipArchiveEntry> entries) {
+        // names are decoded from the central directory, as ZipArchiveEntry#getName() does
+        final Set<String> result = new HashSet<String>();
+        for (ZipArchiveEntry entry : entries) {
+            result.add(new String(entry.rawName, Charsets.UTF_8));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>
+ * Throughput of the packaging hot path - {@link JarArtifactPackager} and {@link WarArtifactPackager} - over synthetic
+ * archives.
+ * </p>
+ * <p>
+ * The archives are generated once per trial in a temporary directory, so no network and no real project is needed.
+ * Run with the GC profiler to see the allocation rate next to the throughput :
+ * </p>
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc PackagingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackagingBenchmark {
+
+    // a WAR holds one library for every LIBRARY_RATIO entries
+    private static final int LIBRARY_RATIO = 10;
+
+    @Param({"1000", "10000"})
+    private int entryCount;
+
+    @Param({"512", "8192"})
+    private int entrySize;
+
+    // the share of every entry that compresses well, 0 makes entries of random bytes only
+    @Param({"0.0", "0.5", "0.9"})
+    private double compressibility;
+
+    // keep copies entries as they are, anything else compresses them on all processors
+    @Param({"keep", "fast"})
+    private String compression;
+
+    private File directory;
+    private File minimizedJar;
+    private Artifact jar;
+    private Artifact war;
+    private CompressionPolicy policy;
+
+    @Setup(Level.Trial)
+    public void generateArchives() throws IOException {
+        directory = File.createTempFile("diet-packaging-benchmark", "");
+        directory.delete();
+        directory.mkdirs();
+
+        policy = new CompressionPolicy(Compression.parse(compression), ImmutableMap.<String, Compression>of(),
+                Runtime.getRuntime().availableProcessors());
+
+        final Random random = new Random(42);
+        minimizedJar = write(new File(directory, "minimized.jar"), "org/codarama/benchmark/Minimized", ".class",
+                entryCount / 2, random);
+        jar = ZipFixtures.artifact(write(new File(directory, "app.jar"), "org/codarama/benchmark/Entry", ".class",
+                entryCount, random));
+        war = ZipFixtures.artifact(writeWar(new File(directory, "app.war"), random));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchives() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public File packageJar() throws IOException {
+        final JarFile minimized = new JarFile(minimizedJar);
+        try {
+            return new JarArtifactPackager(policy).packageArtifact(jar, minimized);
+        } finally {
+            minimized.close();
+        }
+    }
+
+    @Benchmark
+    public File packageWar() throws IOException {
+        final JarFile minimized = new JarFile(minimizedJar);
+        try {
+            return new WarArtifactPackager(policy).packageArtifact(war, minimized);
+        } finally {
+            minimized.close();
+        }
+    }
+
+    private File writeWar(File file, Random random) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            final byte[] body = new byte[entrySize];
+            for (int i = 0; i < entryCount; i++) {
+                final String name = i % LIBRARY_RATIO == 0
+                        ? "WEB-INF/lib/library-" + i + ".jar"
+                        : "WEB-INF/classes/org/codarama/benchmark/Entry" + i + ".class";
+                out.putNextEntry(new ZipEntry(name));
+                out.write(fill(body, random));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File write(File file, String prefix, String suffix, int count, Random random) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            final byte[] body = new byte[entrySize];
+            for (int i = 0; i < count; i++) {
+                out.putNextEntry(new ZipEntry(prefix + i + suffix));
+                out.write(fill(body, random));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private byte[] fill(byte[] body, Random random) {
+        // random bytes up front, a repeating pattern after them
+        final int randomLength = (int) (body.length * (1 - compressibility));
+        for (int i = 0; i < body.length; i++) {
+            body[i] = i < randomLength ? (byte) random.nextInt() : (byte) (i % 16);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,296 @@
+package org.codarama.diet;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.DependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionResult;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.JarIndexCache;
+import org.codarama.diet.index.SessionDependencyIndex;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.eclipse.aether.util.artifact.JavaScopes;
+import org.eclipse.aether.util.filter.DependencyFilterUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * What the Diet goals have in common - resolving the dependencies of the project, indexing them and finding the
+ * classes the project starts from.
+ * </p>
+ */
+public abstract class AbstractDietMojo extends AbstractMojo {
+
+    // the phases reported in diet-metrics.json
+    protected static final String PHASE_RESOLVE = "resolve";
+    protected static final String PHASE_INDEX = "index";
+
+    protected static final String BYTECODE_MINIMIZED_JAR = "diet-minimized.jar";
+
+    @Parameter(defaultValue = "${settings.localRepository}", property = "libs", required = true)
+    protected String pathToLocalRepo;
+
+    // only scan the local repository when Maven resolves no dependencies at all, and if asked to
+    @Parameter(defaultValue = "false", property = "scanLocalRepository", required = false)
+    protected boolean scanLocalRepository;
+
+    @Parameter(defaultValue = "10000", property = "localRepositoryMaxFiles", required = false)
+    private int localRepositoryMaxFiles;
+
+    // in megabytes
+    @Parameter(defaultValue = "2048", property = "localRepositoryMaxSize", required = false)
+    private long localRepositoryMaxSize;
+
+    @Parameter(property = "forceInclude", required = false)
+    protected String[] forceInclude;
+
+    @Parameter(defaultValue = "${project.build.directory}", property = "target", required = false)
+    protected String target;
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", property = "classes", required = false)
+    protected String classes;
+
+    @Parameter(defaultValue = "false", property = "analyzeArtifact", required = false)
+    protected boolean analyzeArtifact;
+
+    @Parameter(defaultValue = "${settings.localRepository}/.diet-index", property = "indexCache", required = false)
+    private String indexCache;
+
+    // in megabytes
+    @Parameter(defaultValue = "256", property = "indexCacheSize", required = false)
+    private int indexCacheSize;
+
+    // in megabytes, heap shared by all modules of the session
+    @Parameter(defaultValue = "256", property = "sharedIndexSize", required = false)
+    private int sharedIndexSize;
+
+    // threads indexing dependencies and running independent stages at once, all available processors when not positive
+    @Parameter(defaultValue = "0", property = "pipelineThreads", required = false)
+    private int pipelineThreads;
+
+    @Component
+    protected MavenProject project;
+
+    @Component
+    private MavenSession session;
+
+    @Component
+    private ProjectDependenciesResolver projectDependenciesResolver;
+
+    @Component
+    private SessionDependencyIndex sessionIndex;
+
+    /**
+     * The runtime dependencies of the project in class path order, or the jars of the local repository if Maven
+     * resolves none and <code>scanLocalRepository</code> is set.
+     */
+    protected Set<File> resolveDependencies() throws MojoExecutionException {
+        return resolveDependencies(JavaScopes.RUNTIME);
+    }
+
+    /**
+     * Like {@link #resolveDependencies()}, for the class path of the given scope, e.g. <code>test</code>.
+     */
+    protected Set<File> resolveDependencies(String classpathScope) throws MojoExecutionException {
+        final Set<File> artifactLocations = askMavenForDependencies(classpathScope);
+        if (artifactLocations.isEmpty() && scanLocalRepository) {
+            return scanLocalRepository();
+        }
+        return artifactLocations;
+    }
+
+    /**
+     * A pipeline of as many threads as configured, see {@link Pipeline}.
+     */
+    Pipeline pipeline(BuildMetrics metrics) {
+        return new Pipeline(pipelineThreads, metrics);
+    }
+
+    /**
+     * The number of threads to run at once, as configured by <code>pipelineThreads</code>.
+     */
+    int parallelism() {
+        return pipelineThreads > 0 ? pipelineThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The class index of every dependency, taken from the session index and the persistent index cache, so only new
+     * or changed jars are read. Dependencies are indexed in parallel.
+     */
+    protected Map<File, JarIndex> indexDependencies(Set<File> artifactLocations) throws IOException {
+        final Pipeline pipeline = pipeline(null);
+        try {
+            return indexDependencies(artifactLocations, pipeline);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Like {@link #indexDependencies(Set)}, on the given pipeline.
+     */
+    Map<File, JarIndex> indexDependencies(Set<File> artifactLocations, Pipeline pipeline) throws IOException {
+        final JarIndexCache cache = new JarIndexCache(new File(indexCache), indexCacheSize * 1024L * 1024L);
+        final List<JarIndex> indexed = pipeline.map(artifactLocations, new Pipeline.Step<File, JarIndex>() {
+            public JarIndex apply(File dependency) throws IOException {
+                return sessionIndex == null
+                        ? cache.get(dependency)
+                        : sessionIndex.get(dependency, cache, sharedIndexSize * 1024L * 1024L);
+            }
+        });
+
+        final Map<File, JarIndex> indexes = Maps.newLinkedHashMap();
+        final Iterator<JarIndex> index = indexed.iterator();
+        for (File dependency : artifactLocations) {
+            indexes.put(dependency, index.next());
+        }
+        return indexes;
+    }
+
+    /**
+     * The classes referenced by the compiled classes of the project, and by the built artifact if
+     * <code>analyzeArtifact</code> is set, plus the force included ones. A force included library contributes all of
+     * its classes.
+     */
+    protected Set<String> rootClasses(Map<File, JarIndex> indexes) throws IOException {
+        final Set<String> roots = projectRootClasses();
+        roots.addAll(forcedRootClasses(indexes));
+        return roots;
+    }
+
+    /**
+     * The classes referenced by the compiled classes of the project, and by the built artifact if
+     * <code>analyzeArtifact</code> is set. Unlike the force included ones, they do not depend on the dependencies.
+     */
+    protected Set<String> projectRootClasses() throws IOException {
+        final Set<String> roots = Sets.newHashSet();
+        addReferences(JarIndex.build(new File(classes)), roots);
+
+        final File builtArtifact = project.getArtifact().getFile();
+        if (analyzeArtifact && builtArtifact != null && builtArtifact.isFile()) {
+            addReferences(JarIndex.build(builtArtifact), roots);
+        }
+        return roots;
+    }
+
+    /**
+     * The force included classes. A force included library contributes all of its classes.
+     */
+    protected Set<String> forcedRootClasses(Map<File, JarIndex> indexes) {
+        final Set<String> roots = Sets.newHashSet();
+        if (forceInclude != null) {
+            for (String classToForceInclude : forceInclude) {
+                final JarIndex library = indexes.get(new File(classToForceInclude));
+                if (library != null) {
+                    roots.addAll(library.classes());
+                } else {
+                    roots.add(toInternalName(classToForceInclude));
+                }
+            }
+        }
+        return roots;
+    }
+
+    protected static void addReferences(JarIndex index, Set<String> roots) {
+        for (String className : index.classes()) {
+            roots.addAll(index.referencesOf(className));
+        }
+    }
+
+    private static String toInternalName(String className) {
+        final String name = className.endsWith(".class")
+                ? className.substring(0, className.length() - ".class".length())
+                : className;
+        return name.replace('.', '/');
+    }
+
+    // Unfortunately this code only works with Maven 3.x, meaning that any users of our plugin that have older Maven
+    // version would have a hard time. There seems to be quite a huge gap between the way Maven 2.x and MAven 3.x
+    // handles dependency resolution.
+
+    // see http://blog.sonatype.com/2011/01/how-to-use-aether-in-maven-plugins/#.VV5jarylilM
+    // see http://labs.bsb.com/2012/10/using-aether-to-resolve-dependencies-in-a-maven-plugins/
+    private Set<File> askMavenForDependencies(String classpathScope) throws MojoExecutionException {
+        // by default the runtime class path - compile and runtime scoped dependencies, test ones will never be
+        // required in the final assembly and provided ones are already provided, we might introduce conflicts
+        final DependencyResolutionRequest request =
+                new DefaultDependencyResolutionRequest(project, session.getRepositorySession())
+                        .setResolutionFilter(DependencyFilterUtils.classpathFilter(classpathScope));
+
+        final DependencyResolutionResult result;
+        try {
+            result = projectDependenciesResolver.resolve(request);
+        } catch (DependencyResolutionException e) {
+            throw new MojoExecutionException("Unable to resolve the dependencies of " + project.getId()
+                    + " : " + e.getMessage(), e);
+        }
+
+        // the dependencies come in pre-order of the dependency graph, which is the order of the class path
+        final Set<File> artifactLocations = new LinkedHashSet<File>();
+        for (org.eclipse.aether.graph.Dependency dependency : result.getDependencies()) {
+            final File file = dependency.getArtifact().getFile();
+            if (file == null) {
+                throw new MojoExecutionException("Dependency " + dependency + " of " + project.getId()
+                        + " was not resolved");
+            }
+            artifactLocations.add(file);
+        }
+        getLog().debug("Resolved " + artifactLocations.size() + " dependencies of " + project.getId());
+        return artifactLocations;
+    }
+
+    /**
+     * Collects every jar in the local repository. Local repositories easily grow to tens of gigabytes, so this has to
+     * be asked for explicitly and gives up as soon as the configured limits are exceeded.
+     */
+    protected Set<File> scanLocalRepository() throws MojoExecutionException {
+        getLog().warn("No dependencies resolved, scanning the Maven local repository " + pathToLocalRepo);
+
+        final Set<File> jars = new LinkedHashSet<File>();
+        final long maxBytes = localRepositoryMaxSize * 1024L * 1024L;
+        long bytes = 0;
+
+        final Deque<File> pending = new ArrayDeque<File>();
+        pending.push(new File(pathToLocalRepo));
+        while (!pending.isEmpty()) {
+            final File[] children = pending.pop().listFiles();
+            if (children == null) {
+                continue;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    pending.push(child);
+                } else if (child.getName().endsWith(".jar")) {
+                    jars.add(child);
+                    bytes += child.length();
+                    if (jars.size() > localRepositoryMaxFiles || bytes > maxBytes) {
+                        throw new MojoExecutionException("The local repository " + pathToLocalRepo
+                                + " holds more than " + localRepositoryMaxFiles + " jars or "
+                                + localRepositoryMaxSize + " MB, raise localRepositoryMaxFiles and "
+                                + "localRepositoryMaxSize or fix the dependency resolution instead");
+                    }
+                }
+            }
+        }
+        return jars;
+    }
+}
@@ -0,0 +1,28 @@
+package org.codarama.diet;
+
+import java.util.Locale;
+
+/**
+ * What the reachability of dependencies is computed from.
+ */
+public enum AnalysisInput {
+
+    /**
+     * The Java sources of the project, analysed by the Diet engine.
+     */
+    SOURCES,
+
+    /**
+     * The compiled classes of the project. References are read straight from the constant pools, which is cheaper
+     * than parsing sources and also covers generated code and classes compiled from other JVM languages.
+     */
+    CLASSES;
+
+    public static AnalysisInput parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown analysisInput '" + value + "', expected 'sources' or 'classes'");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.codarama.diet;
+
+import org.codarama.diet.api.ListenerRegistrar;
+import org.codarama.diet.api.reporting.listener.EventListener;
+import org.codarama.diet.event.model.ComponentEvent;
+
+/**
+ * Routes Diet engine events to the mojo execution they belong to.
+ *
+ * The engine only offers the static {@link ListenerRegistrar}, which has no way to deregister a listener. Instead
+ * of registering a new listener on every execution, this dispatcher is registered once per class loader and hands
+ * each event to the listener of the execution currently running the engine, whatever thread the engine raises it
+ * from. Executions take turns calling the engine, each binds its listener before calling it and unbinds it when done
+ * while still holding its turn, so parallel executions never see each other's events.
+ */
+final class ComponentEventDispatcher implements EventListener<ComponentEvent> {
+
+    static final ComponentEventDispatcher INSTANCE = new ComponentEventDispatcher();
+
+    private static boolean registered;
+
+    private volatile EventListener<ComponentEvent> listener;
+
+    private ComponentEventDispatcher() {
+    }
+
+    /**
+     * Binds the listener of the execution about to call the engine, the caller must hold its turn on the engine until
+     * it calls {@link #unbind()}.
+     */
+    static void bind(EventListener<ComponentEvent> listener) {
+        synchronized (ComponentEventDispatcher.class) {
+            if (!registered) {
+                ListenerRegistrar.register(INSTANCE);
+                registered = true;
+            }
+        }
+        INSTANCE.listener = listener;
+    }
+
+    static void unbind() {
+        INSTANCE.listener = null;
+    }
+
+    public void on(ComponentEvent event) {
+        final EventListener<ComponentEvent> listener = this.listener;
+        if (listener != null) {
+            listener.on(event);
+        }
+    }
+}
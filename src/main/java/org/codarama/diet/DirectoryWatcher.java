@@ -0,0 +1,85 @@
+package org.codarama.diet;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree for created, modified and deleted files, with a {@link WatchService}.
+ *
+ * Directories created while watching are watched as well. A compiler rewrites many files in a burst, so the changes
+ * are collected until the tree has been quiet for a while, and handed out at once.
+ */
+class DirectoryWatcher implements Closeable {
+
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = Maps.newHashMap();
+
+    DirectoryWatcher(File root) throws IOException {
+        this.service = root.toPath().getFileSystem().newWatchService();
+        register(root);
+    }
+
+    /**
+     * Waits for a change, then for the tree to be quiet for the given period.
+     *
+     * @return the changed files and directories, an empty set if nothing changed before the timeout, or
+     * <code>null</code> if changes were lost and the whole tree has to be looked at again
+     */
+    Set<File> awaitChanges(long timeoutMillis, long quietMillis) throws IOException, InterruptedException {
+        final Set<File> changed = Sets.newHashSet();
+        boolean lost = false;
+
+        WatchKey key = service.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        while (key != null) {
+            final Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    lost = true;
+                    continue;
+                }
+                final File file = directory.resolve((Path) event.context()).toFile();
+                changed.add(file);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory()) {
+                    // files created in it before it was registered are found by looking through the directory
+                    register(file);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+            key = service.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+        return lost ? null : changed;
+    }
+
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private void register(File directory) throws IOException {
+        final Path path = directory.toPath();
+        directories.put(path.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), path);
+
+        final File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    register(child);
+                }
+            }
+        }
+    }
+}
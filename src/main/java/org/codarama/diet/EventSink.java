@@ -0,0 +1,147 @@
+package org.codarama.diet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+import org.codarama.diet.api.reporting.listener.EventListener;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A listener that reports progress in periodic summaries, e.g. <code>Minimizing: 1200 of about 20000 (6%), 850/s,
+ * about 22 s left</code>, instead of logging every event as it is raised.
+ *
+ * Raising an event only counts it, and, when debug logging is on, offers it to a bounded queue, neither of which
+ * takes a lock or waits. A background thread turns the queued events into strings and logs them, and logs a summary
+ * at every interval. When the queue is full the event is only counted, so a slow console never slows the engine
+ * down, the number of events left out is logged instead. Nothing is turned into a string when debug logging is off.
+ * Close the sink to log what is left along with a final summary.
+ */
+public class EventSink<E> implements EventListener<E>, Closeable {
+
+    static final long DEFAULT_INTERVAL_MILLIS = 2000;
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final ScheduledExecutorService REPORTER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("diet-events-%d").setDaemon(true).build());
+
+    private final Log logger;
+    private final String what;
+    private final long expected;
+    private final int capacity;
+    private final boolean detailed;
+    private final long started = System.nanoTime();
+
+    private final AtomicLong count = new AtomicLong();
+    private final Queue<E> queue = new ConcurrentLinkedQueue<E>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // guarded by this, only touched while reporting
+    private long reported;
+    private long reportedDropped;
+    private final ScheduledFuture<?> reporting;
+
+    /**
+     * @param what what the events are progress of, starts every summary
+     * @param expected about how many events to expect, for the percentage and time left, 0 if unknown
+     */
+    public EventSink(Log logger, String what, long expected) {
+        this(logger, what, expected, DEFAULT_INTERVAL_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    EventSink(Log logger, String what, long expected, long intervalMillis, int capacity) {
+        this.logger = logger;
+        this.what = what;
+        this.expected = expected;
+        this.capacity = capacity;
+        this.detailed = logger.isDebugEnabled();
+        this.reporting = REPORTER.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                report();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void on(E event) {
+        count.incrementAndGet();
+        if (!detailed) {
+            return;
+        }
+        if (queued.incrementAndGet() <= capacity) {
+            queue.offer(event);
+        } else {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * The number of events raised so far.
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Stops the periodic summaries, logs the events still queued and a final summary.
+     */
+    public void close() {
+        reporting.cancel(false);
+        report();
+        final long done = count.get();
+        if (done > 0 && logger.isInfoEnabled()) {
+            logger.info(what + ": " + done + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)
+                    + " ms");
+        }
+    }
+
+    private synchronized void report() {
+        try {
+            E event;
+            while ((event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                logger.debug(event.toString());
+            }
+            final long droppedSoFar = dropped.get();
+            if (droppedSoFar > reportedDropped) {
+                logger.debug((droppedSoFar - reportedDropped) + " events not logged, the console could not keep up");
+                reportedDropped = droppedSoFar;
+            }
+
+            final long done = count.get();
+            if (done > reported && logger.isInfoEnabled()) {
+                logger.info(summary(what, done, expected, System.nanoTime() - started));
+            }
+            reported = done;
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic summaries for good
+            logger.debug("Unable to report the progress of " + what, e);
+        }
+    }
+
+    /**
+     * A summary of the progress so far, giving the percentage done and the time left if the number of events to
+     * expect is known.
+     */
+    static String summary(String what, long done, long expected, long elapsedNanos) {
+        final StringBuilder summary = new StringBuilder(what).append(": ").append(done);
+        final double perSecond = elapsedNanos > 0 ? done * 1e9 / elapsedNanos : 0;
+        if (expected > 0) {
+            summary.append(" of about ").append(expected)
+                    .append(" (").append(Math.min(100, done * 100 / expected)).append("%)");
+        }
+        summary.append(", ").append(Math.round(perSecond)).append("/s");
+        if (expected > done && perSecond > 0) {
+            summary.append(", about ").append(Math.round((expected - done) / perSecond)).append(" s left");
+        }
+        return summary.toString();
+    }
+}
@@ -3,18 +3,18 @@ package org.codarama.diet;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
-import org.apache.maven.ProjectDependenciesResolver;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.handler.ArtifactHandler;
-import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
-import org.apache.maven.artifact.resolver.ArtifactResolutionException;
-import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.DependencyManagement;
 import org.apache.maven.model.InputLocation;
@@ -25,18 +25,33 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 import org.codarama.diet.api.IndexedMinimizer;
-import org.codarama.diet.api.ListenerRegistrar;
 import org.codarama.diet.api.Minimizer;
 import org.codarama.diet.api.reporting.MinimizationReport;
 import org.codarama.diet.api.reporting.MinimizationStatistics;
-import org.codarama.diet.api.reporting.listener.EventListener;
+import org.codarama.diet.cds.ClassDataSharing;
 import org.codarama.diet.event.model.ComponentEvent;
+import org.codarama.diet.fingerprint.Fingerprint;
+import org.codarama.diet.fingerprint.FingerprintManifest;
+import org.codarama.diet.index.ClassLoadOrder;
+import org.codarama.diet.index.DuplicateClasses;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ReachableDependencies;
+import org.codarama.diet.index.SpringFactories;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Footprint;
+import org.codarama.diet.metrics.FootprintBudget;
+import org.codarama.diet.metrics.Phase;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.packaging.ArtifactPackager;
+import org.codarama.diet.packaging.BootArtifactPackager;
+import org.codarama.diet.packaging.CompressionPolicy;
+import org.codarama.diet.packaging.DependencySlimmer;
 import org.codarama.diet.packaging.JarArtifactPackager;
+import org.codarama.diet.packaging.MinimizedJarWriter;
+import org.codarama.diet.packaging.Reproducibility;
+import org.codarama.diet.packaging.StartupLayout;
 import org.codarama.diet.packaging.WarArtifactPackager;
 import org.codarama.diet.util.Tokenizer;
 
@@ -45,38 +60,139 @@ import org.codarama.diet.util.Tokenizer;
  * This implementation of the {@link AbstractMojo} can be used to packageArtifact the dependencies of a Maven project.
  * </p>
  */
-@Mojo(name = "putondiet", defaultPhase = LifecyclePhase.PACKAGE)
-public class MavenMinimizerMojo extends AbstractMojo {
-
-    // we could probably inject these from somewhere
-    private static final ImmutableMap<String, ? extends ArtifactPackager> PACKAGERS = ImmutableMap.of(
-            "war", new WarArtifactPackager(),
-            "jar", new JarArtifactPackager()
-    );
+@Mojo(name = "putondiet", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class MavenMinimizerMojo extends AbstractDietMojo {
 
     private static final String LOG_PATTERN = "%d [%p|%c|%C{1}] %m%n";
     private static final String CODARAMA_ROOT_PACKAGE = "org.codarama";
+    private static final String CODARAMA_APPENDER = "diet-codarama";
+    private static final String ROOT_APPENDER = "diet-root";
+
+    // the Diet engine is not known to be thread safe (its listener registry is static), so parallel builds (-T) take
+    // turns calling it, everything else runs concurrently
+    private static final Object ENGINE_LOCK = new Object();
+
+    // bump whenever the minimization output could change for the same inputs, e.g. with a new packager
+    // 2 - compression policies, slimmed WAR libraries, reproducible output, Spring Boot archives, WEB-INF/lib
+    private static final String FINGERPRINT_VERSION = "2";
+
+    private static final String STARTUP_MINIMIZED_JAR = "diet-startup.jar";
+    private static final String JDK_RELEASE_FILE = "release";
+    private static final String SLIMMED_LIBRARIES = "diet-libraries";
+    private static final String BOOT_LIBRARIES = "diet-boot";
+
+    // the phases reported in diet-metrics.json
+    private static final String PHASE_FINGERPRINT = "fingerprint";
+    private static final String PHASE_MINIMIZE = "minimize";
+    private static final String PHASE_DUPLICATES = "duplicates";
+    private static final String PHASE_ROOTS = "roots";
+    private static final String PHASE_REFERENCES = "references";
+    private static final String PHASE_WAR = "war";
+    private static final String PHASE_LAYOUT = "layout";
+    private static final String PHASE_PACKAGE = "package";
+    private static final String PHASE_CDS = "cds";
+    private static final String PHASE_FOOTPRINT = "footprint";
 
     @Parameter(defaultValue = "${project.build.sourceDirectory}", property = "sources", required = true)
     private String sources;
 
-    @Parameter(defaultValue = "${settings.localRepository}", property = "libs", required = true)
-    private String pathToLocalRepo;
+    @Parameter(defaultValue = "true", property = "incremental", required = false)
+    private boolean incremental;
+
+    // either 'sources' or 'classes', see AnalysisInput
+    @Parameter(defaultValue = "sources", property = "analysisInput", required = false)
+    private String analysisInput;
+
+    // off by default, dependencies reached only by reflection or by name would be dropped
+    @Parameter(defaultValue = "false", property = "pruneDependencies", required = false)
+    private boolean pruneDependencies;
+
+    // order the minimized jar for a fast start, see StartupLayout
+    @Parameter(defaultValue = "false", property = "startupLayout", required = false)
+    private boolean startupLayout;
+
+    // a -verbose:class log or class list of a real run, the order is estimated from the bytecode when not given
+    @Parameter(property = "classLoadOrder", required = false)
+    private String classLoadOrder;
+
+    // how many of the classes loaded first to store uncompressed
+    @Parameter(defaultValue = "0", property = "hotClasses", required = false)
+    private int hotClasses;
+
+    // the file name the minimized jar is deployed under, a jar index is only written when it is given
+    @Parameter(property = "jarIndexName", required = false)
+    private String jarIndexName;
+
+    // write ${target}/classes.lst, the classes of the minimized jar for Class Data Sharing
+    @Parameter(defaultValue = "false", property = "classList", required = false)
+    private boolean classList;
+
+    // also dump a CDS archive of the minimized jar artifact and attach it, implies classList
+    @Parameter(defaultValue = "false", property = "cdsArchive", required = false)
+    private boolean cdsArchive;
+
+    @Parameter(defaultValue = "cds", property = "cdsClassifier", required = false)
+    private String cdsClassifier;
+
+    // the JDK to dump the CDS archive with, has to be the one the application runs on
+    @Parameter(defaultValue = "${java.home}", property = "cdsJavaHome", required = false)
+    private String cdsJavaHome;
+
+    // keep, store, fast or best - the compression of the entries of the minimized artifact, see Compression
+    @Parameter(defaultValue = "keep", property = "compression", required = false)
+    private String compression;
+
+    // compression by file extension, e.g. <class>best</class> <png>store</png>
+    @Parameter(required = false)
+    private Map<String, String> compressionByType;
+
+    // threads compressing entries, all available processors when not positive
+    @Parameter(defaultValue = "0", property = "compressionThreads", required = false)
+    private int compressionThreads;
+
+    // package a slimmed copy of every dependency under its own name instead of a single minimized jar, WARs only
+    @Parameter(defaultValue = "false", property = "slimEachDependency", required = false)
+    private boolean slimEachDependency;
 
-    @Parameter(property = "forceInclude", required = false)
-    private String[] forceInclude;
+    // threads writing slimmed dependencies, all available processors when not positive
+    @Parameter(defaultValue = "0", property = "slimmingThreads", required = false)
+    private int slimmingThreads;
 
-    @Parameter(defaultValue = "${project.build.directory}", property = "target", required = false)
-    private String target;
+    // normalize timestamps, permissions and entry order, so that the same inputs give the same minimized artifact
+    @Parameter(defaultValue = "false", property = "reproducible", required = false)
+    private boolean reproducible;
 
-    @Component
-    private MavenProject project;
+    // the timestamp of every entry, seconds since the epoch or ISO 8601, setting it turns reproducible output on
+    @Parameter(defaultValue = "${project.build.outputTimestamp}", property = "outputTimestamp", required = false)
+    private String outputTimestamp;
 
-    @Component
-    private MavenSession session;
+    // fail when dependencies define a packaged class differently, instead of only reporting it
+    @Parameter(defaultValue = "false", property = "failOnClassConflict", required = false)
+    private boolean failOnClassConflict;
 
-    @Component
-    private ProjectDependenciesResolver projectDependenciesResolver;
+    // the footprint the build is held against, meant to be committed along with the project
+    @Parameter(defaultValue = "${project.basedir}/diet-footprint.json", property = "footprintBaseline", required = false)
+    private String footprintBaseline;
+
+    // in bytes, no limit when not positive
+    @Parameter(defaultValue = "0", property = "maxArtifactBytes", required = false)
+    private long maxArtifactBytes;
+
+    // no limit when not positive
+    @Parameter(defaultValue = "0", property = "maxReachableClasses", required = false)
+    private int maxReachableClasses;
+
+    // in percent of the baseline, per dependency, no limit when negative
+    @Parameter(defaultValue = "-1", property = "maxDependencyGrowth", required = false)
+    private int maxDependencyGrowth;
+
+    // fail when the footprint exceeds its budget, instead of only warning about it
+    @Parameter(defaultValue = "true", property = "failOnFootprintRegression", required = false)
+    private boolean failOnFootprintRegression;
+
+    // record the footprint of this build as the baseline, instead of checking it
+    @Parameter(defaultValue = "false", property = "updateFootprintBaseline", required = false)
+    private boolean updateFootprintBaseline;
 
 	@Component
 	private MavenProjectHelper projectHelper;
@@ -97,21 +213,51 @@ public class MavenMinimizerMojo extends AbstractMojo {
         try {
             getLog().info("Minimizing dependencies");
 
-            // start by building up the minimizer using the path to the source files
-            Minimizer minimizer = IndexedMinimizer.sources(sources);
-
-            // ... then attempt to build a path to the dependencies
-            minimizer = buildUpDependencies(minimizer);
-
-            // ... then set up the target directory
-            minimizer.output(target);
-
-            attachProgressListeners();
-
-            // ... then attempt to output the minimized dependency JAR file
-            final MinimizationReport report = minimizer.minimize();
+            final AnalysisInput input = AnalysisInput.parse(analysisInput);
+            final BuildMetrics metrics = new BuildMetrics();
+            metrics.addListener(new PhaseProgressListener(getLog()));
+
+            final Set<File> artifactLocations;
+            Phase phase = metrics.start(PHASE_RESOLVE);
+            try {
+                artifactLocations = resolveDependencies();
+                phase.entries(artifactLocations.size());
+            } finally {
+                phase.end();
+            }
 
-            logStatistics(report.getStatistics());
+            // skip the whole minimization if nothing changed since the last one
+            final FingerprintManifest manifest = new FingerprintManifest(new File(target));
+            String fingerprint = null;
+            if (incremental) {
+                phase = metrics.start(PHASE_FINGERPRINT);
+                try {
+                    fingerprint = fingerprint(artifactLocations);
+                } finally {
+                    phase.end();
+                }
+
+                final File upToDateArtifact = manifest.upToDateArtifact(fingerprint);
+                if (upToDateArtifact != null && classDataSharingUpToDate(upToDateArtifact)) {
+                    getLog().info("Minimization inputs unchanged, reusing: " + upToDateArtifact.getAbsolutePath());
+                    // budgets and the baseline are not inputs of the minimization, the reused artifact is held
+                    // against them all the same
+                    final Pipeline pipeline = pipeline(metrics);
+                    try {
+                        checkFootprint(artifactLocations, manifest.upToDateJar(fingerprint), upToDateArtifact,
+                                pipeline, metrics);
+                    } finally {
+                        pipeline.close();
+                    }
+                    attachMinimizedArtifact(upToDateArtifact);
+                    if (cdsArchive && isJar(upToDateArtifact)) {
+                        attachCdsArchive(cdsArchiveOf(upToDateArtifact));
+                    }
+                    metrics.write(new File(target), project.getId());
+                    return;
+                }
+            }
+            manifest.invalidate();
 
             // repackage artifact (remove all classes, add minimized classes only)
             // we should support Jar and War packaging
@@ -119,17 +265,91 @@ public class MavenMinimizerMojo extends AbstractMojo {
 
             final String artifactExtension = Tokenizer.delimiter(".").tokenize(currentArtifact.getName()).lastToken();
             getLog().info("artifactExtension: " + artifactExtension);
-
-            final ArtifactPackager packager = PACKAGERS.get(artifactExtension);
-            if (packager == null) {
-                throw new IllegalStateException("No artifact packager found for extension: " + artifactExtension);
+            // nested jar layouts are told by the manifest, whatever the extension
+            final String bootLibraries = currentArtifact.isFile()
+                    ? BootArtifactPackager.libraryDirectory(currentArtifact)
+                    : null;
+            if (bootLibraries != null) {
+                getLog().info("Spring Boot layout, slimming the nested libraries under " + bootLibraries);
+            }
+            // Spring Boot loads these by name, no class refers to them
+            final Set<String> entryPoints = bootLibraries != null
+                    ? bootEntryPoints(artifactLocations)
+                    : Collections.<String>emptySet();
+
+            // stages that do not need each other's results overlap, the ones that do wait for them
+            JarFile minimizedJar;
+            final File minimizedArtifact;
+            final Pipeline pipeline = pipeline(metrics);
+            final Pipeline.Stage<WarArtifactPackager.Repackaging> war = bootLibraries == null
+                    && "war".equals(artifactExtension)
+                    ? startWar(pipeline)
+                    : null;
+            try {
+                final Pipeline.Stage<Set<String>> references = startupLayout && classLoadOrder == null
+                        ? pipeline.fork(PHASE_REFERENCES, new Pipeline.Work<Set<String>>() {
+                            public Set<String> run() throws IOException {
+                                return projectReferences();
+                            }
+                        })
+                        : null;
+
+                minimizedJar = input == AnalysisInput.CLASSES
+                        ? minimizeBytecode(artifactLocations, entryPoints, metrics, pipeline)
+                        : minimizeSources(artifactLocations, entryPoints, metrics, pipeline);
+
+                final File packagedJar = new File(minimizedJar.getName());
+                final Pipeline.Stage<DuplicateClasses> duplicates = pipeline.fork(PHASE_DUPLICATES,
+                        new Pipeline.Work<DuplicateClasses>() {
+                            public DuplicateClasses run() throws IOException {
+                                return findDuplicateClasses(artifactLocations, packagedJar);
+                            }
+                        });
+                if (startupLayout) {
+                    minimizedJar = layOutForStartup(minimizedJar, metrics, references);
+                }
+
+                phase = metrics.start(PHASE_PACKAGE);
+                try {
+                    if (war != null) {
+                        minimizedArtifact = war.get().finish(minimizedJar,
+                                slimmedLibraries(artifactLocations, new File(minimizedJar.getName())));
+                    } else {
+                        final ArtifactPackager packager = packagerFor(artifactExtension, bootLibraries != null);
+                        if (packager == null) {
+                            throw new IllegalStateException("No artifact packager found for extension: "
+                                    + artifactExtension);
+                        }
+                        minimizedArtifact = packager.packageArtifact(project.getArtifact(), minimizedJar);
+                    }
+                } finally {
+                    minimizedJar.close();
+                    phase.end();
+                }
+                reportDuplicateClasses(duplicates.get());
+                checkFootprint(artifactLocations, packagedJar, minimizedArtifact, pipeline, metrics);
+            } finally {
+                if (war != null) {
+                    release(war);
+                }
+                pipeline.close();
             }
-            final File minimizedArtifact = packager.packageArtifact(project.getArtifact(), report.getJar());
 
-            project.getArtifact().setFile(minimizedArtifact);
-            projectHelper.attachArtifact(project, "jar", "slimjar", minimizedArtifact);
+            attachMinimizedArtifact(minimizedArtifact);
+            if (classList || cdsArchive) {
+                phase = metrics.start(PHASE_CDS);
+                try {
+                    classDataSharing(minimizedArtifact, new File(minimizedJar.getName()));
+                } finally {
+                    phase.end();
+                }
+            }
+            if (fingerprint != null) {
+                manifest.record(fingerprint, new File(minimizedJar.getName()), minimizedArtifact);
+            }
 
             getLog().info("Minimized packaged artifact at: " + minimizedArtifact.getAbsolutePath());
+            getLog().info("Build metrics written to: " + metrics.write(new File(target), project.getId()));
         } catch (IOException e) {
             getLog().error("Minimization not successful!", e);
             throw new MojoExecutionException(MavenMinimizerMojo.class, "Unable to minimize dependencies",
@@ -142,37 +362,547 @@ public class MavenMinimizerMojo extends AbstractMojo {
         }
     }
 
-    private void attachProgressListeners() {
-        ListenerRegistrar.register(new EventListener<ComponentEvent>() {
-            public void on(ComponentEvent event) {
-                getLog().debug(event.toString());
+    private JarFile minimizeSources(Set<File> artifactLocations, Set<String> entryPoints, BuildMetrics metrics,
+                                    Pipeline pipeline) throws IOException {
+        // indexing dependencies is I/O heavy, but does not involve the engine, so do it before taking the lock
+        final Set<File> libraries;
+        Phase phase = metrics.start(PHASE_INDEX);
+        try {
+            libraries = reachableDependencies(artifactLocations, entryPoints, pipeline);
+        } finally {
+            phase.end();
+        }
+
+        final MinimizationReport report;
+        phase = metrics.start(PHASE_MINIMIZE);
+        try {
+            report = minimizeWithEngine(libraries, entryPoints);
+            phase.read(sizeOf(libraries));
+            phase.written(new File(report.getJar().getName()).length());
+            phase.entries(report.getJar().size());
+        } finally {
+            phase.end();
+        }
+
+        logStatistics(report.getStatistics());
+        return report.getJar();
+    }
+
+    private MinimizationReport minimizeWithEngine(Set<File> libraries, Set<String> entryPoints) throws IOException {
+        final MinimizationReport report;
+        synchronized (ENGINE_LOCK) {
+            // start by building up the minimizer using the path to the source files
+            Minimizer minimizer = IndexedMinimizer.sources(sources);
+
+            // ... then attempt to build a path to the dependencies
+            minimizer = buildUpDependencies(minimizer, libraries, entryPoints);
+
+            // ... then set up the target directory
+            minimizer.output(target);
+
+            final EventSink<ComponentEvent> progress = attachProgressListeners(libraries);
+            try {
+                // ... then attempt to output the minimized dependency JAR file
+                report = minimizer.minimize();
+            } finally {
+                ComponentEventDispatcher.unbind();
+                progress.close();
+            }
+        }
+        return report;
+    }
+
+    private static long sizeOf(Set<File> files) {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Minimizes without the Diet engine, by following the class references found in the bytecode. The compiled
+     * classes of the project (and, if asked for, the classes of the built artifact) are the roots, the references of
+     * dependency classes come from the index cache.
+     */
+    private JarFile minimizeBytecode(Set<File> artifactLocations, Set<String> entryPoints, BuildMetrics metrics,
+                                     Pipeline pipeline) throws IOException {
+        if (!new File(classes).isDirectory()) {
+            throw new IllegalArgumentException("No compiled classes found at " + classes + ", was the project compiled?");
+        }
+        final long start = System.currentTimeMillis();
+
+        final Map<File, Set<String>> reachable;
+        Phase phase = metrics.start(PHASE_INDEX);
+        try {
+            final Pipeline.Stage<Set<String>> projectRoots = forkProjectRootClasses(pipeline);
+            final Map<File, JarIndex> indexes = indexDependencies(artifactLocations, pipeline);
+            final Set<String> roots = projectRoots.get();
+            roots.addAll(forcedRootClasses(indexes));
+            roots.addAll(entryPoints);
+            reachable = new ReachableDependencies(indexes).classesFrom(roots);
+        } finally {
+            phase.end();
+        }
+
+        final File minimizedJar = new File(target, BYTECODE_MINIMIZED_JAR);
+        final int classCount;
+        phase = metrics.start(PHASE_MINIMIZE);
+        try {
+            minimizedJar.getParentFile().mkdirs();
+            classCount = MinimizedJarWriter.write(reachable, minimizedJar);
+        } finally {
+            phase.end();
+        }
+
+        logReportHeader();
+        getLog().info("Analysis input : compiled classes in " + classes);
+        getLog().info("Total execution time : " + (System.currentTimeMillis() - start) + " ms");
+        getLog().info("Total dependencies before minimization : " + artifactLocations.size());
+        getLog().info("Total dependencies after minimization : " + reachable.size());
+        getLog().info("Total classes in minimized jar : " + classCount);
+
+        return new JarFile(minimizedJar);
+    }
+
+    /**
+     * The classes a Spring Boot application loads by name from its dependencies and its own classes, see
+     * {@link SpringFactories#entryPoints(Collection)}.
+     */
+    private Set<String> bootEntryPoints(Set<File> artifactLocations) throws IOException {
+        final List<File> locations = new ArrayList<File>(artifactLocations);
+        if (classes != null && new File(classes).isDirectory()) {
+            locations.add(new File(classes));
+        }
+        return SpringFactories.entryPoints(locations);
+    }
+
+    /**
+     * Parses the classes of the project for the root classes in the background, see {@link #projectRootClasses()}.
+     */
+    private Pipeline.Stage<Set<String>> forkProjectRootClasses(Pipeline pipeline) {
+        return pipeline.fork(PHASE_ROOTS, new Pipeline.Work<Set<String>>() {
+            public Set<String> run() throws IOException {
+                return projectRootClasses();
+            }
+        });
+    }
+
+    /**
+     * Starts copying the entries of the WAR other than its libraries, which is all of the WAR that does not depend on
+     * the minimization.
+     */
+    private Pipeline.Stage<WarArtifactPackager.Repackaging> startWar(Pipeline pipeline) {
+        final WarArtifactPackager packager = new WarArtifactPackager(compressionPolicy(), reproducibility(), null);
+        return pipeline.fork(PHASE_WAR, new Pipeline.Work<WarArtifactPackager.Repackaging>() {
+            public WarArtifactPackager.Repackaging run() throws IOException {
+                return packager.start(project.getArtifact());
             }
         });
     }
 
+    /**
+     * Releases the WAR being repackaged, deleting the repackaged one unless it was finished. Failures have been
+     * reported already, or are about to be.
+     */
+    private void release(Pipeline.Stage<WarArtifactPackager.Repackaging> war) {
+        try {
+            war.get().close();
+        } catch (IOException e) {
+            getLog().debug("Unable to release the WAR being repackaged", e);
+        } catch (RuntimeException e) {
+            getLog().debug("Unable to release the WAR being repackaged", e);
+        }
+    }
+
+    /**
+     * Finds the classes of the minimized jar that more than one dependency defines, see {@link DuplicateClasses}.
+     */
+    private static DuplicateClasses findDuplicateClasses(Set<File> artifactLocations, File minimizedJar)
+            throws IOException {
+        final Set<String> packagedClasses = packagedClasses(minimizedJar);
+        Phase.current().entries(packagedClasses.size());
+        return DuplicateClasses.scan(artifactLocations, packagedClasses);
+    }
+
+    /**
+     * The internal names of the classes of the given minimized jar.
+     */
+    private static Set<String> packagedClasses(File minimizedJar) throws IOException {
+        final Set<String> packagedClasses = Sets.newHashSet();
+        final JarFile jar = new JarFile(minimizedJar);
+        try {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    packagedClasses.add(name.substring(0, name.length() - ".class".length()));
+                }
+            }
+        } finally {
+            jar.close();
+        }
+        return packagedClasses;
+    }
+
+    /**
+     * Holds the footprint of the minimized artifact against its budget and the baseline, or records it as the new
+     * baseline if asked to. Nothing is done unless a budget is set, a baseline exists or an update is asked for.
+     */
+    private void checkFootprint(Set<File> artifactLocations, File minimizedJar, File minimizedArtifact,
+                                Pipeline pipeline, BuildMetrics metrics) throws IOException, MojoExecutionException {
+        final FootprintBudget budget = new FootprintBudget(maxArtifactBytes, maxReachableClasses,
+                maxDependencyGrowth);
+        final File baselineFile = new File(footprintBaseline);
+        if (budget.isEmpty() && !updateFootprintBaseline && !baselineFile.isFile()) {
+            return;
+        }
+
+        final Phase phase = metrics.start(PHASE_FOOTPRINT);
+        try {
+            final Footprint footprint = footprint(artifactLocations, minimizedJar, minimizedArtifact, pipeline);
+            if (updateFootprintBaseline) {
+                footprint.write(baselineFile);
+                getLog().info("Footprint baseline written to: " + baselineFile.getAbsolutePath());
+                return;
+            }
+
+            final Footprint baseline = baselineFile.isFile() ? Footprint.read(baselineFile) : null;
+            if (baseline != null) {
+                getLog().info("Minimized artifact : " + footprint.artifactBytes() + " bytes ("
+                        + FootprintBudget.growth(baseline.artifactBytes(), footprint.artifactBytes())
+                        + " against the baseline), " + footprint.reachableClasses() + " reachable classes ("
+                        + FootprintBudget.growth(baseline.reachableClasses(), footprint.reachableClasses()) + ")");
+            }
+            final List<String> violations = budget.check(footprint, baseline);
+            for (String violation : violations) {
+                getLog().warn("Footprint budget exceeded : " + violation);
+            }
+            if (!violations.isEmpty() && failOnFootprintRegression) {
+                throw new MojoExecutionException("The footprint of " + project.getId() + " exceeds its budget, see "
+                        + "the warnings above; if the growth is intended, record it with -DupdateFootprintBaseline");
+            }
+        } finally {
+            phase.end();
+        }
+    }
+
+    /**
+     * The footprint of the minimized artifact. Each packaged class counts for the first dependency defining it, like
+     * on the class path.
+     */
+    private Footprint footprint(Set<File> artifactLocations, File minimizedJar, File minimizedArtifact,
+                                Pipeline pipeline) throws IOException {
+        final Set<String> packagedClasses = packagedClasses(minimizedJar);
+        final Set<String> unclaimed = Sets.newHashSet(packagedClasses);
+        final Map<String, Integer> dependencyClasses = new TreeMap<String, Integer>();
+        for (Map.Entry<File, JarIndex> index : indexDependencies(artifactLocations, pipeline).entrySet()) {
+            int classes = 0;
+            for (String className : index.getValue().classes()) {
+                if (unclaimed.remove(className)) {
+                    classes++;
+                }
+            }
+            if (classes > 0) {
+                final String name = Footprint.dependencyName(index.getKey(), new File(pathToLocalRepo));
+                final Integer others = dependencyClasses.get(name);
+                dependencyClasses.put(name, others == null ? classes : others + classes);
+            }
+        }
+        return new Footprint(minimizedArtifact.length(), packagedClasses.size(), dependencyClasses);
+    }
+
+    /**
+     * Reports the classes of the minimized jar that more than one dependency defines.
+     */
+    private void reportDuplicateClasses(DuplicateClasses duplicates) throws MojoExecutionException {
+        if (!duplicates.identical().isEmpty()) {
+            getLog().info(duplicates.identical().size() + " classes are defined identically by more than one "
+                    + "dependency, each is packaged once");
+            for (Map.Entry<String, List<File>> duplicate : duplicates.identical().entrySet()) {
+                getLog().debug("Identical copies of " + duplicate.getKey() + " in " + duplicate.getValue());
+            }
+        }
+        for (Map.Entry<String, List<List<File>>> conflict : duplicates.conflicts().entrySet()) {
+            getLog().warn("Class " + conflict.getKey() + " differs between " + conflict.getValue()
+                    + ", packaging the one from " + conflict.getValue().get(0).get(0));
+        }
+        for (Map.Entry<String, Set<File>> splitPackage : duplicates.splitPackages().entrySet()) {
+            getLog().warn("Package " + splitPackage.getKey() + " is split across " + splitPackage.getValue());
+        }
+        if (failOnClassConflict && !duplicates.conflicts().isEmpty()) {
+            throw new MojoExecutionException(duplicates.conflicts().size() + " classes are defined differently by "
+                    + "more than one dependency, see the warnings above");
+        }
+    }
+
+    /**
+     * Rewrites the minimized jar in the order its classes are expected to be loaded in, see {@link StartupLayout}.
+     */
+    private JarFile layOutForStartup(JarFile minimizedJar, BuildMetrics metrics,
+                                     Pipeline.Stage<Set<String>> projectReferences) throws IOException {
+        final File laidOut = new File(target, STARTUP_MINIMIZED_JAR);
+        final Phase phase = metrics.start(PHASE_LAYOUT);
+        try {
+            final File jar = new File(minimizedJar.getName());
+            final List<String> order = classLoadOrder == null
+                    ? ClassLoadOrder.estimate(JarIndex.build(jar), projectReferences.get())
+                    : ClassLoadOrder.read(new File(classLoadOrder));
+            minimizedJar.close();
+
+            final int stored = new StartupLayout(order, hotClasses, jarIndexName).rewrite(jar, laidOut);
+            getLog().info("Laid out " + order.size() + " classes in load order, " + stored + " stored uncompressed");
+        } finally {
+            phase.end();
+        }
+        return new JarFile(laidOut);
+    }
+
+    /**
+     * The classes referenced by the compiled classes of the project, in a stable order.
+     */
+    private Set<String> projectReferences() throws IOException {
+        final Set<String> references = new LinkedHashSet<String>();
+        final File classesDirectory = new File(classes);
+        if (!classesDirectory.isDirectory()) {
+            getLog().warn("No compiled classes found at " + classes + ", the minimized jar keeps its order");
+            return references;
+        }
+        final JarIndex projectIndex = JarIndex.build(classesDirectory);
+        for (String className : new TreeSet<String>(projectIndex.classes())) {
+            references.addAll(projectIndex.referencesOf(className));
+        }
+        return references;
+    }
+
+    /**
+     * Writes the class list of the minimized jar and, if asked for, dumps and attaches a CDS archive for the
+     * minimized artifact. The archive needs the artifact on the class path as is, so WARs only get the class list.
+     */
+    private void classDataSharing(File minimizedArtifact, File minimizedJar) throws IOException {
+        final Set<String> sharedClasses = new LinkedHashSet<String>();
+        if (classLoadOrder != null) {
+            sharedClasses.addAll(ClassLoadOrder.read(new File(classLoadOrder)));
+        }
+        sharedClasses.addAll(new TreeSet<String>(JarIndex.build(minimizedJar).classes()));
+
+        final File list = new File(target, ClassDataSharing.CLASS_LIST);
+        ClassDataSharing.writeClassList(sharedClasses, list);
+        getLog().info("Class list of " + sharedClasses.size() + " classes written to: " + list.getAbsolutePath());
+
+        if (!cdsArchive) {
+            return;
+        }
+        if (!isJar(minimizedArtifact)) {
+            getLog().warn("CDS archives can only be dumped for jar artifacts, skipping " + minimizedArtifact.getName());
+            return;
+        }
+
+        final List<String> output = new ArrayList<String>();
+        final File archive;
+        try {
+            archive = ClassDataSharing.dumpArchive(new File(cdsJavaHome), list, minimizedArtifact,
+                    cdsArchiveOf(minimizedArtifact), output);
+        } finally {
+            for (String line : output) {
+                getLog().debug(line);
+            }
+        }
+        attachCdsArchive(archive);
+    }
+
+    private boolean classDataSharingUpToDate(File minimizedArtifact) {
+        if (!classList && !cdsArchive) {
+            return true;
+        }
+        final File list = new File(target, ClassDataSharing.CLASS_LIST);
+        if (!list.isFile() || list.lastModified() < minimizedArtifact.lastModified()) {
+            return false;
+        }
+        final File archive = cdsArchiveOf(minimizedArtifact);
+        return !cdsArchive || !isJar(minimizedArtifact)
+                || (archive.isFile() && archive.lastModified() >= list.lastModified());
+    }
+
+    private File cdsArchiveOf(File minimizedArtifact) {
+        final String name = minimizedArtifact.getName();
+        return new File(target, name.substring(0, name.lastIndexOf('.') + 1) + ClassDataSharing.ARCHIVE_EXTENSION);
+    }
+
+    private void attachCdsArchive(File archive) {
+        projectHelper.attachArtifact(project, ClassDataSharing.ARCHIVE_EXTENSION, cdsClassifier, archive);
+        getLog().info("CDS archive attached as '" + cdsClassifier + "': " + archive.getAbsolutePath());
+    }
+
+    private static boolean isJar(File artifact) {
+        return artifact.getName().endsWith(".jar");
+    }
+
+    /**
+     * The packager of artifacts other than plain WARs, which are packaged as they are minimized, see
+     * {@link #startWar(Pipeline)}.
+     */
+    private ArtifactPackager packagerFor(String artifactExtension, boolean boot) {
+        if (boot) {
+            final int threads = slimmingThreads > 0 ? slimmingThreads : Runtime.getRuntime().availableProcessors();
+            return new BootArtifactPackager(compressionPolicy(), reproducibility(), threads,
+                    new File(target, BOOT_LIBRARIES));
+        }
+        if ("jar".equals(artifactExtension)) {
+            if (slimEachDependency) {
+                getLog().warn("slimEachDependency only applies to WARs, packaging a single minimized jar");
+            }
+            return new JarArtifactPackager(compressionPolicy(), reproducibility());
+        }
+        return null;
+    }
+
+    /**
+     * The dependencies slimmed one by one to take the place of the libraries of a WAR, or <code>null</code> to
+     * package the minimized jar instead.
+     */
+    private Map<String, File> slimmedLibraries(Set<File> artifactLocations, File minimizedJar) throws IOException {
+        if (!slimEachDependency) {
+            return null;
+        }
+        final int threads = slimmingThreads > 0 ? slimmingThreads : Runtime.getRuntime().availableProcessors();
+        final Map<String, File> libraries = new DependencySlimmer(threads, reproducibility())
+                .slim(artifactLocations, minimizedJar, new File(target, SLIMMED_LIBRARIES));
+        getLog().info("Slimmed " + libraries.size() + " libraries of " + artifactLocations.size() + " dependencies");
+        return libraries;
+    }
+
+    private Reproducibility reproducibility() {
+        final Reproducibility reproducibility = Reproducibility.parse(outputTimestamp, reproducible);
+        // the startup layout orders entries on purpose
+        return startupLayout ? reproducibility.keepingOrder() : reproducibility;
+    }
+
+    private CompressionPolicy compressionPolicy() {
+        final int threads = compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors();
+        return CompressionPolicy.parse(compression, compressionByType, threads);
+    }
+
+    private void attachMinimizedArtifact(File minimizedArtifact) {
+        project.getArtifact().setFile(minimizedArtifact);
+        projectHelper.attachArtifact(project, "jar", "slimjar", minimizedArtifact);
+    }
+
+    /**
+     * Hashes everything the outcome of a minimization depends on - the sources, the resolved dependencies, the
+     * classes to force include, the content of the project artifact, the checks it has to pass and the JDK the CDS
+     * archive is dumped with.
+     */
+    private String fingerprint(Set<File> artifactLocations) throws IOException {
+        final Fingerprint fingerprint = new Fingerprint()
+                .add(FINGERPRINT_VERSION)
+                .add(forceInclude)
+                .add(String.valueOf(pruneDependencies))
+                // a conflict fails the build before the fingerprint is recorded, so a reused artifact had none
+                .add(String.valueOf(failOnClassConflict))
+                .add(analysisInput, String.valueOf(analyzeArtifact))
+                .add(String.valueOf(startupLayout), String.valueOf(hotClasses), jarIndexName)
+                .add(String.valueOf(slimEachDependency), reproducibility().toString())
+                .add(compression, compressionByType == null ? null
+                        : new TreeMap<String, String>(compressionByType).toString())
+                .addContent(new File(classes))
+                .addContent(new File(sources))
+                .addContent(artifactLocations)
+                .addContent(classLoadOrder == null ? Collections.<File>emptySet()
+                        : Collections.singleton(new File(classLoadOrder)))
+                .addArchive(project.getArtifact().getFile());
+        if (cdsArchive) {
+            // a CDS archive only works with the JDK that dumped it, its release file tells the exact version
+            fingerprint.add(new File(cdsJavaHome).getAbsolutePath())
+                    .addContent(new File(cdsJavaHome, JDK_RELEASE_FILE));
+        }
+        return fingerprint.hash();
+    }
+
+    /**
+     * Sums up the events of the engine periodically, expecting about one per class of the given libraries.
+     */
+    private EventSink<ComponentEvent> attachProgressListeners(Set<File> libraries) throws IOException {
+        final EventSink<ComponentEvent> progress = new EventSink<ComponentEvent>(getLog(), "Minimizing",
+                countClasses(libraries));
+        ComponentEventDispatcher.bind(progress);
+        return progress;
+    }
+
+    /**
+     * Counts the classes of the given jars from their central directories, no class is read.
+     */
+    private static long countClasses(Set<File> jars) throws IOException {
+        long classes = 0;
+        for (File jar : jars) {
+            if (!jar.isFile()) {
+                continue;
+            }
+            final ZipFile zip = new ZipFile(jar);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    if (entries.nextElement().getName().endsWith(".class")) {
+                        classes++;
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        }
+        return classes;
+    }
+
     private void initizlizeLogger() {
-        // We want to log codarama messages with priority
-        ConsoleAppender codaramaAppender = new ConsoleAppender(new PatternLayout(LOG_PATTERN));
-        if (getLog().isDebugEnabled()) {
-            // consider log level - if the Maven was started with the debug flag, we should also respect it and enable
-            // debug messages in our code
-            codaramaAppender.setThreshold(Level.DEBUG);
-        } else {
-            // in any other case we assume INFO level should be enough
-            codaramaAppender.setThreshold(Level.INFO);
-        }
-        codaramaAppender.activateOptions();
-        Logger.getLogger(CODARAMA_ROOT_PACKAGE).addAppender(codaramaAppender);
-
-        // root appender would output anything we use in diet-engine, we want to limit it to errors only
-        // because of chatty frameworks such as Spring, change it and all hell breaks loose, guaranteed
-        ConsoleAppender rootAppender = new ConsoleAppender(new PatternLayout(LOG_PATTERN));
-        rootAppender.setThreshold(Level.ERROR);
-        rootAppender.activateOptions();
-        Logger.getRootLogger().addAppender(rootAppender);
+        // log4j is configured process wide, so in a long lived or parallel build only the first execution gets to add
+        // the appenders, any further execution would make every message appear once more
+        synchronized (Logger.class) {
+            final Logger codaramaLogger = Logger.getLogger(CODARAMA_ROOT_PACKAGE);
+            if (codaramaLogger.getAppender(CODARAMA_APPENDER) == null) {
+                // We want to log codarama messages with priority
+                ConsoleAppender codaramaAppender = new ConsoleAppender(new PatternLayout(LOG_PATTERN));
+                codaramaAppender.setName(CODARAMA_APPENDER);
+                if (getLog().isDebugEnabled()) {
+                    // consider log level - if the Maven was started with the debug flag, we should also respect it
+                    // and enable debug messages in our code
+                    codaramaAppender.setThreshold(Level.DEBUG);
+                } else {
+                    // in any other case we assume INFO level should be enough
+                    codaramaAppender.setThreshold(Level.INFO);
+                }
+                codaramaAppender.activateOptions();
+                codaramaLogger.addAppender(codaramaAppender);
+            }
+
+            final Logger rootLogger = Logger.getRootLogger();
+            if (rootLogger.getAppender(ROOT_APPENDER) == null) {
+                // root appender would output anything we use in diet-engine, we want to limit it to errors only
+                // because of chatty frameworks such as Spring, change it and all hell breaks loose, guaranteed
+                ConsoleAppender rootAppender = new ConsoleAppender(new PatternLayout(LOG_PATTERN));
+                rootAppender.setName(ROOT_APPENDER);
+                rootAppender.setThreshold(Level.ERROR);
+                rootAppender.activateOptions();
+                rootLogger.addAppender(rootAppender);
+            }
+        }
     }
 
     private void logStatistics(MinimizationStatistics statistics) {
+        logReportHeader();
+        getLog().info("Total execution time : " + statistics.getFormattedExecutionTime());
+        getLog().info("Total source files : " + statistics.getSourceFilesCount());
+        getLog().info("Total dependencies before minimization : " + statistics.getTotalDependenciesCount());
+        getLog().info("Total dependencies after minimization : " + statistics.getMinimizedDependenciesCount());
+        if (statistics.getTotalDependenciesCount() > 0) {
+            // in floating point, integer division would truncate the percentage
+            final double percentage = statistics.getMinimizedDependenciesCount() * 100.0
+                    / statistics.getTotalDependenciesCount();
+            getLog().info("Minimized dependencies as part of the total depednencies : "
+                    + String.format(Locale.ROOT, "%.1f", percentage) + "%");
+        }
+    }
+
+    private void logReportHeader() {
         // display a cherry, cherries are part of any healthy diet
         getLog().info("__.--~~.,-.__");
         getLog().info("`~-._.-(`-.__`-.");
@@ -186,16 +916,10 @@ public class MavenMinimizerMojo extends AbstractMojo {
         getLog().info("=========================");
         getLog().info("   Minimization Report");
         getLog().info("=========================");
-        getLog().info("Total execution time : " + statistics.getFormattedExecutionTime());
-        getLog().info("Total source files : " + statistics.getSourceFilesCount());
-        getLog().info("Total dependencies before minimization : " + statistics.getTotalDependenciesCount());
-        getLog().info("Total dependencies after minimization : " + statistics.getMinimizedDependenciesCount());
-        double percentage = statistics.getMinimizedDependenciesCount() * 100 / statistics.getTotalDependenciesCount();
-        getLog().info("Minimized dependencies as part of the total depednencies : " + percentage + "%");
     }
 
     // [tmateev] keeping this in for now, although it is unused, should use it when enabling it Maven 2.x support
-    private Minimizer buildUpDependenciesLegacy(Minimizer minimizer) throws IOException {
+    private Minimizer buildUpDependenciesLegacy(Minimizer minimizer) throws IOException, MojoExecutionException {
 
         // set up list of classes to force include (e.g. runtime dependencies)
         if (forceInclude != null) {
@@ -227,65 +951,59 @@ public class MavenMinimizerMojo extends AbstractMojo {
         }
 
         // if inspecting the Maven project resulted in an empty list then we
-        // fallback to the Maven project local repository (could be very costly
-        // as this directory typically contains lots of files)
+        // fallback to the Maven project local repository, if asked to (could be very
+        // costly as this directory typically contains lots of files)
         if (artifactLocations.isEmpty()) {
-            getLog().warn("Could not get list of dependencies from Maven, reverting to Maven local repository");
-            return minimizer.libs(pathToLocalRepo);
+            if (!scanLocalRepository) {
+                throw new MojoExecutionException("Could not get list of dependencies from Maven");
+            }
+            return minimizer.libs(scanLocalRepository());
         }
 
         return minimizer.libs(artifactLocations);
     }
 
-    private Minimizer buildUpDependencies(Minimizer minimizer) throws IOException {
+    private Minimizer buildUpDependencies(Minimizer minimizer, Set<File> libraries, Set<String> entryPoints)
+            throws IOException {
 
         // set up list of classes to force include (e.g. runtime dependencies)
+        List<ClassName> classNames = new ArrayList<ClassName>();
         if (forceInclude != null) {
-            List<ClassName> classNames = new ArrayList<ClassName>();
             for (String classToForceInclude : forceInclude) {
                 classNames.add(new ClassName(classToForceInclude));
             }
-
-            minimizer.forceInclude(classNames.toArray(new ClassName[classNames.size()]));
         }
-
-        final Set<File> artifactLocations = askMavenForDependencies();
-
-        // if inspecting the Maven project resulted in an empty list then we
-        // fallback to the Maven project local repository (could be very costly
-        // as this directory typically contains lots of files)
-        if (artifactLocations.isEmpty()) {
-            getLog().warn("Could not get list of dependencies from Maven, reverting to Maven local repository");
-            return minimizer.libs(pathToLocalRepo);
+        for (String entryPoint : entryPoints) {
+            classNames.add(new ClassName(entryPoint.replace('/', '.')));
+        }
+        if (!classNames.isEmpty()) {
+            minimizer.forceInclude(classNames.toArray(new ClassName[classNames.size()]));
         }
 
-        return minimizer.libs(artifactLocations);
+        return minimizer.libs(libraries);
     }
 
-    // Unfortunately this code only works with Maven 3.x, meaning that any users of our plugin that have older Maven
-    // version would have a hard time. There seems to be quite a huge gap between the way Maven 2.x and MAven 3.x
-    // handles dependency resolution.
-
-    // see http://blog.sonatype.com/2011/01/how-to-use-aether-in-maven-plugins/#.VV5jarylilM
-    // see http://labs.bsb.com/2012/10/using-aether-to-resolve-dependencies-in-a-maven-plugins/
-    private Set<File> askMavenForDependencies() {
-        ArrayList<String> scopes = new ArrayList<String>();
-        scopes.add(Artifact.SCOPE_COMPILE_PLUS_RUNTIME);
-        Collection<Artifact> artifacts = new ArrayList<Artifact>();
-        try {
-            // FIXME [tmateev] try to decrypt the magic behind the project dependencies resolver that
-            // deprecates this one and use the one that is recommended
-            artifacts = projectDependenciesResolver.resolve(project, scopes, session);
-        } catch (ArtifactNotFoundException e) {
-            getLog().error("Minimize not successful!", e);
-        } catch (ArtifactResolutionException e) {
-            getLog().error("Minimize not successful!", e);
+    /**
+     * Narrows the resolved dependencies down to the ones the compiled classes of the project can reach, so that the
+     * minimizer does not have to index jars which cannot contribute anything. The class index of every dependency
+     * is taken from the persistent index cache, only new or changed jars are read.
+     */
+    private Set<File> reachableDependencies(Set<File> artifactLocations, Set<String> entryPoints, Pipeline pipeline)
+            throws IOException {
+        final File classesDirectory = classes == null ? null : new File(classes);
+        if (!pruneDependencies || artifactLocations.isEmpty() || classesDirectory == null
+                || !classesDirectory.isDirectory()) {
+            return artifactLocations;
         }
 
-        Set<File> artifactLocations = new HashSet<File>();
-        for (Artifact dependency : artifacts) {
-            artifactLocations.add(dependency.getFile());
-        }
-        return artifactLocations;
+        final Pipeline.Stage<Set<String>> projectRoots = forkProjectRootClasses(pipeline);
+        final Map<File, JarIndex> indexes = indexDependencies(artifactLocations, pipeline);
+        final Set<String> roots = projectRoots.get();
+        roots.addAll(forcedRootClasses(indexes));
+        roots.addAll(entryPoints);
+        final Set<File> reachable = new ReachableDependencies(indexes).from(roots);
+        getLog().info("Dependencies reachable from " + classes + " : " + reachable.size() + " of "
+                + artifactLocations.size());
+        return reachable;
     }
 }
@@ -0,0 +1,21 @@
+package org.codarama.diet;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codarama.diet.metrics.PhaseListener;
+import org.codarama.diet.metrics.PhaseMetrics;
+
+/**
+ * A listener to attach so the user can see what each phase of the minimization cost while the plugin is running.
+ */
+public class PhaseProgressListener implements PhaseListener {
+
+    private final Log logger;
+
+    public PhaseProgressListener(Log logger) {
+        this.logger = logger;
+    }
+
+    public void on(PhaseMetrics phase) {
+        logger.info("Phase " + phase);
+    }
+}
@@ -0,0 +1,178 @@
+package org.codarama.diet;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Phase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the stages of a goal that do not depend on each other at the same time, e.g. parses the classes of the project
+ * while the dependencies are indexed, or looks for duplicate classes while the artifact is packaged.
+ *
+ * A forked stage runs in the background in a phase of its own, its result is awaited where it is needed.
+ * {@link #map(Collection, Step)} hands items to the threads through a bounded window, so that it never runs ahead of
+ * the caller by more than a few items per thread. Results always come back in the order the work was handed in, so
+ * the outcome does not depend on the number of threads or on their scheduling. A stage that fails surfaces where its
+ * result is awaited, with the exception it threw. With a single thread everything runs on the calling thread, in
+ * order.
+ */
+final class Pipeline implements Closeable {
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final BuildMetrics metrics;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    /**
+     * @param threads the number of threads, all available processors when not positive
+     * @param metrics where forked stages report their phases, or <code>null</code>
+     */
+    Pipeline(int threads, BuildMetrics metrics) {
+        final int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.metrics = metrics;
+        this.executor = count == 1
+                ? MoreExecutors.newDirectExecutorService()
+                : Executors.newFixedThreadPool(count,
+                        new ThreadFactoryBuilder().setNameFormat("diet-pipeline-%d").setDaemon(true).build());
+        this.maxInFlight = count * IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * A step of a stage, applied to every item handed to {@link #map(Collection, Step)}.
+     */
+    interface Step<I, O> {
+
+        O apply(I input) throws IOException;
+    }
+
+    /**
+     * Work done by a forked stage.
+     */
+    interface Work<T> {
+
+        T run() throws IOException;
+    }
+
+    /**
+     * The result of a forked stage, see {@link #get()}.
+     */
+    static final class Stage<T> {
+
+        private final Future<T> future;
+
+        private Stage(Future<T> future) {
+            this.future = future;
+        }
+
+        /**
+         * Waits for the stage to complete, rethrowing what it threw.
+         */
+        T get() throws IOException {
+            return await(future);
+        }
+    }
+
+    /**
+     * Starts the given work in the background, reporting to a phase of the given name.
+     */
+    <T> Stage<T> fork(final String phaseName, final Work<T> work) {
+        return new Stage<T>(executor.submit(new Callable<T>() {
+            public T call() throws IOException {
+                final Phase phase = metrics == null ? null : metrics.start(phaseName);
+                try {
+                    return work.run();
+                } finally {
+                    if (phase != null) {
+                        phase.end();
+                    }
+                }
+            }
+        }));
+    }
+
+    /**
+     * Applies the step to every input in parallel, reporting to the phase of the calling thread.
+     *
+     * @return the outputs, in the order of the inputs
+     */
+    <I, O> List<O> map(Collection<I> inputs, final Step<I, O> step) throws IOException {
+        final Phase phase = Phase.current();
+        final List<O> outputs = new ArrayList<O>(inputs.size());
+        final Deque<Future<O>> inFlight = new ArrayDeque<Future<O>>();
+        try {
+            for (final I input : inputs) {
+                if (inFlight.size() >= maxInFlight) {
+                    outputs.add(await(inFlight.removeFirst()));
+                }
+                inFlight.addLast(executor.submit(new Callable<O>() {
+                    public O call() throws IOException {
+                        final Phase previous = phase.attach();
+                        try {
+                            return step.apply(input);
+                        } finally {
+                            phase.detach(previous);
+                        }
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                outputs.add(await(inFlight.removeFirst()));
+            }
+        } finally {
+            // nothing keeps running once a step failed
+            for (Future<O> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Stops the threads, waiting for the stages still running so that nothing they read is closed under them.
+     */
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a stage to complete");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -5,11 +5,12 @@ import org.codarama.diet.api.reporting.listener.EventListener;
 import org.codarama.diet.event.model.MinimizationEvent;
 
 /**
- * A listener to attach so the user can see progress in the console while plugin is runnig.
+ * A listener to attach so the user can see progress in the console while plugin is runnig. Every event is logged at
+ * debug level, see {@link EventSink} for a listener summing progress up instead.
  *
  * Created by Ayld on 7/10/16.
  */
-public class ProgressListener implements EventListener<MinimizationEvent>{
+public class ProgressListener implements EventListener<MinimizationEvent> {
 
     private final Log logger;
 
@@ -18,6 +19,8 @@ public class ProgressListener implements EventListener<MinimizationEvent>{
     }
 
     public void on(MinimizationEvent event) {
-        logger.info(event.toString());
+        if (logger.isDebugEnabled()) {
+            logger.debug(event.toString());
+        }
     }
 }
@@ -0,0 +1,74 @@
+package org.codarama.diet;
+
+import com.google.common.collect.Maps;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ReachableDependencies;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Phase;
+import org.codarama.diet.metrics.ReachabilityReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Reports which classes of each dependency the project can reach, without minimizing or repackaging anything.
+ * </p>
+ * <p>
+ * Only the compiled classes and the dependency indexes are read, which the index cache mostly has already, and the
+ * only file written is <code>diet-reachability.json</code>. Meant for quick checks of how a change affects the
+ * dependency footprint, e.g. on pull requests.
+ * </p>
+ */
+@Mojo(name = "reachability", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class ReachabilityMojo extends AbstractDietMojo {
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (classes == null || !new File(classes).isDirectory()) {
+            throw new MojoExecutionException("No compiled classes found at " + classes + ", was the project compiled?");
+        }
+
+        final BuildMetrics metrics = new BuildMetrics();
+        metrics.addListener(new PhaseProgressListener(getLog()));
+        try {
+            final Set<File> artifactLocations;
+            Phase phase = metrics.start(PHASE_RESOLVE);
+            try {
+                artifactLocations = resolveDependencies();
+                phase.entries(artifactLocations.size());
+            } finally {
+                phase.end();
+            }
+
+            final ReachabilityReport report;
+            phase = metrics.start(PHASE_INDEX);
+            try {
+                final Map<File, JarIndex> indexes = indexDependencies(artifactLocations);
+                final Set<String> roots = rootClasses(indexes);
+
+                final Map<File, Integer> definedClasses = Maps.newLinkedHashMap();
+                for (Map.Entry<File, JarIndex> index : indexes.entrySet()) {
+                    definedClasses.put(index.getKey(), index.getValue().size());
+                }
+                report = new ReachabilityReport(roots.size(), definedClasses,
+                        new ReachableDependencies(indexes).classesFrom(roots));
+            } finally {
+                phase.end();
+            }
+
+            getLog().info("Dependencies reachable from " + classes + " : " + report.reachableDependencies() + " of "
+                    + report.dependencies());
+            getLog().info("Classes reachable : " + report.reachableClasses() + " of " + report.definedClasses());
+            getLog().info("Reachability report written to: " + report.write(new File(target), project.getId()));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to analyze the dependencies of " + project.getId() + " : "
+                    + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.codarama.diet;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ReachableDependencies;
+import org.codarama.diet.index.SpringFactories;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Phase;
+import org.codarama.diet.packaging.ClasspathJar;
+import org.codarama.diet.packaging.DependencySlimmer;
+import org.codarama.diet.packaging.MinimizedJarWriter;
+import org.eclipse.aether.util.artifact.JavaScopes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Slims the test class path, so that test JVMs start and scan the class path faster.
+ * </p>
+ * <p>
+ * The classes reachable from the compiled test and main classes are found with the same bytecode analysis as
+ * <code>analysisInput=classes</code>, across the dependencies of the test class path. The classes looked up by name
+ * are reachable as well: the service providers the dependencies declare under <code>META-INF/services</code>, the
+ * factories of <code>META-INF/spring.factories</code> (e.g. the listeners of Spring tests) and the classes test
+ * runners start JUnit or TestNG with. Every
+ * dependency jar is then slimmed on its own, like <code>slimEachDependency</code> does: it keeps its used classes and
+ * all of its resources, jars none of whose classes are used are left out. Dependency directories, e.g. modules of the
+ * same build, are kept as they are.
+ * </p>
+ * <p>
+ * The result is <code>diet-test-classpath.jar</code> in the target directory, whose manifest names the slimmed class
+ * path. Its path is set as the <code>diet.testClasspath</code> project property, for surefire to use in place of the
+ * dependency jars:
+ * <code>&lt;additionalClasspathElements&gt;</code> holding <code>${diet.testClasspath}</code> along with
+ * <code>&lt;classpathDependencyScopeExclude&gt;test&lt;/classpathDependencyScopeExclude&gt;</code>.
+ * </p>
+ */
+@Mojo(name = "test-classpath", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES, threadSafe = true)
+public class TestClasspathMojo extends AbstractDietMojo {
+
+    static final String TEST_CLASSPATH_PROPERTY = "diet.testClasspath";
+
+    private static final String TEST_CLASSPATH_JAR = "diet-test-classpath.jar";
+    private static final String TEST_MINIMIZED_JAR = "diet-test-minimized.jar";
+    private static final String TEST_LIBRARIES = "diet-test-libraries";
+
+    private static final String PHASE_SLIM = "slim";
+
+    /**
+     * Classes of the test frameworks the test runner (e.g. surefire) loads by name, no test class refers to them.
+     */
+    static final Set<String> TEST_FRAMEWORK_ENTRY_POINTS = ImmutableSet.of(
+            "org/junit/runner/JUnitCore", "org/junit/runner/Request", "org/junit/runner/Computer",
+            "org/junit/runners/JUnit4", "org/junit/runners/BlockJUnit4ClassRunner", "org/junit/runners/Suite",
+            "org/junit/internal/builders/AllDefaultPossibilitiesBuilder",
+            "junit/framework/TestCase", "junit/framework/TestSuite",
+            "org/junit/platform/launcher/core/LauncherFactory",
+            "org/testng/TestNG");
+
+    @Parameter(defaultValue = "${project.build.testOutputDirectory}", property = "testClasses", required = false)
+    private String testClasses;
+
+    @Parameter(defaultValue = "false", property = "maven.test.skip", required = false)
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Tests are skipped, not slimming the test class path");
+            return;
+        }
+        if (classes == null || !new File(classes).isDirectory()) {
+            throw new MojoExecutionException("No compiled classes found at " + classes + ", was the project compiled?");
+        }
+
+        final BuildMetrics metrics = new BuildMetrics();
+        metrics.addListener(new PhaseProgressListener(getLog()));
+        try {
+            final Set<File> artifactLocations;
+            Phase phase = metrics.start(PHASE_RESOLVE);
+            try {
+                artifactLocations = resolveDependencies(JavaScopes.TEST);
+                phase.entries(artifactLocations.size());
+            } finally {
+                phase.end();
+            }
+
+            final Map<File, Set<String>> reachable;
+            phase = metrics.start(PHASE_INDEX);
+            try {
+                final Map<File, JarIndex> indexes = indexDependencies(artifactLocations);
+                final Set<String> roots = rootClasses(indexes);
+                final File testClassesDirectory = testClasses == null ? null : new File(testClasses);
+                if (testClassesDirectory != null && testClassesDirectory.isDirectory()) {
+                    addReferences(JarIndex.build(testClassesDirectory), roots);
+                }
+                roots.addAll(entryPoints(artifactLocations));
+                reachable = new ReachableDependencies(indexes).classesFrom(roots);
+            } finally {
+                phase.end();
+            }
+
+            final List<File> classpath = Lists.newArrayList();
+            phase = metrics.start(PHASE_SLIM);
+            try {
+                // directories stay on the class path as they are, only jars get slimmed
+                final Map<File, Set<String>> jarClasses = Maps.newLinkedHashMap();
+                for (Map.Entry<File, Set<String>> dependency : reachable.entrySet()) {
+                    if (!dependency.getKey().isDirectory()) {
+                        jarClasses.put(dependency.getKey(), dependency.getValue());
+                    }
+                }
+
+                final File minimizedJar = new File(target, TEST_MINIMIZED_JAR);
+                minimizedJar.getParentFile().mkdirs();
+                MinimizedJarWriter.write(jarClasses, minimizedJar);
+                final Map<File, File> slimmed = new DependencySlimmer(parallelism())
+                        .slimBySource(jarClasses.keySet(), minimizedJar, new File(target, TEST_LIBRARIES));
+
+                // each slimmed jar takes the place of its dependency, so the class path keeps its order
+                int jars = 0;
+                final int slimmedJars = slimmed.size();
+                for (File dependency : artifactLocations) {
+                    if (dependency.isDirectory()) {
+                        classpath.add(dependency);
+                    } else {
+                        jars++;
+                        final File slimmedJar = slimmed.remove(dependency);
+                        if (slimmedJar != null) {
+                            classpath.add(slimmedJar);
+                        }
+                    }
+                }
+                classpath.addAll(slimmed.values());
+                getLog().info("Slimmed the test class path to " + slimmedJars + " jars of " + jars);
+            } finally {
+                phase.end();
+            }
+
+            final File classpathJar = new File(target, TEST_CLASSPATH_JAR);
+            ClasspathJar.write(classpath, classpathJar);
+            project.getProperties().setProperty(TEST_CLASSPATH_PROPERTY, classpathJar.getAbsolutePath());
+            getLog().info("Slimmed test class path written to: " + classpathJar.getAbsolutePath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to slim the test class path of " + project.getId() + " : "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The classes of the test class path looked up by name, see {@link SpringFactories#entryPoints(Collection)} and
+     * {@link #TEST_FRAMEWORK_ENTRY_POINTS}.
+     */
+    static Set<String> entryPoints(Collection<File> artifactLocations) throws IOException {
+        final Set<String> entryPoints = SpringFactories.entryPoints(artifactLocations);
+        entryPoints.addAll(TEST_FRAMEWORK_ENTRY_POINTS);
+        return entryPoints;
+    }
+}
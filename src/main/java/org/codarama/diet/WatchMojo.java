@@ -0,0 +1,116 @@
+package org.codarama.diet;
+
+import com.google.common.collect.Sets;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ProjectClasses;
+import org.codarama.diet.index.ReachableDependencies;
+import org.codarama.diet.packaging.MinimizedJarWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Keeps the minimized jar up to date while the project is being worked on, until the build is interrupted.
+ * </p>
+ * <p>
+ * The dependencies are resolved and indexed once, then the compiled classes are watched - they change whenever the
+ * IDE or <code>mvn compile</code> compiles the sources. Only the changed class files are read again. If they refer to
+ * the same classes as before, which is what most edits do, nothing else happens. Otherwise the reachable classes are
+ * recomputed from the in-memory indexes, and the minimized jar is updated in place: the classes it holds already are
+ * copied from it, only the dependencies holding newly reachable classes are read.
+ * </p>
+ * <p>
+ * This works on the compiled classes, like <code>analysisInput=classes</code>, the Diet engine is not involved. The
+ * dependencies are not watched, restart the goal when they change.
+ * </p>
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends AbstractDietMojo {
+
+    // in milliseconds, how long the compiled classes have to stay unchanged before the jar is updated
+    @Parameter(defaultValue = "100", property = "watchQuietPeriod", required = false)
+    private long watchQuietPeriod;
+
+    // in seconds, how long to watch for, until interrupted when not positive
+    @Parameter(defaultValue = "0", property = "watchDuration", required = false)
+    private long watchDuration;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final File classesDirectory = classes == null ? null : new File(classes);
+        if (classesDirectory == null || !classesDirectory.isDirectory()) {
+            throw new MojoExecutionException("No compiled classes found at " + classes + ", was the project compiled?");
+        }
+        final File minimizedJar = new File(target, BYTECODE_MINIMIZED_JAR);
+
+        try {
+            final Map<File, JarIndex> indexes = indexDependencies(resolveDependencies());
+            final Set<String> forcedRoots = forcedRootClasses(indexes);
+            final ReachableDependencies reachability = new ReachableDependencies(indexes);
+
+            // watch before the first scan, so that no change slips through in between
+            final DirectoryWatcher watcher = new DirectoryWatcher(classesDirectory);
+            try {
+                long start = System.nanoTime();
+                final ProjectClasses projectClasses = ProjectClasses.scan(classesDirectory);
+                Map<File, Set<String>> reachable = reachability.classesFrom(roots(projectClasses, forcedRoots));
+                minimizedJar.getParentFile().mkdirs();
+                MinimizedJarWriter.update(reachable, minimizedJar);
+                getLog().info("Minimized jar written to " + minimizedJar.getAbsolutePath() + " in "
+                        + millisSince(start) + " ms, watching " + classesDirectory.getAbsolutePath() + " for changes");
+
+                final long deadline = watchDuration > 0 ? System.currentTimeMillis() + watchDuration * 1000 : 0;
+                while (deadline == 0 || System.currentTimeMillis() < deadline) {
+                    final long timeout = deadline == 0 ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+                    final Set<File> changes = watcher.awaitChanges(Math.max(timeout, 1), watchQuietPeriod);
+                    if (changes != null && changes.isEmpty()) {
+                        continue;
+                    }
+
+                    start = System.nanoTime();
+                    final boolean referencesChanged = changes == null
+                            ? projectClasses.rescan()
+                            : projectClasses.update(changes);
+                    if (!referencesChanged) {
+                        getLog().info("Referenced classes unchanged, minimized jar is up to date");
+                        continue;
+                    }
+
+                    final Map<File, Set<String>> updated = reachability.classesFrom(roots(projectClasses, forcedRoots));
+                    if (updated.equals(reachable)) {
+                        getLog().info("Reachable classes unchanged, minimized jar is up to date");
+                        continue;
+                    }
+                    final int changedClasses = MinimizedJarWriter.update(updated, minimizedJar);
+                    reachable = updated;
+                    getLog().info("Minimized jar updated, " + changedClasses + " classes added or removed in "
+                            + millisSince(start) + " ms");
+                }
+            } finally {
+                watcher.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().info("Stopped watching " + classesDirectory.getAbsolutePath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to keep the minimized jar of " + project.getId()
+                    + " up to date : " + e.getMessage(), e);
+        }
+    }
+
+    private static Set<String> roots(ProjectClasses projectClasses, Set<String> forcedRoots) {
+        final Set<String> roots = Sets.newHashSet(projectClasses.references());
+        roots.addAll(forcedRoots);
+        return roots;
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,102 @@
+package org.codarama.diet.cds;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Produces what the JVM needs for Application Class Data Sharing (AppCDS) : a class list and, from it, a shared
+ * archive of the parsed classes, which the JVM maps at startup instead of loading and verifying the classes again.
+ *
+ * Dumping the archive runs the <code>java</code> launcher of the given JDK, which has to be the JDK the application
+ * runs on, as an archive is only accepted by the exact JVM that created it. AppCDS for application classes needs
+ * Java 10 or later.
+ */
+public final class ClassDataSharing {
+
+    public static final String CLASS_LIST = "classes.lst";
+    public static final String ARCHIVE_EXTENSION = "jsa";
+
+    // lines of the launcher output kept for the error message of a failed dump
+    private static final int OUTPUT_TAIL = 20;
+
+    private ClassDataSharing() {
+    }
+
+    /**
+     * Writes the given classes, internal names, one per line, in the format of <code>-XX:SharedClassListFile</code>.
+     */
+    public static void writeClassList(Collection<String> classes, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            for (String className : classes) {
+                out.write(className);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Dumps a shared archive of the classes in the class list, as found on the given class path.
+     *
+     * @param javaHome the JDK to dump the archive with
+     * @param output receives every line the launcher prints
+     * @throws IOException if the launcher cannot be run or fails
+     */
+    public static File dumpArchive(File javaHome, File classList, File classPath, File archive, List<String> output)
+            throws IOException {
+        final File java = new File(new File(javaHome, "bin"), isWindows() ? "java.exe" : "java");
+        if (!java.isFile()) {
+            throw new IOException("No java launcher found in " + javaHome);
+        }
+
+        final List<String> command = Lists.newArrayList(java.getAbsolutePath(),
+                "-Xshare:dump",
+                "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                "-XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+                "-cp", classPath.getAbsolutePath());
+        archive.delete();
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                Charsets.UTF_8));
+        final int exitCode;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                output.add(line);
+            }
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while dumping " + archive);
+        } finally {
+            in.close();
+        }
+
+        if (exitCode != 0 || !archive.isFile()) {
+            final List<String> tail = output.subList(Math.max(0, output.size() - OUTPUT_TAIL), output.size());
+            throw new IOException("Dumping " + archive + " failed with exit code " + exitCode + " : "
+                    + Joiner.on('\n').join(tail));
+        }
+        return archive;
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+    }
+}
@@ -0,0 +1,43 @@
+package org.codarama.diet.fingerprint;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * SHA-256 digests of files, remembered by path, size and modification time.
+ *
+ * The {@link Fingerprint} and the index cache both hash the dependency jars of a build, whichever comes first reads a
+ * jar and the other gets its digest for free. A file written again gets a new modification time, so it is read again.
+ */
+public final class FileDigests {
+
+    private static final int MAX_FILES = 10000;
+
+    private static final Cache<String, HashCode> DIGESTS = CacheBuilder.newBuilder().maximumSize(MAX_FILES).build();
+
+    private FileDigests() {
+    }
+
+    public static HashCode sha256(File file) throws IOException {
+        final String key = key(file);
+        HashCode digest = DIGESTS.getIfPresent(key);
+        if (digest == null) {
+            digest = Files.asByteSource(file).hash(Hashing.sha256());
+            // a file changed while being read is read again next time
+            if (key.equals(key(file))) {
+                DIGESTS.put(key, digest);
+            }
+        }
+        return digest;
+    }
+
+    private static String key(File file) {
+        return file.getAbsolutePath() + '\0' + file.length() + '\0' + file.lastModified();
+    }
+}
@@ -0,0 +1,110 @@
+package org.codarama.diet.fingerprint;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A SHA-256 hash over the inputs of a minimization.
+ *
+ * Inputs are added in a well defined order (directories are walked sorted by name) so the same inputs always result
+ * in the same fingerprint, regardless of the order the file system lists them in. Collections of files are added in
+ * the order given, as the order of a class path decides which of two classes of the same name is used.
+ */
+public class Fingerprint {
+
+    private final Hasher hasher = Hashing.sha256().newHasher();
+
+    public Fingerprint add(String value) {
+        hasher.putString(value == null ? "" : value, Charsets.UTF_8);
+        hasher.putByte((byte) 0);
+        return this;
+    }
+
+    public Fingerprint add(String... values) {
+        if (values == null) {
+            return add((String) null);
+        }
+        for (String value : values) {
+            add(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the content of the given file, or of every file below it when it is a directory. Missing files are
+     * recorded as such, so that appearing or disappearing also changes the fingerprint.
+     */
+    public Fingerprint addContent(File file) throws IOException {
+        return addContent(file, "");
+    }
+
+    /**
+     * Adds the content of all the given files, in the order they are given in, e.g. class path order.
+     */
+    public Fingerprint addContent(Collection<File> files) throws IOException {
+        for (File file : files) {
+            add(file.getAbsolutePath());
+            addContent(file);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the entry names and checksums of the given archive. Unlike {@link #addContent(File)} this ignores
+     * timestamps, so an archive rebuilt from the same content results in the same fingerprint.
+     */
+    public Fingerprint addArchive(File archive) throws IOException {
+        if (archive == null || !archive.isFile()) {
+            return add("<missing>");
+        }
+
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                add(entry.getName());
+                hasher.putLong(entry.getCrc());
+                hasher.putLong(entry.getSize());
+            }
+        } finally {
+            zip.close();
+        }
+        return this;
+    }
+
+    public String hash() {
+        return hasher.hash().toString();
+    }
+
+    private Fingerprint addContent(File file, String relativePath) throws IOException {
+        add(relativePath);
+        if (file == null || !file.exists()) {
+            return add("<missing>");
+        }
+
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    addContent(child, relativePath + "/" + child.getName());
+                }
+            }
+            return this;
+        }
+
+        hasher.putLong(file.length());
+        hasher.putBytes(FileDigests.sha256(file).asBytes());
+        return this;
+    }
+}
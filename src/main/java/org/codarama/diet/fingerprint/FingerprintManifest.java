@@ -0,0 +1,91 @@
+package org.codarama.diet.fingerprint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Remembers the {@link Fingerprint} of the last minimization together with the files it produced, so that a build
+ * with identical inputs can reuse them instead of minimizing all over again.
+ */
+public class FingerprintManifest {
+
+    public static final String FILE_NAME = "diet-fingerprint.properties";
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String MINIMIZED_JAR = "minimizedJar";
+    private static final String MINIMIZED_ARTIFACT = "minimizedArtifact";
+
+    private final File file;
+
+    public FingerprintManifest(File targetDirectory) {
+        this.file = new File(targetDirectory, FILE_NAME);
+    }
+
+    /**
+     * Returns the artifact produced by the last minimization if it had the given fingerprint and all of its outputs
+     * are still in place, or <code>null</code> if the minimization has to be done again.
+     */
+    public File upToDateArtifact(String fingerprint) throws IOException {
+        return upToDate(fingerprint, MINIMIZED_ARTIFACT);
+    }
+
+    /**
+     * Returns the minimized jar of the last minimization under the same conditions as
+     * {@link #upToDateArtifact(String)}, e.g. to check the classes of a reused artifact.
+     */
+    public File upToDateJar(String fingerprint) throws IOException {
+        return upToDate(fingerprint, MINIMIZED_JAR);
+    }
+
+    private File upToDate(String fingerprint, String output) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final Properties manifest = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            manifest.load(in);
+        } finally {
+            in.close();
+        }
+
+        if (!fingerprint.equals(manifest.getProperty(FINGERPRINT))) {
+            return null;
+        }
+
+        final File minimizedJar = new File(manifest.getProperty(MINIMIZED_JAR, ""));
+        final File minimizedArtifact = new File(manifest.getProperty(MINIMIZED_ARTIFACT, ""));
+        if (!minimizedJar.isFile() || !minimizedArtifact.isFile()) {
+            return null;
+        }
+        return MINIMIZED_JAR.equals(output) ? minimizedJar : minimizedArtifact;
+    }
+
+    public void record(String fingerprint, File minimizedJar, File minimizedArtifact) throws IOException {
+        final Properties manifest = new Properties();
+        manifest.setProperty(FINGERPRINT, fingerprint);
+        manifest.setProperty(MINIMIZED_JAR, minimizedJar.getAbsolutePath());
+        manifest.setProperty(MINIMIZED_ARTIFACT, minimizedArtifact.getAbsolutePath());
+
+        file.getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            manifest.store(out, "Inputs and outputs of the last diet minimization");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Forgets the last minimization, e.g. because it is about to be overwritten.
+     */
+    public void invalidate() {
+        file.delete();
+    }
+}
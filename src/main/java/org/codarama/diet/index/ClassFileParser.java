@@ -0,0 +1,325 @@
+package org.codarama.diet.index;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Extracts the name of a class and the names of all classes it refers to from its bytecode.
+ *
+ * Only the constant pool is read. Every class the bytecode can possibly load is named there, either directly as a
+ * class constant or inside a field, method or generic signature, so no further parsing is needed.
+ */
+public final class ClassFileParser {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private ClassFileParser() {
+    }
+
+    /**
+     * Reads the given class file, adding the internal names (e.g. <code>java/lang/String</code>) of the classes it
+     * refers to to the given set.
+     *
+     * @return the internal name of the class itself, or <code>null</code> if this is not a class file at all
+     */
+    public static String parse(InputStream classFile, Set<String> references) throws IOException {
+        final DataInputStream in = new DataInputStream(classFile);
+        if (in.readInt() != MAGIC) {
+            return null;
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        final int count = in.readUnsignedShort();
+        final String[] utf8 = new String[count];
+        // for class constants, the index of the utf8 constant holding the class name
+        final int[] classNames = new int[count];
+
+        for (int i = 1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case METHOD_TYPE:
+                case STRING:
+                case MODULE:
+                case PACKAGE:
+                    in.readUnsignedShort();
+                    break;
+                case METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    in.readInt();
+                    break;
+                case LONG:
+                case DOUBLE:
+                    in.readLong();
+                    i++; // takes up two slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        final String className = utf8[classNames[in.readUnsignedShort()]];
+        if (className == null) {
+            throw new IOException("Invalid this_class constant");
+        }
+
+        for (int i = 1; i < count; i++) {
+            if (classNames[i] == 0) {
+                continue;
+            }
+            final String name = utf8[classNames[i]];
+            if (name.startsWith("[")) {
+                addDescriptorReferences(name, references);
+            } else {
+                references.add(name);
+            }
+        }
+        for (String value : utf8) {
+            if (value != null && looksLikeDescriptor(value)) {
+                addDescriptorReferences(value, references);
+            }
+        }
+
+        references.remove(className);
+        return className;
+    }
+
+    private static boolean looksLikeDescriptor(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        final char first = value.charAt(0);
+        return first == '(' || first == '[' || first == '<' || (first == 'L' && value.indexOf(';') > 0);
+    }
+
+    /**
+     * Picks the class names out of a field, method, class or generic signature, e.g. <code>Ljava/util/List;</code>,
+     * <code>(ILjava/lang/String;)V</code> or <code>&lt;T:Ljava/lang/Object;&gt;Ljava/lang/Object;</code>. Values that
+     * do not parse as a whole, e.g. string constants that merely look like one, add nothing.
+     */
+    static void addDescriptorReferences(String descriptor, Set<String> references) {
+        final SignatureReader reader = new SignatureReader(descriptor);
+        if (reader.read()) {
+            references.addAll(reader.classNames);
+        }
+    }
+
+    /**
+     * A parser of the signature grammar of the class file format, which covers descriptors as well. After a complete
+     * type the next character always starts a new one, so primitives right before a class type cannot hide it.
+     */
+    private static final class SignatureReader {
+
+        private static final String PRIMITIVES = "BCDFIJSZ";
+
+        private final String signature;
+        private final Set<String> classNames = new LinkedHashSet<String>();
+        private int position;
+
+        SignatureReader(String signature) {
+            this.signature = signature;
+        }
+
+        /**
+         * @return whether the whole signature parsed
+         */
+        boolean read() {
+            if (peek() == '<') {
+                if (!typeParameters()) {
+                    return false;
+                }
+                if (peek() != '(') {
+                    return types();
+                }
+            }
+            if (peek() == '(') {
+                return method();
+            }
+            return types();
+        }
+
+        private boolean method() {
+            position++;
+            while (peek() != ')') {
+                if (!type()) {
+                    return false;
+                }
+            }
+            position++;
+            if (peek() == 'V') {
+                position++;
+            } else if (!type()) {
+                return false;
+            }
+            while (peek() == '^') {
+                position++;
+                if (!type()) {
+                    return false;
+                }
+            }
+            return atEnd();
+        }
+
+        /**
+         * One or more types up to the end, e.g. the super class and interfaces of a class signature.
+         */
+        private boolean types() {
+            do {
+                if (!type()) {
+                    return false;
+                }
+            } while (!atEnd());
+            return true;
+        }
+
+        private boolean typeParameters() {
+            position++;
+            do {
+                final int colon = signature.indexOf(':', position);
+                if (colon <= position) {
+                    return false;
+                }
+                position = colon + 1;
+                // the class bound may be missing, interface bounds follow with one more colon each
+                if (peek() != ':' && !type()) {
+                    return false;
+                }
+                while (peek() == ':') {
+                    position++;
+                    if (!type()) {
+                        return false;
+                    }
+                }
+            } while (peek() != '>' && !atEnd());
+            position++;
+            return position <= signature.length();
+        }
+
+        private boolean type() {
+            final char c = peek();
+            position++;
+            if (c == '[') {
+                return type();
+            } else if (c == 'T') {
+                final int end = signature.indexOf(';', position);
+                if (end <= position) {
+                    return false;
+                }
+                position = end + 1;
+                return true;
+            } else if (c == 'L') {
+                return classType();
+            }
+            return c != 0 && PRIMITIVES.indexOf(c) >= 0;
+        }
+
+        private boolean classType() {
+            String name = identifier(true);
+            if (name == null) {
+                return false;
+            }
+            classNames.add(name);
+            while (true) {
+                if (peek() == '<' && !typeArguments()) {
+                    return false;
+                }
+                if (peek() != '.') {
+                    break;
+                }
+                position++;
+                final String inner = identifier(false);
+                if (inner == null) {
+                    return false;
+                }
+                name = name + '$' + inner;
+                classNames.add(name);
+            }
+            if (peek() != ';') {
+                return false;
+            }
+            position++;
+            return true;
+        }
+
+        private boolean typeArguments() {
+            position++;
+            while (peek() != '>') {
+                final char c = peek();
+                if (c == '*') {
+                    position++;
+                    continue;
+                }
+                if (c == '+' || c == '-') {
+                    position++;
+                }
+                if (!type()) {
+                    return false;
+                }
+            }
+            position++;
+            return true;
+        }
+
+        /**
+         * A class name, or the simple name of an inner class, up to the character that ends it.
+         */
+        private String identifier(boolean qualified) {
+            final int start = position;
+            while (!atEnd() && !isNameTerminator(signature.charAt(position), qualified)) {
+                position++;
+            }
+            return position > start ? signature.substring(start, position) : null;
+        }
+
+        private boolean atEnd() {
+            return position >= signature.length();
+        }
+
+        private char peek() {
+            return atEnd() ? 0 : signature.charAt(position);
+        }
+
+        private static boolean isNameTerminator(char c, boolean qualified) {
+            return c == ';' || c == '<' || c == '>' || c == '.' || c == '[' || c == ':' || c == '(' || c == ')'
+                    || (!qualified && c == '/');
+        }
+    }
+}
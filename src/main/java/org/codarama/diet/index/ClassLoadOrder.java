@@ -0,0 +1,105 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The order in which classes are expected to be loaded when an application starts, as internal class names.
+ *
+ * The order is either recorded, by reading the class loading log of a real run, or estimated from the bytecode, by
+ * walking the class references breadth first starting from the classes of the project.
+ */
+public final class ClassLoadOrder {
+
+    private static final String LOADED = "[Loaded ";
+    private static final String CLASS_LOAD_TAG = "[class,load]";
+
+    private ClassLoadOrder() {
+    }
+
+    /**
+     * Reads a recorded class load order. Understood are the output of <code>-verbose:class</code> (both the Java 8
+     * form and the unified logging one of Java 9 and later), class lists as dumped by
+     * <code>-XX:DumpLoadedClassList</code>, and plain lists with one class name per line. Lines that name no class
+     * are skipped.
+     */
+    public static List<String> read(File log) throws IOException {
+        final List<String> order = Lists.newArrayList();
+        final Set<String> seen = Sets.newHashSet();
+        for (String line : Files.readLines(log, Charsets.UTF_8)) {
+            final String className = className(line.trim());
+            if (className != null && seen.add(className)) {
+                order.add(className);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Estimates the load order of the classes in the given index. The classes referenced by the roots come first,
+     * then the classes they refer to, and so on. Classes of the index that cannot be reached are left out.
+     *
+     * @param index the classes to order
+     * @param roots internal names of the classes loaded first, e.g. the classes of the project, in the order they
+     * should be visited in
+     */
+    public static List<String> estimate(JarIndex index, Collection<String> roots) {
+        final List<String> order = Lists.newArrayList();
+        final Set<String> visited = Sets.newHashSet();
+        final Deque<String> pending = new ArrayDeque<String>(roots);
+
+        while (!pending.isEmpty()) {
+            final String className = pending.removeFirst();
+            if (!visited.add(className)) {
+                continue;
+            }
+            if (index.defines(className)) {
+                order.add(className);
+            }
+            for (String reference : index.referencesOf(className)) {
+                if (!visited.contains(reference)) {
+                    pending.addLast(reference);
+                }
+            }
+        }
+        return order;
+    }
+
+    private static String className(String line) {
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith("@")) {
+            return null;
+        }
+
+        String name = line;
+        if (line.startsWith(LOADED)) {
+            name = line.substring(LOADED.length());
+        } else {
+            final int tag = line.indexOf(CLASS_LOAD_TAG);
+            if (tag >= 0) {
+                name = line.substring(tag + CLASS_LOAD_TAG.length()).trim();
+            } else if (line.startsWith("[")) {
+                return null; // some other log line
+            }
+        }
+
+        final int end = name.indexOf(' ');
+        if (end >= 0) {
+            name = name.substring(0, end);
+        }
+        // lambdas and other hidden classes never come from a jar
+        if (name.isEmpty() || name.contains("$$Lambda") || name.contains("/0x")) {
+            return null;
+        }
+        return name.replace('.', '/');
+    }
+}
@@ -0,0 +1,214 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the classes more than one dependency defines, among the classes that get packaged, and tells the
+ * byte-identical copies from the conflicting ones.
+ *
+ * Only the classes defined more than once are read, their copies are told apart by the SHA-256 of their content.
+ * Only the first copy on the class path gets packaged, like the class loader would pick it, so identical copies
+ * collapse into one entry for free, while conflicting ones mean the minimized artifact behaves as the class path order
+ * happens to say. Packages whose packaged classes come from more than one dependency are reported as split packages,
+ * they break package-private access across class loaders as well as sealed jars and modules.
+ */
+public class DuplicateClasses {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Map<String, List<File>> identical;
+    private final Map<String, List<List<File>>> conflicts;
+    private final Map<String, Set<File>> splitPackages;
+
+    private DuplicateClasses(Map<String, List<File>> identical, Map<String, List<List<File>>> conflicts,
+                             Map<String, Set<File>> splitPackages) {
+        this.identical = ImmutableMap.copyOf(identical);
+        this.conflicts = ImmutableMap.copyOf(conflicts);
+        this.splitPackages = ImmutableMap.copyOf(splitPackages);
+    }
+
+    /**
+     * @param dependencies the dependencies (jars or directories), in class path order
+     * @param packagedClasses internal names of the classes that get packaged
+     */
+    public static DuplicateClasses scan(Collection<File> dependencies, Set<String> packagedClasses)
+            throws IOException {
+        // the dependencies defining every packaged class, in class path order
+        final Map<String, List<File>> sources = Maps.newTreeMap();
+        for (File dependency : dependencies) {
+            if (dependency.isDirectory()) {
+                for (String className : packagedClasses) {
+                    if (new File(dependency, className + CLASS_SUFFIX).isFile()) {
+                        add(sources, className, dependency);
+                    }
+                }
+            } else if (dependency.isFile()) {
+                final ZipFile zip = new ZipFile(dependency);
+                try {
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        final String name = entries.nextElement().getName();
+                        if (!name.endsWith(CLASS_SUFFIX)) {
+                            continue;
+                        }
+                        final String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+                        if (packagedClasses.contains(className)) {
+                            add(sources, className, dependency);
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+
+        // only the classes defined more than once get read
+        final Map<File, Set<String>> duplicated = Maps.newHashMap();
+        for (Map.Entry<String, List<File>> sourcesOfClass : sources.entrySet()) {
+            if (sourcesOfClass.getValue().size() > 1) {
+                for (File dependency : sourcesOfClass.getValue()) {
+                    Set<String> classNames = duplicated.get(dependency);
+                    if (classNames == null) {
+                        classNames = Sets.newHashSet();
+                        duplicated.put(dependency, classNames);
+                    }
+                    classNames.add(sourcesOfClass.getKey());
+                }
+            }
+        }
+
+        // every copy of every duplicated class, by the content of the copy, in class path order
+        final Map<String, Map<HashCode, List<File>>> copies = Maps.newHashMap();
+        for (File dependency : dependencies) {
+            final Set<String> classNames = duplicated.get(dependency);
+            if (classNames == null) {
+                continue;
+            }
+            if (dependency.isDirectory()) {
+                for (String className : classNames) {
+                    add(copies, className, Files.hash(new File(dependency, className + CLASS_SUFFIX),
+                            Hashing.sha256()), dependency);
+                }
+            } else {
+                final ZipFile zip = new ZipFile(dependency);
+                try {
+                    for (String className : classNames) {
+                        final InputStream in = zip.getInputStream(zip.getEntry(className + CLASS_SUFFIX));
+                        try {
+                            add(copies, className, Hashing.sha256().hashBytes(ByteStreams.toByteArray(in)),
+                                    dependency);
+                        } finally {
+                            in.close();
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+
+        final Map<String, List<File>> identical = Maps.newLinkedHashMap();
+        final Map<String, List<List<File>>> conflicts = Maps.newLinkedHashMap();
+        final Map<String, Set<File>> packages = Maps.newTreeMap();
+        for (Map.Entry<String, List<File>> sourcesOfClass : sources.entrySet()) {
+            final String className = sourcesOfClass.getKey();
+            if (sourcesOfClass.getValue().size() > 1) {
+                final List<List<File>> groups = Lists.newArrayList(copies.get(className).values());
+                if (groups.size() > 1) {
+                    conflicts.put(className, groups);
+                } else {
+                    identical.put(className, groups.get(0));
+                }
+            }
+
+            final String packageName = packageOf(className);
+            Set<File> packageSources = packages.get(packageName);
+            if (packageSources == null) {
+                packageSources = Sets.newLinkedHashSet();
+                packages.put(packageName, packageSources);
+            }
+            // the copy that gets packaged
+            packageSources.add(sourcesOfClass.getValue().get(0));
+        }
+
+        final Map<String, Set<File>> splitPackages = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Set<File>> packageSources : packages.entrySet()) {
+            if (packageSources.getValue().size() > 1) {
+                splitPackages.put(packageSources.getKey(), packageSources.getValue());
+            }
+        }
+        return new DuplicateClasses(identical, conflicts, splitPackages);
+    }
+
+    /**
+     * The classes defined by more than one dependency with the same content, along with the dependencies defining
+     * them in class path order. Only one copy of each gets packaged.
+     */
+    public Map<String, List<File>> identical() {
+        return identical;
+    }
+
+    /**
+     * The classes whose copies differ, along with the dependencies defining them, grouped by content in class path
+     * order. The copy of the first dependency of the first group is the one that gets packaged.
+     */
+    public Map<String, List<List<File>>> conflicts() {
+        return conflicts;
+    }
+
+    /**
+     * The packages whose packaged classes come from more than one dependency, along with these dependencies.
+     */
+    public Map<String, Set<File>> splitPackages() {
+        return splitPackages;
+    }
+
+    private static void add(Map<String, List<File>> sources, String className, File dependency) {
+        List<File> sourcesOfClass = sources.get(className);
+        if (sourcesOfClass == null) {
+            sourcesOfClass = Lists.newArrayListWithCapacity(1);
+            sources.put(className, sourcesOfClass);
+        }
+        if (!sourcesOfClass.contains(dependency)) {
+            sourcesOfClass.add(dependency);
+        }
+    }
+
+    private static void add(Map<String, Map<HashCode, List<File>>> copies, String className, HashCode hash,
+                            File dependency) {
+        Map<HashCode, List<File>> copiesOfClass = copies.get(className);
+        if (copiesOfClass == null) {
+            copiesOfClass = Maps.newLinkedHashMap();
+            copies.put(className, copiesOfClass);
+        }
+        List<File> sources = copiesOfClass.get(hash);
+        if (sources == null) {
+            sources = Lists.newArrayListWithCapacity(1);
+            copiesOfClass.put(hash, sources);
+        }
+        sources.add(dependency);
+    }
+
+    private static String packageOf(String className) {
+        final int slash = className.lastIndexOf('/');
+        return slash < 0 ? "" : className.substring(0, slash);
+    }
+}
@@ -0,0 +1,255 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The classes a jar (or a directory of classes) defines, along with the classes each of them refers to.
+ *
+ * Class names are internal names, e.g. <code>java/lang/String</code>. Every name is stored once in a symbol table
+ * and references are kept as indexes into it, which keeps both the in-memory and the serialized form compact.
+ */
+public class JarIndex {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final int[] NO_REFERENCES = new int[0];
+
+    private final String[] symbols;
+    private final Map<String, int[]> classes;
+
+    private JarIndex(String[] symbols, Map<String, int[]> classes) {
+        this.symbols = symbols;
+        this.classes = classes;
+    }
+
+    /**
+     * Indexes all class files found in the given jar or directory. Anything that is neither, e.g. a pom artifact,
+     * results in an empty index.
+     */
+    public static JarIndex build(File location) throws IOException {
+        final Builder builder = new Builder();
+        if (location.isDirectory()) {
+            indexDirectory(location, builder);
+        } else if (location.isFile() && isArchive(location)) {
+            indexArchive(location, builder);
+        }
+        return builder.build();
+    }
+
+    public Set<String> classes() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    public boolean defines(String className) {
+        return classes.containsKey(className);
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * A rough estimate of the heap this index takes up, in bytes.
+     */
+    public long estimatedSize() {
+        long size = 64;
+        for (String symbol : symbols) {
+            size += 56 + 2 * symbol.length();
+        }
+        for (int[] references : classes.values()) {
+            size += 64 + 4 * references.length;
+        }
+        return size;
+    }
+
+    /**
+     * The classes the given class refers to, or an empty collection if this index does not define it.
+     */
+    public Collection<String> referencesOf(String className) {
+        final int[] references = classes.get(className);
+        if (references == null) {
+            return Collections.emptyList();
+        }
+        final List<String> result = new ArrayList<String>(references.length);
+        for (int reference : references) {
+            result.add(symbols[reference]);
+        }
+        return result;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(symbols.length);
+        for (String symbol : symbols) {
+            out.writeUTF(symbol);
+        }
+
+        final Map<String, Integer> ids = symbolIds();
+        out.writeInt(classes.size());
+        for (Map.Entry<String, int[]> definedClass : classes.entrySet()) {
+            out.writeInt(ids.get(definedClass.getKey()));
+            out.writeInt(definedClass.getValue().length);
+            for (int reference : definedClass.getValue()) {
+                out.writeInt(reference);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutputStream)}, failing with an {@link IOException} rather than
+     * allocating or indexing out of bounds if the input is corrupt.
+     */
+    static JarIndex read(DataInputStream in) throws IOException {
+        // grown while reading, so that a corrupt count fails at the end of the input rather than allocating
+        final int symbolCount = count(in, Integer.MAX_VALUE);
+        final List<String> symbolList = new ArrayList<String>(Math.min(symbolCount, 1 << 16));
+        for (int i = 0; i < symbolCount; i++) {
+            symbolList.add(in.readUTF());
+        }
+        final String[] symbols = symbolList.toArray(new String[symbolList.size()]);
+
+        // every class is named by a symbol of its own and refers to each symbol at most once
+        final int classCount = count(in, symbols.length);
+        final Map<String, int[]> classes = Maps.newHashMapWithExpectedSize(classCount);
+        for (int i = 0; i < classCount; i++) {
+            final String className = symbols[symbol(in, symbols.length)];
+            final int[] references = new int[count(in, symbols.length)];
+            for (int j = 0; j < references.length; j++) {
+                references[j] = symbol(in, symbols.length);
+            }
+            classes.put(className, references);
+        }
+        return new JarIndex(symbols, classes);
+    }
+
+    private static int count(DataInputStream in, int max) throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("Corrupt index, count " + count + " out of range");
+        }
+        return count;
+    }
+
+    private static int symbol(DataInputStream in, int symbolCount) throws IOException {
+        final int symbol = in.readInt();
+        if (symbol < 0 || symbol >= symbolCount) {
+            throw new IOException("Corrupt index, symbol " + symbol + " out of range");
+        }
+        return symbol;
+    }
+
+    private Map<String, Integer> symbolIds() {
+        final Map<String, Integer> ids = Maps.newHashMapWithExpectedSize(symbols.length);
+        for (int i = 0; i < symbols.length; i++) {
+            ids.put(symbols[i], i);
+        }
+        return ids;
+    }
+
+    private static boolean isArchive(File file) {
+        final String name = file.getName();
+        return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".zip");
+    }
+
+    private static void indexArchive(File archive, Builder builder) throws IOException {
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(CLASS_SUFFIX)) {
+                    final InputStream in = zip.getInputStream(entry);
+                    try {
+                        builder.add(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void indexDirectory(File directory, Builder builder) throws IOException {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                indexDirectory(child, builder);
+            } else if (child.getName().endsWith(CLASS_SUFFIX)) {
+                final InputStream in = new FileInputStream(child);
+                try {
+                    builder.add(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private static class Builder {
+
+        private final Map<String, Integer> ids = Maps.newHashMap();
+        private final List<String> symbols = new ArrayList<String>();
+        private final Map<String, int[]> classes = Maps.newHashMap();
+
+        void add(InputStream classFile) throws IOException {
+            final Set<String> references = Sets.newHashSet();
+            final String parsedName;
+            try {
+                parsedName = ClassFileParser.parse(classFile, references);
+            } catch (EOFException e) {
+                return; // truncated, the JVM would refuse to load it anyway
+            }
+            if (parsedName == null) {
+                return; // something named .class, e.g. a test resource, which is not bytecode
+            }
+
+            final String className = intern(parsedName);
+
+            final int[] referenceIds = references.isEmpty() ? NO_REFERENCES : new int[references.size()];
+            int i = 0;
+            for (String reference : references) {
+                referenceIds[i++] = id(reference);
+            }
+            classes.put(className, referenceIds);
+        }
+
+        JarIndex build() {
+            return new JarIndex(symbols.toArray(new String[symbols.size()]), classes);
+        }
+
+        private String intern(String symbol) {
+            return symbols.get(id(symbol));
+        }
+
+        private int id(String symbol) {
+            Integer id = ids.get(symbol);
+            if (id == null) {
+                id = symbols.size();
+                ids.put(symbol, id);
+                symbols.add(symbol);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.fingerprint.FileDigests;
+import org.codarama.diet.metrics.Phase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A persistent, size bounded cache of {@link JarIndex}es.
+ *
+ * Indexes are keyed by the SHA-256 and size of the jar, so they survive across builds and are shared by every
+ * project using the same local repository. When the cache grows over its limit the least recently used indexes are
+ * evicted, a hit counts as a use.
+ */
+public class JarIndexCache {
+
+    private static final int MAGIC = 0xD1E71D8C;
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".idx";
+
+    private final File directory;
+    private final long maxBytes;
+
+    public JarIndexCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the index of the given jar, building and storing it if it is not in the cache yet. Directories (e.g.
+     * the output of another module of the same reactor) change all the time, so they are indexed but never cached.
+     */
+    public JarIndex get(File jar) throws IOException {
+        final Phase phase = Phase.current();
+        if (!jar.isFile()) {
+            final JarIndex index = JarIndex.build(jar);
+            phase.entries(index.size());
+            return index;
+        }
+
+        final String key = key(jar);
+        final File cached = new File(directory, key + SUFFIX);
+        phase.read(jar.length());
+
+        final JarIndex hit = load(cached, key);
+        if (hit != null) {
+            cached.setLastModified(System.currentTimeMillis());
+            phase.read(cached.length());
+            phase.entries(hit.size());
+            return hit;
+        }
+
+        final JarIndex index = JarIndex.build(jar);
+        store(cached, key, index);
+        phase.read(jar.length());
+        phase.written(cached.length());
+        phase.entries(index.size());
+        evict();
+        return index;
+    }
+
+    static String key(File jar) throws IOException {
+        return FileDigests.sha256(jar).toString() + "-" + jar.length();
+    }
+
+    private JarIndex load(File cached, String key) {
+        if (!cached.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cached)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                    return null;
+                }
+                return JarIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // a truncated or otherwise corrupt entry, most probably left behind by an interrupted build
+            cached.delete();
+            return null;
+        }
+    }
+
+    private void store(File cached, String key, JarIndex index) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create index cache directory " + directory);
+        }
+
+        // write to a temporary file and move it in place, so concurrent builds never see a partial index
+        final File temporary = File.createTempFile(key, ".tmp", directory);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                index.write(out);
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(cached) && !cached.isFile()) {
+                throw new IOException("Unable to store index " + cached);
+            }
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    private void evict() {
+        final File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File entry : entries) {
+            total += entry.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(entries, new Comparator<File>() {
+            public int compare(File left, File right) {
+                final long leftModified = left.lastModified();
+                final long rightModified = right.lastModified();
+                return leftModified < rightModified ? -1 : (leftModified == rightModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < entries.length && total > maxBytes; i++) {
+            if (entries[i].getName().endsWith(SUFFIX)) {
+                final long length = entries[i].length();
+                if (entries[i].delete()) {
+                    total -= length;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classes a directory of compiled classes refers to, kept up to date one class file at a time.
+ *
+ * Every class file is parsed once, when it is first seen or when it changes. How many class files refer to each
+ * class is counted, so telling whether a change altered the referenced classes at all needs no pass over the other
+ * class files. Most edits only change method bodies, and leave the referenced classes as they were.
+ */
+public class ProjectClasses {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File directory;
+    private final Map<File, Set<String>> referencesByFile = Maps.newHashMap();
+    private final Map<String, Integer> referenceCounts = Maps.newHashMap();
+
+    private ProjectClasses(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Parses every class file found in the given directory.
+     */
+    public static ProjectClasses scan(File directory) throws IOException {
+        final ProjectClasses result = new ProjectClasses(directory);
+        result.rescan();
+        return result;
+    }
+
+    /**
+     * Parses every class file again, e.g. after changes went unnoticed.
+     *
+     * @return whether the referenced classes changed
+     */
+    public boolean rescan() throws IOException {
+        final Set<File> files = Sets.newHashSet(referencesByFile.keySet());
+        collect(directory, files);
+        return update(files);
+    }
+
+    /**
+     * Reparses the given files, the ones that no longer exist are forgotten. Files other than class files are
+     * ignored, directories are searched for class files, the class files of a deleted directory are forgotten.
+     *
+     * @return whether the referenced classes changed
+     */
+    public boolean update(Collection<File> changedFiles) throws IOException {
+        final Set<File> files = Sets.newHashSet();
+        for (File file : changedFiles) {
+            if (file.isDirectory()) {
+                collect(file, files);
+            } else if (file.exists() || file.getName().endsWith(CLASS_SUFFIX)) {
+                files.add(file);
+            } else {
+                // possibly a deleted directory, whose class files are gone as well
+                final String prefix = file.getPath() + File.separator;
+                for (File known : referencesByFile.keySet()) {
+                    if (known.getPath().startsWith(prefix)) {
+                        files.add(known);
+                    }
+                }
+            }
+        }
+
+        // whether each class touched was referenced before, a class file may well drop a reference another one has
+        final Map<String, Boolean> wasReferenced = Maps.newHashMap();
+        for (File file : files) {
+            if (!file.getName().endsWith(CLASS_SUFFIX)) {
+                continue;
+            }
+            final Set<String> references = file.isFile() ? parse(file) : Collections.<String>emptySet();
+            final Set<String> previous = references.isEmpty()
+                    ? referencesByFile.remove(file)
+                    : referencesByFile.put(file, references);
+            if (previous != null) {
+                for (String reference : previous) {
+                    count(reference, -1, wasReferenced);
+                }
+            }
+            for (String reference : references) {
+                count(reference, 1, wasReferenced);
+            }
+        }
+
+        for (Map.Entry<String, Boolean> reference : wasReferenced.entrySet()) {
+            if (reference.getValue() != referenceCounts.containsKey(reference.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The classes referred to by at least one class file.
+     */
+    public Set<String> references() {
+        return Collections.unmodifiableSet(referenceCounts.keySet());
+    }
+
+    public int size() {
+        return referencesByFile.size();
+    }
+
+    private void count(String reference, int delta, Map<String, Boolean> wasReferenced) {
+        final Integer current = referenceCounts.get(reference);
+        if (!wasReferenced.containsKey(reference)) {
+            wasReferenced.put(reference, current != null);
+        }
+        final int updated = (current == null ? 0 : current) + delta;
+        if (updated <= 0) {
+            referenceCounts.remove(reference);
+        } else {
+            referenceCounts.put(reference, updated);
+        }
+    }
+
+    private static Set<String> parse(File classFile) throws IOException {
+        final Set<String> references = Sets.newHashSet();
+        final InputStream in = new FileInputStream(classFile);
+        try {
+            if (ClassFileParser.parse(in, references) == null) {
+                return Collections.emptySet(); // not bytecode
+            }
+        } catch (EOFException e) {
+            return Collections.emptySet(); // truncated, e.g. still being written by the compiler
+        } finally {
+            in.close();
+        }
+        return references;
+    }
+
+    private static void collect(File directory, Set<File> files) {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().endsWith(CLASS_SUFFIX)) {
+                files.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the dependencies that can be reached from a set of root classes, by following class references through the
+ * {@link JarIndex}es of all dependencies.
+ *
+ * The result is conservative: a dependency is kept as soon as any class it defines is referenced, which is what the
+ * bytecode can actually load at runtime. Classes loaded by reflection only have to be given as roots.
+ */
+public class ReachableDependencies {
+
+    private final Map<String, List<File>> definingDependencies = Maps.newHashMap();
+    private final Map<File, JarIndex> indexes;
+
+    public ReachableDependencies(Map<File, JarIndex> indexes) {
+        this.indexes = indexes;
+        for (Map.Entry<File, JarIndex> dependency : indexes.entrySet()) {
+            for (String className : dependency.getValue().classes()) {
+                List<File> dependencies = definingDependencies.get(className);
+                if (dependencies == null) {
+                    dependencies = new ArrayList<File>(1);
+                    definingDependencies.put(className, dependencies);
+                }
+                dependencies.add(dependency.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param rootClasses internal names of the classes to start from
+     * @return the dependencies defining at least one class reachable from the roots
+     */
+    public Set<File> from(Collection<String> rootClasses) {
+        return classesFrom(rootClasses).keySet();
+    }
+
+    /**
+     * @param rootClasses internal names of the classes to start from
+     * @return the classes reachable from the roots, grouped by the dependencies defining them, in the order the
+     * dependencies were given in
+     */
+    public Map<File, Set<String>> classesFrom(Collection<String> rootClasses) {
+        final Map<File, Set<String>> result = Maps.newLinkedHashMap();
+        for (File dependency : indexes.keySet()) {
+            result.put(dependency, Sets.<String>newTreeSet());
+        }
+
+        final Set<String> visited = Sets.newHashSet();
+        final Deque<String> pending = new ArrayDeque<String>(rootClasses);
+
+        while (!pending.isEmpty()) {
+            final String className = pending.pop();
+            if (!visited.add(className)) {
+                continue;
+            }
+
+            final List<File> dependencies = definingDependencies.get(className);
+            if (dependencies == null) {
+                continue; // JDK or otherwise unknown class
+            }
+            for (File dependency : dependencies) {
+                result.get(dependency).add(className);
+                for (String reference : indexes.get(dependency).referencesOf(className)) {
+                    if (!visited.contains(reference)) {
+                        pending.push(reference);
+                    }
+                }
+            }
+        }
+
+        final Iterator<Set<String>> classes = result.values().iterator();
+        while (classes.hasNext()) {
+            if (classes.next().isEmpty()) {
+                classes.remove();
+            }
+        }
+        return result;
+    }
+}
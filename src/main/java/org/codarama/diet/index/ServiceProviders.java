@@ -0,0 +1,90 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the service providers dependencies declare under <code>META-INF/services</code>.
+ *
+ * A {@link java.util.ServiceLoader} loads its providers by name, so no bytecode refers to them and following class
+ * references never reaches them. Starting from them as well keeps what a service lookup finds at run time.
+ */
+public final class ServiceProviders {
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private ServiceProviders() {
+    }
+
+    /**
+     * @param dependencies the dependencies (jars or directories) to look in
+     * @return the internal names of the providers they declare
+     */
+    public static Set<String> of(Collection<File> dependencies) throws IOException {
+        final Set<String> providers = Sets.newTreeSet();
+        for (File dependency : dependencies) {
+            if (dependency.isDirectory()) {
+                final File[] services = new File(dependency, SERVICES).listFiles();
+                if (services == null) {
+                    continue;
+                }
+                for (File service : services) {
+                    if (service.isFile()) {
+                        parse(Files.toString(service, Charsets.UTF_8), providers);
+                    }
+                }
+            } else if (dependency.isFile()) {
+                final ZipFile zip = new ZipFile(dependency);
+                try {
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        final ZipEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        if (name.startsWith(SERVICES) && name.length() > SERVICES.length()
+                                && name.indexOf('/', SERVICES.length()) < 0) {
+                            parse(read(zip.getInputStream(entry)), providers);
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+        return providers;
+    }
+
+    /**
+     * Reads a provider configuration file: a class name per line, <code>#</code> starts a comment.
+     */
+    static void parse(String configuration, Set<String> providers) {
+        for (String line : configuration.split("\n")) {
+            final int comment = line.indexOf('#');
+            final String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+            if (!provider.isEmpty()) {
+                providers.add(provider.replace('.', '/'));
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final Reader reader = new InputStreamReader(in, Charsets.UTF_8);
+        try {
+            return CharStreams.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.codarama.diet.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.maven.SessionScoped;
+
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The {@link JarIndex}es of all dependencies analysed so far in the current Maven session.
+ *
+ * Modules of a reactor mostly share the same third party dependencies, so later modules get the index of a jar
+ * straight from memory instead of reading (or even checksumming) it again. Lookups are safe from parallel builds,
+ * a jar requested by several modules at the same time is indexed only once. The heap taken up by indexes is capped,
+ * the least recently used are evicted first.
+ */
+@Named
+@SessionScoped
+public class SessionDependencyIndex {
+
+    private Cache<String, JarIndex> indexes;
+
+    /**
+     * Returns the index of the given dependency, taking it from the given persistent cache on the first request.
+     *
+     * @param maxBytes the heap indexes may take up, only the first call of a session decides it
+     */
+    public JarIndex get(final File dependency, final JarIndexCache persistentCache, long maxBytes)
+            throws IOException {
+        if (!dependency.isFile()) {
+            // directories, e.g. the classes of another module of the reactor, are cheap to index and may still change
+            return persistentCache.get(dependency);
+        }
+
+        try {
+            return indexes(maxBytes).get(key(dependency), new Callable<JarIndex>() {
+                public JarIndex call() throws IOException {
+                    return persistentCache.get(dependency);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to index " + dependency, e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new IOException("Unable to index " + dependency, e.getCause());
+        }
+    }
+
+    private synchronized Cache<String, JarIndex> indexes(long maxBytes) {
+        if (indexes == null) {
+            indexes = CacheBuilder.newBuilder()
+                    .maximumWeight(maxBytes)
+                    .weigher(new Weigher<String, JarIndex>() {
+                        public int weigh(String key, JarIndex index) {
+                            return (int) Math.min(Integer.MAX_VALUE, index.estimatedSize());
+                        }
+                    })
+                    .build();
+        }
+        return indexes;
+    }
+
+    private static String key(File jar) {
+        // jars do not change within a session, the timestamp is only there to be safe with snapshots
+        return jar.getAbsolutePath() + '|' + jar.length() + '|' + jar.lastModified();
+    }
+}
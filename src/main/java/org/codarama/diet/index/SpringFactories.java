@@ -0,0 +1,117 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the classes Spring loads by name from the dependencies: the factories of
+ * <code>META-INF/spring.factories</code> and the auto-configurations of <code>META-INF/spring/*.imports</code>.
+ *
+ * Like service providers (see {@link ServiceProviders}) no bytecode refers to them, so following class references
+ * never reaches them, while a Spring Boot application does not start without them.
+ */
+public final class SpringFactories {
+
+    static final String FACTORIES = "META-INF/spring.factories";
+    static final String IMPORTS_DIRECTORY = "META-INF/spring/";
+    static final String IMPORTS_SUFFIX = ".imports";
+
+    private SpringFactories() {
+    }
+
+    /**
+     * The classes loaded by name from the given dependencies, by Spring and by the {@link java.util.ServiceLoader}.
+     *
+     * @param dependencies the dependencies (jars or directories) to look in
+     * @return the internal names of the classes they name
+     */
+    public static Set<String> entryPoints(Collection<File> dependencies) throws IOException {
+        final Set<String> entryPoints = ServiceProviders.of(dependencies);
+        entryPoints.addAll(of(dependencies));
+        return entryPoints;
+    }
+
+    /**
+     * @param dependencies the dependencies (jars or directories) to look in
+     * @return the internal names of the factories and auto-configurations they declare
+     */
+    public static Set<String> of(Collection<File> dependencies) throws IOException {
+        final Set<String> classes = Sets.newTreeSet();
+        for (File dependency : dependencies) {
+            if (dependency.isDirectory()) {
+                final File factories = new File(dependency, FACTORIES);
+                if (factories.isFile()) {
+                    parseFactories(Files.toString(factories, Charsets.UTF_8), classes);
+                }
+                final File[] imports = new File(dependency, IMPORTS_DIRECTORY).listFiles();
+                if (imports == null) {
+                    continue;
+                }
+                for (File file : imports) {
+                    if (file.isFile() && file.getName().endsWith(IMPORTS_SUFFIX)) {
+                        ServiceProviders.parse(Files.toString(file, Charsets.UTF_8), classes);
+                    }
+                }
+            } else if (dependency.isFile()) {
+                final ZipFile zip = new ZipFile(dependency);
+                try {
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        final ZipEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        if (FACTORIES.equals(name)) {
+                            parseFactories(read(zip.getInputStream(entry)), classes);
+                        } else if (name.startsWith(IMPORTS_DIRECTORY) && name.endsWith(IMPORTS_SUFFIX)
+                                && name.indexOf('/', IMPORTS_DIRECTORY.length()) < 0) {
+                            ServiceProviders.parse(read(zip.getInputStream(entry)), classes);
+                        }
+                    }
+                } finally {
+                    zip.close();
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Reads a <code>spring.factories</code> file: a properties file naming, for each factory type, a comma separated
+     * list of implementations.
+     */
+    static void parseFactories(String factories, Set<String> classes) throws IOException {
+        final Properties properties = new Properties();
+        properties.load(new StringReader(factories));
+        for (String factoryType : properties.stringPropertyNames()) {
+            for (String implementation : properties.getProperty(factoryType).split(",")) {
+                final String className = implementation.trim();
+                if (!className.isEmpty()) {
+                    classes.add(className.replace('.', '/'));
+                }
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final Reader reader = new InputStreamReader(in, Charsets.UTF_8);
+        try {
+            return CharStreams.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
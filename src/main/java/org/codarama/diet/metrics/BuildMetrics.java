@@ -0,0 +1,106 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects the {@link PhaseMetrics} of a single minimization and writes them as <code>diet-metrics.json</code>, so
+ * that build performance can be charted over time.
+ */
+public final class BuildMetrics {
+
+    public static final String FILE_NAME = "diet-metrics.json";
+
+    private final List<PhaseListener> listeners = new CopyOnWriteArrayList<PhaseListener>();
+    private final List<PhaseMetrics> phases = Lists.newArrayList();
+
+    public void addListener(PhaseListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts a phase and binds it to the calling thread, it must be ended by the same thread, typically in a
+     * <code>finally</code> block.
+     */
+    public Phase start(String name) {
+        return Phase.bind(this, name);
+    }
+
+    public List<PhaseMetrics> phases() {
+        synchronized (phases) {
+            return ImmutableList.copyOf(phases);
+        }
+    }
+
+    void ended(PhaseMetrics phase) {
+        synchronized (phases) {
+            phases.add(phase);
+        }
+        for (PhaseListener listener : listeners) {
+            listener.on(phase);
+        }
+    }
+
+    /**
+     * Writes the phases ended so far to <code>diet-metrics.json</code> in the given directory, returning the file.
+     */
+    public File write(File targetDirectory, String project) throws IOException {
+        final File file = new File(targetDirectory, FILE_NAME);
+        file.getParentFile().mkdirs();
+
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            out.write(toJson(project));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    String toJson(String project) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"project\" : ").append(quote(project)).append(",\n  \"phases\" : [");
+
+        final List<PhaseMetrics> ended = phases();
+        for (int i = 0; i < ended.size(); i++) {
+            final PhaseMetrics phase = ended.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    { \"name\" : ").append(quote(phase.getName()))
+                    .append(", \"wallNanos\" : ").append(phase.getWallNanos())
+                    .append(", \"cpuNanos\" : ").append(phase.getCpuNanos())
+                    .append(", \"bytesRead\" : ").append(phase.getBytesRead())
+                    .append(", \"bytesWritten\" : ").append(phase.getBytesWritten())
+                    .append(", \"entries\" : ").append(phase.getEntries())
+                    .append(", \"peakHeapBytes\" : ").append(phase.getPeakHeapBytes())
+                    .append(" }");
+        }
+        return json.append(ended.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The footprint of a minimized artifact: its size, the number of classes it packages and how many of them each
+ * dependency contributes.
+ *
+ * Written as a small JSON file meant to be committed along with the project, as the baseline later builds are held
+ * against, see {@link FootprintBudget}. Dependencies are named by their group and artifact id where the path of their
+ * jar in the local repository tells them, so that neither the location of the repository nor a version change
+ * renames them.
+ */
+public final class Footprint {
+
+    private static final String ARTIFACT_BYTES = "artifactBytes";
+    private static final String REACHABLE_CLASSES = "reachableClasses";
+    private static final String DEPENDENCIES = "dependencies";
+    private static final Pattern NUMBER_FIELD = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"\\s*:\\s*(\\d+)");
+
+    private final long artifactBytes;
+    private final int reachableClasses;
+    private final Map<String, Integer> dependencyClasses;
+
+    /**
+     * @param dependencyClasses the number of packaged classes each dependency contributes, by dependency name
+     */
+    public Footprint(long artifactBytes, int reachableClasses, Map<String, Integer> dependencyClasses) {
+        this.artifactBytes = artifactBytes;
+        this.reachableClasses = reachableClasses;
+        this.dependencyClasses = ImmutableMap.copyOf(dependencyClasses);
+    }
+
+    /**
+     * The name of a dependency in a footprint: <code>groupId:artifactId</code> for jars of the given repository
+     * (<code>group/path/artifactId/version/artifactId-version.jar</code>), the artifact id for jars laid out like that
+     * elsewhere, the file name otherwise.
+     */
+    public static String dependencyName(File dependency, File repository) {
+        final File versionDirectory = dependency.getParentFile();
+        final File artifactDirectory = versionDirectory == null ? null : versionDirectory.getParentFile();
+        if (artifactDirectory == null || !dependency.getName().startsWith(
+                artifactDirectory.getName() + "-" + versionDirectory.getName())) {
+            return dependency.getName();
+        }
+
+        final File groupDirectory = artifactDirectory.getParentFile();
+        if (repository == null || groupDirectory == null) {
+            return artifactDirectory.getName();
+        }
+        final String root = repository.getAbsolutePath() + File.separator;
+        final String group = groupDirectory.getAbsolutePath();
+        if (!group.startsWith(root)) {
+            return artifactDirectory.getName();
+        }
+        return group.substring(root.length()).replace(File.separatorChar, '.') + ':' + artifactDirectory.getName();
+    }
+
+    public long artifactBytes() {
+        return artifactBytes;
+    }
+
+    public int reachableClasses() {
+        return reachableClasses;
+    }
+
+    public Map<String, Integer> dependencyClasses() {
+        return dependencyClasses;
+    }
+
+    /**
+     * Reads a footprint written by {@link #write(File)}.
+     */
+    public static Footprint read(File file) throws IOException {
+        final String json = Files.toString(file, Charsets.UTF_8);
+        final int dependencies = json.indexOf('"' + DEPENDENCIES + '"');
+        if (dependencies < 0) {
+            throw new IOException("Not a footprint, no dependencies in " + file);
+        }
+
+        long artifactBytes = 0;
+        int reachableClasses = 0;
+        final Matcher totals = NUMBER_FIELD.matcher(json.substring(0, dependencies));
+        while (totals.find()) {
+            if (ARTIFACT_BYTES.equals(totals.group(1))) {
+                artifactBytes = Long.parseLong(totals.group(2));
+            } else if (REACHABLE_CLASSES.equals(totals.group(1))) {
+                reachableClasses = Integer.parseInt(totals.group(2));
+            }
+        }
+        final Map<String, Integer> dependencyClasses = Maps.newLinkedHashMap();
+        final Matcher fields = NUMBER_FIELD.matcher(json.substring(dependencies));
+        while (fields.find()) {
+            dependencyClasses.put(fields.group(1).replaceAll("\\\\(.)", "$1"), Integer.parseInt(fields.group(2)));
+        }
+        return new Footprint(artifactBytes, reachableClasses, dependencyClasses);
+    }
+
+    /**
+     * Writes the footprint to the given file, replacing it.
+     */
+    public void write(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            out.write(toJson());
+        } finally {
+            out.close();
+        }
+    }
+
+    String toJson() {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"").append(ARTIFACT_BYTES).append("\" : ").append(artifactBytes)
+                .append(",\n  \"").append(REACHABLE_CLASSES).append("\" : ").append(reachableClasses)
+                .append(",\n  \"").append(DEPENDENCIES).append("\" : {");
+        final Iterator<Map.Entry<String, Integer>> dependencies = dependencyClasses.entrySet().iterator();
+        while (dependencies.hasNext()) {
+            final Map.Entry<String, Integer> dependency = dependencies.next();
+            json.append("\n    ").append(BuildMetrics.quote(dependency.getKey())).append(" : ")
+                    .append(dependency.getValue()).append(dependencies.hasNext() ? "," : "");
+        }
+        return json.append(dependencyClasses.isEmpty() ? "}\n}\n" : "\n  }\n}\n").toString();
+    }
+}
@@ -0,0 +1,87 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Limits on the {@link Footprint} of a minimized artifact: the size of the artifact and the number of reachable
+ * classes, both absolute, and how much the classes each dependency contributes may grow past a baseline footprint.
+ */
+public final class FootprintBudget {
+
+    private final long maxArtifactBytes;
+    private final int maxReachableClasses;
+    private final int maxDependencyGrowth;
+
+    /**
+     * @param maxArtifactBytes the largest artifact allowed, no limit when not positive
+     * @param maxReachableClasses the most reachable classes allowed, no limit when not positive
+     * @param maxDependencyGrowth by how many percent the classes of a dependency may exceed the baseline, no limit
+     * when negative; dependencies missing from the baseline may not contribute any class unless there is no limit
+     */
+    public FootprintBudget(long maxArtifactBytes, int maxReachableClasses, int maxDependencyGrowth) {
+        this.maxArtifactBytes = maxArtifactBytes;
+        this.maxReachableClasses = maxReachableClasses;
+        this.maxDependencyGrowth = maxDependencyGrowth;
+    }
+
+    /**
+     * Whether any limit is set at all.
+     */
+    public boolean isEmpty() {
+        return maxArtifactBytes <= 0 && maxReachableClasses <= 0 && maxDependencyGrowth < 0;
+    }
+
+    /**
+     * The limits the given footprint exceeds, described for the build log, none if it fits.
+     *
+     * @param baseline the footprint to hold the growth of dependencies against, or <code>null</code> if there is none
+     */
+    public List<String> check(Footprint footprint, Footprint baseline) {
+        final List<String> violations = Lists.newArrayList();
+        if (maxArtifactBytes > 0 && footprint.artifactBytes() > maxArtifactBytes) {
+            violations.add("The minimized artifact takes " + footprint.artifactBytes() + " bytes, more than the "
+                    + maxArtifactBytes + " allowed");
+        }
+        if (maxReachableClasses > 0 && footprint.reachableClasses() > maxReachableClasses) {
+            violations.add(footprint.reachableClasses() + " classes are reachable, more than the "
+                    + maxReachableClasses + " allowed");
+        }
+        if (maxDependencyGrowth < 0 || baseline == null) {
+            return violations;
+        }
+
+        for (Map.Entry<String, Integer> dependency : footprint.dependencyClasses().entrySet()) {
+            final int classes = dependency.getValue();
+            Integer before = baseline.dependencyClasses().get(dependency.getKey());
+            final int colon = dependency.getKey().indexOf(':');
+            if (before == null && colon >= 0) {
+                // a baseline recorded when dependencies were named by their artifact id only
+                before = baseline.dependencyClasses().get(dependency.getKey().substring(colon + 1));
+            }
+            if (before == null) {
+                if (classes > 0) {
+                    violations.add(dependency.getKey() + " contributes " + classes
+                            + " classes and is not part of the baseline");
+                }
+            } else if (classes * 100L > before * (100L + maxDependencyGrowth)) {
+                violations.add(dependency.getKey() + " grew from " + before + " to " + classes + " classes ("
+                        + growth(before, classes) + ", " + maxDependencyGrowth + "% allowed)");
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * The growth from one figure to another as a percentage with a decimal, e.g. <code>+12.5%</code>.
+     */
+    public static String growth(long before, long after) {
+        if (before == 0) {
+            return after == 0 ? "+0.0%" : "new";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", (after - before) * 100.0 / before);
+    }
+}
@@ -0,0 +1,159 @@
+package org.codarama.diet.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A running phase of a minimization, started with {@link BuildMetrics#start(String)}.
+ *
+ * While a phase runs it is bound to the thread that started it, so that code deep down the call chain, like the
+ * packagers, can report its I/O through {@link #current()} without every signature in between carrying the metrics
+ * along. Code running outside of any phase reports to a phase nobody listens to. The counters may be updated from
+ * other threads as well.
+ *
+ * The heap in use is sampled when the phase starts and ends and, at most every {@link #SAMPLE_MILLIS} ms, as it
+ * reports its I/O. The JVM wide peak is left alone, so phases running at the same time do not reset each other's.
+ */
+public final class Phase {
+
+    private static final ThreadLocal<Phase> CURRENT = new ThreadLocal<Phase>();
+
+    private static final Phase DETACHED = new Phase(null, "detached", null);
+
+    static final long SAMPLE_MILLIS = 10;
+    private static final long SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(SAMPLE_MILLIS);
+
+    private final BuildMetrics metrics;
+    private final String name;
+    private final Phase enclosing;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+    private final AtomicLong lastSample = new AtomicLong();
+
+    private final long startWall;
+    private final long startCpu;
+
+    Phase(BuildMetrics metrics, String name, Phase enclosing) {
+        this.metrics = metrics;
+        this.name = name;
+        this.enclosing = enclosing;
+
+        this.startWall = System.nanoTime();
+        lastSample.set(startWall);
+        if (metrics != null) {
+            sampleHeap();
+        }
+        this.startCpu = cpuTime();
+    }
+
+    /**
+     * The phase bound to the calling thread, never <code>null</code>.
+     */
+    public static Phase current() {
+        final Phase phase = CURRENT.get();
+        return phase == null ? DETACHED : phase;
+    }
+
+    static Phase bind(BuildMetrics metrics, String name) {
+        final Phase phase = new Phase(metrics, name, CURRENT.get());
+        CURRENT.set(phase);
+        return phase;
+    }
+
+    /**
+     * Binds this phase to the calling thread as well, for work handed to other threads. The counters are shared, the
+     * times are still the ones of the thread that started the phase.
+     *
+     * @return the phase bound to the thread before, to be handed to {@link #detach(Phase)}
+     */
+    public Phase attach() {
+        final Phase previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    /**
+     * Binds the given phase, as returned by {@link #attach()}, to the calling thread again.
+     */
+    public void detach(Phase previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void read(long bytes) {
+        bytesRead.addAndGet(bytes);
+        sample();
+    }
+
+    public void written(long bytes) {
+        bytesWritten.addAndGet(bytes);
+        sample();
+    }
+
+    public void entries(long count) {
+        entries.addAndGet(count);
+        sample();
+    }
+
+    /**
+     * Ends this phase, hands its metrics to the {@link BuildMetrics} it was started from and binds the enclosing
+     * phase, if any, to the thread again.
+     */
+    public PhaseMetrics end() {
+        final long cpu = cpuTime();
+        if (metrics != null) {
+            sampleHeap();
+        }
+        final PhaseMetrics result = new PhaseMetrics(name, System.nanoTime() - startWall,
+                cpu < 0 || startCpu < 0 ? -1 : cpu - startCpu,
+                bytesRead.get(), bytesWritten.get(), entries.get(), peakHeap.get());
+
+        if (CURRENT.get() == this) {
+            if (enclosing == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(enclosing);
+            }
+        }
+        if (metrics != null) {
+            metrics.ended(result);
+        }
+        return result;
+    }
+
+    private static long cpuTime() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private void sample() {
+        if (metrics == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long last = lastSample.get();
+        if (now - last >= SAMPLE_NANOS && lastSample.compareAndSet(last, now)) {
+            sampleHeap();
+        }
+    }
+
+    private void sampleHeap() {
+        final long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long peak = peakHeap.get();
+        while (used > peak && !peakHeap.compareAndSet(peak, used)) {
+            peak = peakHeap.get();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.codarama.diet.metrics;
+
+/**
+ * Notified every time a phase of a minimization ends, see {@link BuildMetrics#addListener(PhaseListener)}.
+ */
+public interface PhaseListener {
+
+    void on(PhaseMetrics phase);
+}
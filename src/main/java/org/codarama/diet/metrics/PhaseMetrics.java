@@ -0,0 +1,66 @@
+package org.codarama.diet.metrics;
+
+/**
+ * What a single phase of a minimization cost - time, I/O and memory.
+ *
+ * CPU time is that of the thread which ran the phase, or -1 if the JVM cannot measure it. The peak heap is the most
+ * heap in use the phase sampled, see {@link Phase}. It is process wide, so in a parallel build it includes whatever the
+ * other modules allocated at the same time.
+ */
+public final class PhaseMetrics {
+
+    private final String name;
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long entries;
+    private final long peakHeapBytes;
+
+    PhaseMetrics(String name, long wallNanos, long cpuNanos, long bytesRead, long bytesWritten, long entries,
+                 long peakHeapBytes) {
+        this.name = name;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.entries = entries;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " : " + wallNanos / 1000000 + " ms wall, "
+                + (cpuNanos < 0 ? "n/a" : cpuNanos / 1000000 + " ms") + " cpu, "
+                + bytesRead + " bytes read, " + bytesWritten + " bytes written, "
+                + entries + " entries, " + peakHeapBytes / (1024 * 1024) + " MB peak heap";
+    }
+}
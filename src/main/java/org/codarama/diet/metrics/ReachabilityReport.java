@@ -0,0 +1,109 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classes reachable from the project in each of its dependencies, written as <code>diet-reachability.json</code>
+ * so that changes to the dependency footprint can be tracked without repackaging anything.
+ *
+ * Every dependency is listed in class path order, the unreachable ones included, with the number of classes it
+ * defines, the number of them that are reachable and their names.
+ */
+public final class ReachabilityReport {
+
+    public static final String FILE_NAME = "diet-reachability.json";
+
+    private final int rootClasses;
+    private final Map<File, Integer> definedClasses;
+    private final Map<File, ? extends Set<String>> reachableClasses;
+
+    /**
+     * @param rootClasses the number of classes the analysis started from
+     * @param definedClasses the number of classes every dependency defines, in class path order
+     * @param reachableClasses the reachable classes of the dependencies having any
+     */
+    public ReachabilityReport(int rootClasses, Map<File, Integer> definedClasses,
+                              Map<File, ? extends Set<String>> reachableClasses) {
+        this.rootClasses = rootClasses;
+        this.definedClasses = ImmutableMap.copyOf(definedClasses);
+        this.reachableClasses = reachableClasses;
+    }
+
+    public int dependencies() {
+        return definedClasses.size();
+    }
+
+    public int reachableDependencies() {
+        return reachableClasses.size();
+    }
+
+    public int definedClasses() {
+        int total = 0;
+        for (Integer classes : definedClasses.values()) {
+            total += classes;
+        }
+        return total;
+    }
+
+    public int reachableClasses() {
+        int total = 0;
+        for (Set<String> classes : reachableClasses.values()) {
+            total += classes.size();
+        }
+        return total;
+    }
+
+    /**
+     * Writes the report to <code>diet-reachability.json</code> in the given directory, returning the file.
+     */
+    public File write(File targetDirectory, String project) throws IOException {
+        final File file = new File(targetDirectory, FILE_NAME);
+        file.getParentFile().mkdirs();
+
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try {
+            out.write(toJson(project));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    String toJson(String project) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n  \"project\" : ").append(BuildMetrics.quote(project))
+                .append(",\n  \"rootClasses\" : ").append(rootClasses)
+                .append(",\n  \"definedClasses\" : ").append(definedClasses())
+                .append(",\n  \"reachableClasses\" : ").append(reachableClasses())
+                .append(",\n  \"dependencies\" : [");
+
+        final Iterator<Map.Entry<File, Integer>> dependencies = definedClasses.entrySet().iterator();
+        while (dependencies.hasNext()) {
+            final Map.Entry<File, Integer> dependency = dependencies.next();
+            final Set<String> reachable = reachableClasses.get(dependency.getKey());
+            json.append("\n    { \"file\" : ").append(BuildMetrics.quote(dependency.getKey().getPath()))
+                    .append(", \"bytes\" : ").append(dependency.getKey().isFile() ? dependency.getKey().length() : 0)
+                    .append(", \"definedClasses\" : ").append(dependency.getValue())
+                    .append(", \"reachableClasses\" : ").append(reachable == null ? 0 : reachable.size())
+                    .append(", \"classes\" : [");
+            if (reachable != null) {
+                final Iterator<String> classes = reachable.iterator();
+                while (classes.hasNext()) {
+                    json.append(BuildMetrics.quote(classes.next())).append(classes.hasNext() ? ", " : "");
+                }
+            }
+            json.append("] }").append(dependencies.hasNext() ? "," : "");
+        }
+        return json.append(definedClasses.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+}
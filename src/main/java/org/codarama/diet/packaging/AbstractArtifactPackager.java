@@ -1,32 +1,79 @@
 package org.codarama.diet.packaging;
 
+import com.google.common.io.ByteStreams;
 import org.codarama.diet.util.Tokenizer;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 
+/**
+ * Base of the packagers, repackaging artifacts through {@link ZipArchive}s: entries are located through the central
+ * directory of the source archive and their raw bodies are transferred channel to channel, so that entries kept as
+ * they are never pass through the heap.
+ */
 public abstract class AbstractArtifactPackager implements ArtifactPackager {
 
-    protected String appendUnderscoreMinimizedToArtifactName(String name) {
-        return name.substring(0, name.lastIndexOf(".")) + "_minimized." + Tokenizer.delimiter(".").tokenize(name).lastToken();
+    private final CompressionPolicy compression;
+    private final Reproducibility reproducibility;
+
+    protected AbstractArtifactPackager() {
+        this(CompressionPolicy.KEEP);
     }
 
-    protected byte[] readBytes(InputStream in) throws IOException {
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    protected AbstractArtifactPackager(CompressionPolicy compression) {
+        this(compression, Reproducibility.NONE);
+    }
 
-        int readLen;
-        byte[] buf = new byte[16384]; // 4k
+    protected AbstractArtifactPackager(CompressionPolicy compression, Reproducibility reproducibility) {
+        this.compression = compression;
+        this.reproducibility = reproducibility;
+    }
 
-        while ((readLen = in.read(buf, 0, buf.length)) != -1) {
-            out.write(buf, 0, readLen);
-        }
-        out.flush();
+    /**
+     * Opens the given archive to repackage entries of, see {@link #copy(ZipArchive, Collection, ZipAssembler)}.
+     */
+    ZipArchive open(File archive) throws IOException {
+        return new ZipArchive(archive);
+    }
 
-        try {
-            return out.toByteArray();
-        } finally {
-            out.close();
+    /**
+     * A writer of the repackaged artifact, normalizing entries as this packager is told to.
+     */
+    ZipArchiveWriter writer(File target) throws IOException {
+        return new ZipArchiveWriter(target, reproducibility);
+    }
+
+    Reproducibility reproducibility() {
+        return reproducibility;
+    }
+
+    /**
+     * An assembler writing to the given writer with the compression policy of this packager.
+     */
+    ZipAssembler assembler(ZipArchiveWriter writer) {
+        return new ZipAssembler(writer, compression);
+    }
+
+    /**
+     * Adds the given entries of the source archive to the assembler, in the order this packager is told to write them.
+     * The archive has to stay open until the assembler is finished.
+     */
+    void copy(ZipArchive source, Collection<ZipArchiveEntry> entries, ZipAssembler assembler) throws IOException {
+        for (ZipArchiveEntry entry : reproducibility.order(entries)) {
+            assembler.add(source, entry);
         }
     }
+
+    protected String appendUnderscoreMinimizedToArtifactName(String name) {
+        return name.substring(0, name.lastIndexOf(".")) + "_minimized." + Tokenizer.delimiter(".").tokenize(name).lastToken();
+    }
+
+    /**
+     * Reads the given stream to its end.
+     */
+    protected byte[] readBytes(InputStream in) throws IOException {
+        return ByteStreams.toByteArray(in);
+    }
 }
@@ -0,0 +1,412 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.maven.artifact.Artifact;
+import org.codarama.diet.index.SpringFactories;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * An {@link ArtifactPackager} for Spring Boot executable jars and wars, whose libraries are nested jars, e.g. under
+ * <code>BOOT-INF/lib/</code>.
+ *
+ * The layout is told by the manifest (see {@link #libraryDirectory(File)}), not by the file name. Every entry but the
+ * nested libraries is copied as it is, the classes of the application and the Spring Boot loader included. The
+ * nested libraries are slimmed one by one against the minimized jar, in parallel, see {@link DependencySlimmer}:
+ * unused ones are dropped, classes no nested library defines go to {@link DependencySlimmer#REMAINDER_JAR}. Classes
+ * the libraries name for Spring or the ServiceLoader to load by name are kept as well, see {@link SpringFactories}.
+ * Nested jars are read in place by the Spring Boot loader, so they are always stored uncompressed and keep their
+ * path below the library directory.
+ *
+ * The class path index lists the slimmed libraries in their original order. The layer index loses the libraries
+ * that were dropped, libraries it does not cover yet join the layer of the first library it names, or the last
+ * layer.
+ */
+public class BootArtifactPackager extends AbstractArtifactPackager implements ArtifactPackager {
+
+    static final String SPRING_BOOT_LIB = "Spring-Boot-Lib";
+    static final String SPRING_BOOT_CLASSPATH_INDEX = "Spring-Boot-Classpath-Index";
+    static final String SPRING_BOOT_LAYERS_INDEX = "Spring-Boot-Layers-Index";
+
+    private static final String LAUNCHER_PACKAGE = "org.springframework.boot.loader.";
+    private static final String WAR_LAUNCHER = "WarLauncher";
+    private static final String JAR_LIBRARY_DIRECTORY = "BOOT-INF/lib/";
+    private static final String WAR_LIBRARY_DIRECTORY = "WEB-INF/lib/";
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final int parallelism;
+    private final File workDirectory;
+
+    /**
+     * @param parallelism the number of nested libraries slimmed at the same time
+     * @param workDirectory where the nested libraries are extracted and slimmed
+     */
+    public BootArtifactPackager(CompressionPolicy compression, Reproducibility reproducibility, int parallelism,
+                                File workDirectory) {
+        super(compression, reproducibility);
+        this.parallelism = parallelism;
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * The directory holding the nested libraries of the given archive, e.g. <code>BOOT-INF/lib/</code>, or
+     * <code>null</code> if its manifest names no Spring Boot layout. The <code>Spring-Boot-Lib</code> attribute is
+     * used if present, archives of Spring Boot versions not writing it are told by their launcher.
+     */
+    public static String libraryDirectory(File archive) throws IOException {
+        final JarFile jar = new JarFile(archive);
+        try {
+            final Manifest manifest = jar.getManifest();
+            if (manifest == null) {
+                return null;
+            }
+            final Attributes attributes = manifest.getMainAttributes();
+            final String library = attributes.getValue(SPRING_BOOT_LIB);
+            if (library != null) {
+                return library.endsWith("/") ? library : library + "/";
+            }
+            final String mainClass = attributes.getValue(Attributes.Name.MAIN_CLASS);
+            if (mainClass == null || !mainClass.startsWith(LAUNCHER_PACKAGE) || !mainClass.endsWith("Launcher")) {
+                return null;
+            }
+            return mainClass.endsWith(WAR_LAUNCHER) ? WAR_LIBRARY_DIRECTORY : JAR_LIBRARY_DIRECTORY;
+        } finally {
+            jar.close();
+        }
+    }
+
+    public File packageArtifact(Artifact currentArtifact, JarFile minimizedJar) throws IOException {
+        final File bootFile = currentArtifact.getFile();
+        final String libraryDirectory = libraryDirectory(bootFile);
+        if (libraryDirectory == null) {
+            throw new IllegalArgumentException(bootFile + " is not a Spring Boot archive, its manifest names no layout");
+        }
+        final File result = new File(appendUnderscoreMinimizedToArtifactName(bootFile.getPath()));
+        final Manifest manifest = manifest(bootFile);
+        final String classpathIndex = manifest.getMainAttributes().getValue(SPRING_BOOT_CLASSPATH_INDEX);
+        final String layersIndex = manifest.getMainAttributes().getValue(SPRING_BOOT_LAYERS_INDEX);
+
+        final File extracted = new File(workDirectory, "nested");
+        final File withEntryPoints = new File(workDirectory, "minimized-entry-points.jar");
+        final ZipArchive boot = open(bootFile);
+        try {
+            final BitSet libraries = boot.names().positionsWithPrefix(libraryDirectory);
+            final List<ZipArchiveEntry> entries = boot.entries();
+
+            // the nested libraries in class path order, which tells which one keeps a class defined more than once
+            final Map<String, ZipArchiveEntry> nested = Maps.newLinkedHashMap();
+            for (int i = libraries.nextSetBit(0); i >= 0; i = libraries.nextSetBit(i + 1)) {
+                final ZipArchiveEntry entry = entries.get(i);
+                if (entry.nameEndsWith(JAR_SUFFIX)) {
+                    nested.put(entry.getName().substring(libraryDirectory.length()), entry);
+                }
+            }
+            final List<String> classpath = classpathIndex == null
+                    ? Lists.newArrayList(nested.keySet())
+                    : classpathOrder(read(boot, classpathIndex), libraryDirectory, nested.keySet());
+            final List<File> dependencies = new ArrayList<File>(classpath.size());
+            prepare(extracted);
+            for (String name : classpath) {
+                final File dependency = new File(extracted, name);
+                dependency.getParentFile().mkdirs();
+                extract(boot, nested.get(name), dependency);
+                dependencies.add(dependency);
+            }
+
+            // the nested libraries keep the classes they name for Spring or the ServiceLoader to load by name
+            withEntryPoints(new File(minimizedJar.getName()), dependencies, withEntryPoints);
+            final Map<File, File> slimmedBySource = new DependencySlimmer(parallelism, reproducibility())
+                    .slimBySource(dependencies, withEntryPoints, new File(workDirectory, "slimmed"));
+
+            // slimmed libraries keep their path below the library directory, the indexes name them by it
+            final Map<String, File> slimmed = Maps.newLinkedHashMap();
+            for (int i = 0; i < classpath.size(); i++) {
+                final File slimmedLibrary = slimmedBySource.remove(dependencies.get(i));
+                if (slimmedLibrary != null) {
+                    slimmed.put(classpath.get(i), slimmedLibrary);
+                }
+            }
+            for (File remainder : slimmedBySource.values()) {
+                String name = remainder.getName();
+                for (int i = 1; nested.containsKey(name) || slimmed.containsKey(name); i++) {
+                    name = "minimized-" + i + JAR_SUFFIX;
+                }
+                slimmed.put(name, remainder);
+            }
+            final Map<String, byte[]> indexes = Maps.newHashMap();
+            if (classpathIndex != null) {
+                indexes.put(classpathIndex, rewriteClasspathIndex(read(boot, classpathIndex), libraryDirectory,
+                        slimmed.keySet()));
+            }
+            if (layersIndex != null) {
+                indexes.put(layersIndex, rewriteLayersIndex(read(boot, layersIndex), libraryDirectory,
+                        nested.keySet(), slimmed.keySet()));
+            }
+
+            final List<ZipArchiveEntry> kept = new ArrayList<ZipArchiveEntry>(entries.size() - nested.size());
+            for (int i = 0; i < entries.size(); i++) {
+                final ZipArchiveEntry entry = entries.get(i);
+                if (!libraries.get(i) || !entry.nameEndsWith(JAR_SUFFIX)) {
+                    kept.add(entry);
+                }
+            }
+            write(boot, kept, indexes, libraryDirectory, slimmed, result);
+        } finally {
+            boot.close();
+            delete(extracted);
+            withEntryPoints.delete();
+        }
+        return result;
+    }
+
+    private void write(ZipArchive boot, List<ZipArchiveEntry> kept, Map<String, byte[]> indexes,
+                       String libraryDirectory, Map<String, File> slimmed, File result) throws IOException {
+        boolean written = false;
+        final ZipArchiveWriter writer = writer(result);
+        try {
+            final ZipAssembler assembler = assembler(writer);
+            try {
+                for (ZipArchiveEntry entry : reproducibility().order(kept)) {
+                    final byte[] index = indexes.get(entry.getName());
+                    if (index == null) {
+                        assembler.add(boot, entry);
+                    } else {
+                        assembler.addStored(entry.getName(), index, boot.getFile().lastModified());
+                    }
+                }
+                for (Map.Entry<String, File> library : slimmed.entrySet()) {
+                    assembler.addStored(libraryDirectory + library.getKey(), library.getValue());
+                }
+                assembler.finish();
+                written = true;
+            } finally {
+                assembler.close();
+            }
+        } finally {
+            writer.close();
+            if (!written) {
+                result.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the classes of the minimized jar along with the classes the given libraries name in
+     * <code>META-INF/spring.factories</code>, <code>META-INF/spring/*.imports</code> or <code>META-INF/services</code>.
+     * Nothing refers to them, so they would be missing from the minimized jar unless they were made roots before.
+     */
+    private static void withEntryPoints(File minimizedJar, List<File> libraries, File target) throws IOException {
+        final Set<String> minimizedClasses = Sets.newHashSet();
+        final ZipArchive minimized = new ZipArchive(minimizedJar);
+        try {
+            for (ZipArchiveEntry entry : minimized.entries()) {
+                if (entry.nameEndsWith(CLASS_SUFFIX)) {
+                    final String name = entry.getName();
+                    minimizedClasses.add(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+                }
+            }
+        } finally {
+            minimized.close();
+        }
+
+        final Set<String> entryPoints = SpringFactories.entryPoints(libraries);
+        final Map<File, Set<String>> classes = Maps.newLinkedHashMap();
+        classes.put(minimizedJar, minimizedClasses);
+        for (File library : libraries) {
+            classes.put(library, entryPoints);
+        }
+        MinimizedJarWriter.write(classes, target);
+    }
+
+    /**
+     * The names of the nested libraries in the order of the class path index, followed by the ones it misses.
+     */
+    static List<String> classpathOrder(String classpathIndex, String libraryDirectory, Iterable<String> nested) {
+        final List<String> result = Lists.newArrayList();
+        final List<String> remaining = Lists.newArrayList(nested);
+        for (String line : classpathIndex.split("\n")) {
+            String name = unquote(line);
+            if (name.startsWith(libraryDirectory)) {
+                name = name.substring(libraryDirectory.length());
+            }
+            if (remaining.remove(name)) {
+                result.add(name);
+            }
+        }
+        result.addAll(remaining);
+        return result;
+    }
+
+    /**
+     * Lists the slimmed libraries, naming them like the given index does, with or without the library directory.
+     */
+    static byte[] rewriteClasspathIndex(String classpathIndex, String libraryDirectory, Iterable<String> slimmed) {
+        final boolean qualified = classpathIndex.contains(libraryDirectory);
+        final boolean quoted = classpathIndex.trim().isEmpty() || classpathIndex.trim().startsWith("- \"");
+        final StringBuilder result = new StringBuilder();
+        for (String name : slimmed) {
+            final String path = qualified ? libraryDirectory + name : name;
+            result.append(quoted ? "- \"" + path + "\"" : path).append('\n');
+        }
+        return result.toString().getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Drops the nested libraries that were not slimmed from the layers, and adds the slimmed ones no layer covers,
+     * by name or by directory, to the layer of the first library named, or to the last layer.
+     */
+    static byte[] rewriteLayersIndex(String layersIndex, String libraryDirectory, Iterable<String> nested,
+                                     Iterable<String> slimmed) {
+        final List<String> dropped = Lists.newArrayList(nested);
+        for (String name : slimmed) {
+            dropped.remove(name);
+        }
+
+        // the entries of every layer, in order
+        final Map<String, List<String>> layers = Maps.newLinkedHashMap();
+        String layer = null;
+        String libraryLayer = null;
+        for (String line : layersIndex.split("\n")) {
+            if (line.startsWith("- ")) {
+                layer = unquote(line);
+                layers.put(layer, Lists.<String>newArrayList());
+            } else if (line.trim().startsWith("- ") && layer != null) {
+                final String path = unquote(line);
+                final boolean library = path.startsWith(libraryDirectory) && path.endsWith(JAR_SUFFIX);
+                if (!library || !dropped.contains(path.substring(libraryDirectory.length()))) {
+                    layers.get(layer).add(path);
+                }
+                if (library && libraryLayer == null) {
+                    libraryLayer = layer;
+                }
+            }
+        }
+        if (layers.isEmpty()) {
+            return layersIndex.getBytes(Charsets.UTF_8);
+        }
+
+        for (String name : slimmed) {
+            if (!covered(layers, libraryDirectory + name)) {
+                layers.get(libraryLayer != null ? libraryLayer : layer).add(libraryDirectory + name);
+            }
+        }
+
+        final StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, List<String>> entries : layers.entrySet()) {
+            result.append("- \"").append(entries.getKey()).append("\":\n");
+            for (String path : entries.getValue()) {
+                result.append("  - \"").append(path).append("\"\n");
+            }
+        }
+        return result.toString().getBytes(Charsets.UTF_8);
+    }
+
+    private static boolean covered(Map<String, List<String>> layers, String path) {
+        for (List<String> entries : layers.values()) {
+            for (String entry : entries) {
+                if (entry.equals(path) || (entry.endsWith("/") && path.startsWith(entry))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The value of an index line, without the dash, the quotes and the colon ending layer names.
+     */
+    private static String unquote(String line) {
+        String value = line.trim();
+        if (value.startsWith("- ")) {
+            value = value.substring(2).trim();
+        }
+        if (value.endsWith(":")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static Manifest manifest(File archive) throws IOException {
+        final JarFile jar = new JarFile(archive);
+        try {
+            final Manifest manifest = jar.getManifest();
+            return manifest == null ? new Manifest() : manifest;
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static String read(ZipArchive archive, String name) throws IOException {
+        final int position = archive.names().positionOf(name);
+        if (position < 0) {
+            return "";
+        }
+        final ZipArchiveEntry entry = archive.entries().get(position);
+        return new String(ZipAssembler.body(archive.channel(), archive.locateData(entry), entry), Charsets.UTF_8);
+    }
+
+    /**
+     * Copies a nested jar out of the archive, channel to channel. Nested jars have to be stored to be read in place,
+     * the Spring Boot loader refuses compressed ones too.
+     */
+    private static void extract(ZipArchive archive, ZipArchiveEntry entry, File target) throws IOException {
+        if (entry.method != ZipArchiveEntry.STORED) {
+            throw new ZipException("Nested jar " + entry + " of " + archive.getFile()
+                    + " is compressed, nested jars have to be stored");
+        }
+        final long offset = archive.locateData(entry);
+        final FileOutputStream out = new FileOutputStream(target);
+        try {
+            final FileChannel channel = out.getChannel();
+            long transferred = 0;
+            while (transferred < entry.size) {
+                final long count = archive.channel().transferTo(offset + transferred, entry.size - transferred,
+                        channel);
+                if (count <= 0) {
+                    throw new ZipException("Unexpected end of input while reading " + entry);
+                }
+                transferred += count;
+            }
+        } finally {
+            out.close();
+        }
+        // slimmed libraries get the time of their source, keep it stable for as long as the archive is
+        target.setLastModified(archive.getFile().lastModified());
+    }
+
+    private static void prepare(File directory) throws IOException {
+        delete(directory);
+        if (!directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
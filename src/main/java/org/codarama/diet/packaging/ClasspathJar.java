@@ -0,0 +1,51 @@
+package org.codarama.diet.packaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Writes a jar holding nothing but a manifest whose <code>Class-Path</code> names the given class path elements,
+ * so that a single jar stands for a whole class path, e.g. on the class path of a test JVM.
+ *
+ * Elements are named by absolute <code>file:</code> URLs, the jar can be moved away from them.
+ */
+public class ClasspathJar {
+
+    private static final String MANIFEST_ENTRY = "META-INF/MANIFEST.MF";
+
+    private ClasspathJar() {
+    }
+
+    /**
+     * @param elements the jars and directories of the class path, in class path order
+     * @param target the jar to write
+     */
+    public static void write(List<File> elements, File target) throws IOException {
+        final StringBuilder classPath = new StringBuilder();
+        for (File element : elements) {
+            if (classPath.length() > 0) {
+                classPath.append(' ');
+            }
+            // directories are only taken for directories by the class loader if their URL ends with a slash
+            classPath.append(element.getAbsoluteFile().toURI().toASCIIString());
+        }
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath.toString());
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        manifest.write(content);
+
+        final ZipArchiveWriter writer = new ZipArchiveWriter(target);
+        try {
+            writer.putStored(MANIFEST_ENTRY, content.toByteArray(), System.currentTimeMillis());
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.codarama.diet.packaging;
+
+import java.util.zip.Deflater;
+
+/**
+ * How an entry is compressed in a repackaged artifact.
+ */
+public enum Compression {
+
+    /**
+     * The entry is copied as it is, compressed or not, which costs no CPU at all.
+     */
+    KEEP(-1),
+
+    /**
+     * The entry is stored uncompressed, e.g. for content that is compressed already.
+     */
+    STORE(0),
+
+    /**
+     * The entry is deflated at the fastest level.
+     */
+    FAST(Deflater.BEST_SPEED),
+
+    /**
+     * The entry is deflated at the best level.
+     */
+    BEST(Deflater.BEST_COMPRESSION);
+
+    private final int level;
+
+    Compression(int level) {
+        this.level = level;
+    }
+
+    int level() {
+        return level;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is none of keep, store, fast and best
+     */
+    public static Compression parse(String value) {
+        for (Compression compression : values()) {
+            if (compression.name().equalsIgnoreCase(value)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression '" + value + "', expected keep, store, fast or best");
+    }
+}
@@ -0,0 +1,84 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Chooses the {@link Compression} of each entry of a repackaged artifact by its file type, along with how many
+ * threads may compress entries at the same time.
+ */
+public class CompressionPolicy {
+
+    /**
+     * Copies every entry as it is, on the calling thread.
+     */
+    public static final CompressionPolicy KEEP = new CompressionPolicy(Compression.KEEP,
+            ImmutableMap.<String, Compression>of(), 1);
+
+    private final Compression defaultCompression;
+    private final Map<String, Compression> byExtension;
+    private final int threads;
+
+    /**
+     * @param defaultCompression the compression of the entries no file type is configured for
+     * @param byExtension compression by file extension, without the dot, e.g. <code>class</code> or <code>png</code>
+     * @param threads the number of threads compressing entries
+     */
+    public CompressionPolicy(Compression defaultCompression, Map<String, Compression> byExtension, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one compression thread is needed, got " + threads);
+        }
+        this.defaultCompression = defaultCompression;
+        this.byExtension = ImmutableMap.copyOf(byExtension);
+        this.threads = threads;
+    }
+
+    /**
+     * Builds a policy from its textual configuration, e.g. <code>keep</code> and <code>{class=best, png=store}</code>.
+     *
+     * @throws IllegalArgumentException for an unknown compression
+     */
+    public static CompressionPolicy parse(String defaultCompression, Map<String, String> byExtension, int threads) {
+        final ImmutableMap.Builder<String, Compression> compressions = ImmutableMap.builder();
+        if (byExtension != null) {
+            for (Map.Entry<String, String> extension : byExtension.entrySet()) {
+                compressions.put(extension.getKey().toLowerCase(), Compression.parse(extension.getValue()));
+            }
+        }
+        return new CompressionPolicy(Compression.parse(defaultCompression), compressions.build(), threads);
+    }
+
+    public Compression of(String entryName) {
+        final int dot = entryName.lastIndexOf('.');
+        if (dot < 0 || dot < entryName.lastIndexOf('/')) {
+            return defaultCompression;
+        }
+        final Compression compression = byExtension.get(entryName.substring(dot + 1).toLowerCase());
+        return compression == null ? defaultCompression : compression;
+    }
+
+    /**
+     * Whether every entry is copied as it is, in which case nothing needs to be compressed at all.
+     */
+    public boolean keepsAll() {
+        if (defaultCompression != Compression.KEEP) {
+            return false;
+        }
+        for (Compression compression : byExtension.values()) {
+            if (compression != Compression.KEEP) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        return defaultCompression + " " + byExtension + " on " + threads + " threads";
+    }
+}
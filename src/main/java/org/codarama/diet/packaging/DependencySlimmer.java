@@ -0,0 +1,276 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.codarama.diet.metrics.Phase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Slims every dependency jar on its own, instead of merging all minimized classes into a single jar.
+ *
+ * Each slimmed jar keeps the file name of its dependency and holds the entries of the dependency whose classes made
+ * it into the minimized jar, along with all of its resources. When more than one dependency defines the same class
+ * the first one keeps it, just like on the class path. Dependencies none of whose classes are used are left out,
+ * classes of the minimized jar that no dependency jar defines (e.g. ones coming from a directory) go to
+ * {@link #REMAINDER_JAR}.
+ *
+ * Entries are copied in their raw form and in their original order, and every slimmed jar gets the modification
+ * time of its dependency, so the slimmed jar of a dependency does not change as long as the dependency and the
+ * classes used from it do not. Given a {@link Reproducibility}, entries and jars are normalized as it says instead.
+ * The jars are written in parallel on a fork-join pool.
+ */
+public class DependencySlimmer {
+
+    public static final String REMAINDER_JAR = "minimized.jar";
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAR_SUFFIX = ".jar";
+
+    private final int parallelism;
+    private final Reproducibility reproducibility;
+
+    /**
+     * @param parallelism the number of jars written at the same time
+     */
+    public DependencySlimmer(int parallelism) {
+        this(parallelism, Reproducibility.NONE);
+    }
+
+    public DependencySlimmer(int parallelism, Reproducibility reproducibility) {
+        this.parallelism = parallelism;
+        this.reproducibility = reproducibility;
+    }
+
+    /**
+     * @param dependencies the dependencies, in class path order
+     * @param minimizedJar the minimized jar telling which classes to keep
+     * @param outputDirectory where to write the slimmed jars, jars already there are deleted
+     * @return the slimmed jars by their file names, in class path order
+     */
+    public Map<String, File> slim(Collection<File> dependencies, File minimizedJar, File outputDirectory)
+            throws IOException {
+        final Map<String, File> result = Maps.newLinkedHashMap();
+        for (File slimmed : slimBySource(dependencies, minimizedJar, outputDirectory).values()) {
+            result.put(slimmed.getName(), slimmed);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #slim(Collection, File, File)}, telling which dependency each slimmed jar stands for, e.g. to put
+     * it in place of the dependency on a class path.
+     *
+     * @return the slimmed jars by the dependency they were slimmed from, in class path order, the jar of the classes
+     * no dependency defines last and under the minimized jar
+     */
+    public Map<File, File> slimBySource(Collection<File> dependencies, File minimizedJar, File outputDirectory)
+            throws IOException {
+        prepare(outputDirectory);
+
+        // the classes of the minimized jar, by their position in it
+        final List<ZipArchiveEntry> minimizedEntries;
+        final EntryNames minimizedNames;
+        final BitSet unclaimed = new BitSet();
+        final ZipArchive minimized = new ZipArchive(minimizedJar);
+        try {
+            minimizedEntries = minimized.entries();
+            minimizedNames = minimized.names();
+            final BitSet duplicates = minimizedNames.duplicates();
+            for (int i = 0; i < minimizedEntries.size(); i++) {
+                if (minimizedEntries.get(i).nameEndsWith(CLASS_SUFFIX) && !duplicates.get(i)) {
+                    unclaimed.set(i);
+                }
+            }
+        } finally {
+            minimized.close();
+        }
+
+        // which jar keeps which class has to follow the class path order, so it is settled before forking
+        final Map<String, File> names = Maps.newHashMap();
+        final Map<File, File> result = Maps.newLinkedHashMap();
+        final List<SlimJar> tasks = Lists.newArrayList();
+        for (File dependency : dependencies) {
+            if (!dependency.isFile() || !dependency.getName().endsWith(JAR_SUFFIX)) {
+                continue;
+            }
+            final SlimJar task = claim(dependency, minimizedNames, unclaimed, reproducibility);
+            if (task != null) {
+                task.target = new File(outputDirectory, uniqueName(dependency.getName(), names));
+                names.put(task.target.getName(), task.target);
+                result.put(dependency, task.target);
+                tasks.add(task);
+            }
+        }
+        if (!unclaimed.isEmpty()) {
+            final SlimJar remainder = new SlimJar(minimizedJar, unclaimed, reproducibility);
+            remainder.target = new File(outputDirectory, uniqueName(REMAINDER_JAR, names));
+            names.put(remainder.target.getName(), remainder.target);
+            result.put(minimizedJar, remainder.target);
+            tasks.add(remainder);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the pool may wrap what a task threw
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+
+        final Phase phase = Phase.current();
+        for (SlimJar task : tasks) {
+            phase.read(task.source.length());
+            phase.written(task.target.length());
+            phase.entries(task.written);
+        }
+        return result;
+    }
+
+    private static void prepare(File outputDirectory) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + outputDirectory);
+        }
+        final File[] stale = outputDirectory.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                if (file.getName().endsWith(JAR_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims the unclaimed classes the given dependency defines, returning the task writing its slimmed jar, or
+     * <code>null</code> if the dependency has classes but none of them is used. The names of the dependency entries
+     * are looked up as they are, without decoding them.
+     */
+    private static SlimJar claim(File dependency, EntryNames minimizedNames, BitSet unclaimed,
+                                 Reproducibility reproducibility) throws IOException {
+        // the entries to keep, by their position in the dependency
+        final BitSet kept = new BitSet();
+        boolean hasClasses = false;
+        boolean usesClasses = false;
+
+        final ZipArchive archive = new ZipArchive(dependency);
+        try {
+            final List<ZipArchiveEntry> entries = archive.entries();
+            for (int i = 0; i < entries.size(); i++) {
+                final ZipArchiveEntry entry = entries.get(i);
+                if (!entry.nameEndsWith(CLASS_SUFFIX)) {
+                    kept.set(i);
+                } else {
+                    hasClasses = true;
+                    final int position = minimizedNames.positionOf(entry);
+                    if (position >= 0 && unclaimed.get(position)) {
+                        unclaimed.clear(position);
+                        kept.set(i);
+                        usesClasses = true;
+                    }
+                }
+            }
+        } finally {
+            archive.close();
+        }
+
+        return hasClasses && !usesClasses ? null : new SlimJar(dependency, kept, reproducibility);
+    }
+
+    private static String uniqueName(String name, Map<String, File> taken) {
+        if (!taken.containsKey(name)) {
+            return name;
+        }
+        final String base = name.substring(0, name.length() - JAR_SUFFIX.length());
+        int suffix = 1;
+        while (taken.containsKey(base + "-" + suffix + JAR_SUFFIX)) {
+            suffix++;
+        }
+        return base + "-" + suffix + JAR_SUFFIX;
+    }
+
+    /**
+     * Writes the kept entries of one jar.
+     */
+    private static class SlimJar extends RecursiveAction {
+
+        private final File source;
+        // by position in the source
+        private final BitSet kept;
+        private final Reproducibility reproducibility;
+        private File target;
+        private int written;
+
+        SlimJar(File source, BitSet kept, Reproducibility reproducibility) {
+            this.source = source;
+            this.kept = kept;
+            this.reproducibility = reproducibility;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write() throws IOException {
+            final ZipArchive archive = new ZipArchive(source);
+            try {
+                final ZipArchiveWriter writer = new ZipArchiveWriter(target, reproducibility);
+                try {
+                    final List<ZipArchiveEntry> entries = Lists.newArrayListWithCapacity(kept.cardinality());
+                    for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+                        entries.add(archive.entries().get(i));
+                    }
+                    for (ZipArchiveEntry entry : reproducibility.order(entries)) {
+                        writer.copy(archive, entry);
+                        written++;
+                    }
+                    writer.finish();
+                } finally {
+                    writer.close();
+                }
+            } finally {
+                archive.close();
+            }
+            target.setLastModified(reproducibility.isEnabled() ? reproducibility.timestamp() : source.lastModified());
+        }
+    }
+
+    /**
+     * Carries an {@link IOException} out of a fork-join task.
+     */
+    private static class UncheckedIOException extends RuntimeException {
+
+        UncheckedIOException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.codarama.diet.packaging;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The entry names of an archive, packed in a single byte array, for telling whether the archive holds a name and
+ * which of its entries share a prefix, e.g. <code>WEB-INF/lib/</code>.
+ *
+ * A hash set of names costs a String, its characters and a hash node per entry, which adds up for archives of hundreds
+ * of thousands of entries. Here a name costs its UTF-8 bytes and a few ints: names are looked up in an open addressing
+ * table of positions, hashing and comparing raw bytes, so the names of the entries looked up are never decoded.
+ * Prefixes are looked up by binary search in the names sorted, which happens on the first prefix lookup. Entries are
+ * referred to by their position in the list the names were taken from.
+ */
+final class EntryNames {
+
+    // in list order
+    private final byte[] names;
+    // where the name of every entry starts in names, followed by the length of names
+    private final int[] offsets;
+    // one more than the position of the first entry of every name, by hash of the name, 0 for none
+    private final int[] table;
+    // the positions of the entries, in the order of their names, sorted on first use
+    private int[] sorted;
+
+    private EntryNames(byte[] names, int[] offsets) {
+        this.names = names;
+        this.offsets = offsets;
+        this.table = new int[Integer.highestOneBit(Math.max(offsets.length - 1, 1)) * 4];
+        for (int position = 0; position < offsets.length - 1; position++) {
+            final int slot = slot(names, offsets[position], offsets[position + 1]);
+            if (table[slot] == 0) {
+                table[slot] = position + 1;
+            }
+        }
+    }
+
+    static EntryNames of(List<ZipArchiveEntry> entries) {
+        final int count = entries.size();
+        int length = 0;
+        for (ZipArchiveEntry entry : entries) {
+            length += utf8Name(entry).length;
+        }
+
+        final byte[] names = new byte[length];
+        final int[] offsets = new int[count + 1];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            final byte[] name = utf8Name(entries.get(i));
+            System.arraycopy(name, 0, names, offset, name.length);
+            offsets[i] = offset;
+            offset += name.length;
+        }
+        offsets[count] = offset;
+        return new EntryNames(names, offsets);
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    boolean contains(String name) {
+        return positionOf(name) >= 0;
+    }
+
+    /**
+     * The position of the first entry of the given name, or -1 if there is none.
+     */
+    int positionOf(String name) {
+        return positionOf(ZipArchiveEntry.encodeName(name));
+    }
+
+    /**
+     * The position of the first entry named like the given entry of another archive, or -1 if there is none.
+     */
+    int positionOf(ZipArchiveEntry entry) {
+        return positionOf(utf8Name(entry));
+    }
+
+    /**
+     * The positions of the entries whose names start with the given prefix.
+     */
+    BitSet positionsWithPrefix(String prefix) {
+        final byte[] bytes = ZipArchiveEntry.encodeName(prefix);
+        final int[] sorted = sorted();
+        final BitSet result = new BitSet(sorted.length);
+        for (int i = lowerBound(sorted, bytes); i < sorted.length && startsWith(sorted[i], bytes); i++) {
+            result.set(sorted[i]);
+        }
+        return result;
+    }
+
+    /**
+     * The positions of the entries named like an entry that comes before them, which archives should not hold but
+     * occasionally do.
+     */
+    BitSet duplicates() {
+        final BitSet result = new BitSet(size());
+        for (int position = 0; position < size(); position++) {
+            if (positionOf(names, offsets[position], offsets[position + 1]) != position) {
+                result.set(position);
+            }
+        }
+        return result;
+    }
+
+    private int positionOf(byte[] name) {
+        return positionOf(name, 0, name.length);
+    }
+
+    private int positionOf(byte[] name, int from, int to) {
+        return table[slot(name, from, to)] - 1;
+    }
+
+    /**
+     * The free slot of the given name, or the one of the first entry of that name.
+     */
+    private int slot(byte[] name, int from, int to) {
+        int slot = hash(name, from, to) & (table.length - 1);
+        while (table[slot] != 0) {
+            final int position = table[slot] - 1;
+            if (compare(names, offsets[position], offsets[position + 1], name, from, to) == 0) {
+                break;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return slot;
+    }
+
+    private synchronized int[] sorted() {
+        if (sorted == null) {
+            final int[] positions = new int[size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            sort(names, offsets, positions, new int[positions.length], 0, positions.length);
+            sorted = positions;
+        }
+        return sorted;
+    }
+
+    /**
+     * The index in the sorted positions of the first name not below the given one.
+     */
+    private int lowerBound(int[] sorted, byte[] name) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final int position = sorted[middle];
+            if (compare(names, offsets[position], offsets[position + 1], name, 0, name.length) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean startsWith(int position, byte[] prefix) {
+        final int start = offsets[position];
+        if (offsets[position + 1] - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (names[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // names mostly differ in a counter or two, which gives runs of close hashes, scatter them over the table
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Names without the UTF-8 flag are only re-encoded if they are not plain ASCII, which they nearly always are.
+     */
+    private static byte[] utf8Name(ZipArchiveEntry entry) {
+        if (entry.rawName == null) {
+            return ZipArchiveEntry.NO_BYTES;
+        }
+        if ((entry.flags & ZipArchiveEntry.FLAG_UTF8) == 0) {
+            for (byte b : entry.rawName) {
+                if (b < 0) {
+                    return ZipArchiveEntry.encodeName(entry.getName());
+                }
+            }
+        }
+        return entry.rawName;
+    }
+
+    /**
+     * Merge sorts the given range of positions by the names they point to, keeping equal names in list order.
+     */
+    private static void sort(byte[] names, int[] offsets, int[] positions, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        sort(names, offsets, positions, buffer, from, middle);
+        sort(names, offsets, positions, buffer, middle, to);
+        if (compare(names, offsets, positions[middle - 1], positions[middle]) <= 0) {
+            return; // already in order, e.g. archives written sorted
+        }
+
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(names, offsets, buffer[left], buffer[right]) <= 0)) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static int compare(byte[] names, int[] offsets, int first, int second) {
+        return compare(names, offsets[first], offsets[first + 1], names, offsets[second], offsets[second + 1]);
+    }
+
+    /**
+     * Compares unsigned bytes, which orders UTF-8 strings by code point.
+     */
+    private static int compare(byte[] first, int firstFrom, int firstTo, byte[] second, int secondFrom, int secondTo) {
+        final int length = Math.min(firstTo - firstFrom, secondTo - secondFrom);
+        for (int i = 0; i < length; i++) {
+            final int difference = (first[firstFrom + i] & 0xFF) - (second[secondFrom + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (firstTo - firstFrom) - (secondTo - secondFrom);
+    }
+}
@@ -0,0 +1,145 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a minimized jar holding a chosen subset of the classes of a number of dependencies.
+ *
+ * Classes are copied from their dependency jars in raw form, classes coming from a directory are stored. When more
+ * than one dependency defines the same class the first one wins, just like it would on the class path.
+ */
+public class MinimizedJarWriter {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private MinimizedJarWriter() {
+    }
+
+    /**
+     * @param classes internal names of the classes to write, by the dependency (jar or directory) to take them from
+     * @param target the jar to write
+     * @return the number of classes written
+     */
+    public static int write(Map<File, ? extends Collection<String>> classes, File target) throws IOException {
+        final Set<String> written = Sets.newHashSet();
+        final ZipArchiveWriter writer = new ZipArchiveWriter(target);
+        try {
+            for (Map.Entry<File, ? extends Collection<String>> dependency : classes.entrySet()) {
+                if (dependency.getKey().isDirectory()) {
+                    writeFromDirectory(dependency.getKey(), dependency.getValue(), written, writer);
+                } else {
+                    writeFromArchive(dependency.getKey(), Sets.newHashSet(dependency.getValue()), written, writer);
+                }
+            }
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+        return written.size();
+    }
+
+    /**
+     * Brings a minimized jar written before up to date. The classes the jar holds already are copied from it, only
+     * the dependencies holding classes it lacks are opened, and nothing is written if no class is missing or extra.
+     * The dependencies are assumed not to have changed since the jar was written.
+     *
+     * @param classes internal names of the classes to write, by the dependency (jar or directory) to take them from
+     * @param target the jar to update, written from scratch if it does not exist yet
+     * @return the number of classes added or removed
+     */
+    public static int update(Map<File, ? extends Collection<String>> classes, File target) throws IOException {
+        if (!target.isFile()) {
+            return write(classes, target);
+        }
+
+        final Set<String> wanted = Sets.newHashSet();
+        for (Collection<String> dependencyClasses : classes.values()) {
+            wanted.addAll(dependencyClasses);
+        }
+
+        final File updated = new File(target.getPath() + ".updating");
+        final Set<String> written = Sets.newHashSet();
+        int removed = 0;
+        int added;
+        final ZipArchive current = new ZipArchive(target);
+        try {
+            final ZipArchiveWriter writer = new ZipArchiveWriter(updated);
+            try {
+                for (ZipArchiveEntry entry : current.entries()) {
+                    final String name = entry.getName();
+                    final String className = name.endsWith(CLASS_SUFFIX)
+                            ? name.substring(0, name.length() - CLASS_SUFFIX.length())
+                            : null;
+                    if (className != null && wanted.contains(className)) {
+                        writer.copy(current, entry);
+                        written.add(className);
+                    } else {
+                        removed++;
+                    }
+                }
+
+                final int kept = written.size();
+                for (Map.Entry<File, ? extends Collection<String>> dependency : classes.entrySet()) {
+                    if (written.containsAll(dependency.getValue())) {
+                        continue;
+                    }
+                    if (dependency.getKey().isDirectory()) {
+                        writeFromDirectory(dependency.getKey(), dependency.getValue(), written, writer);
+                    } else {
+                        writeFromArchive(dependency.getKey(), Sets.newHashSet(dependency.getValue()), written, writer);
+                    }
+                }
+                added = written.size() - kept;
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+        } finally {
+            current.close();
+        }
+
+        if (removed == 0 && added == 0) {
+            updated.delete();
+            return 0;
+        }
+        if (!target.delete() || !updated.renameTo(target)) {
+            throw new IOException("Unable to replace " + target + " with " + updated);
+        }
+        return removed + added;
+    }
+
+    private static void writeFromArchive(File archive, Set<String> wanted, Set<String> written,
+                                         ZipArchiveWriter writer) throws IOException {
+        final ZipArchive source = new ZipArchive(archive);
+        try {
+            for (ZipArchiveEntry entry : source.entries()) {
+                final String name = entry.getName();
+                if (!name.endsWith(CLASS_SUFFIX)) {
+                    continue;
+                }
+                final String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+                if (wanted.contains(className) && written.add(className)) {
+                    writer.copy(source, entry);
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void writeFromDirectory(File directory, Collection<String> wanted, Set<String> written,
+                                           ZipArchiveWriter writer) throws IOException {
+        for (String className : wanted) {
+            final File classFile = new File(directory, className + CLASS_SUFFIX);
+            if (classFile.isFile() && written.add(className)) {
+                writer.putStored(className + CLASS_SUFFIX, classFile);
+            }
+        }
+    }
+}
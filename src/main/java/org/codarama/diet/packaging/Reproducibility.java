@@ -0,0 +1,225 @@
+package org.codarama.diet.packaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Makes written archives depend on nothing but the content of their entries, so that building the same inputs twice
+ * gives the same bytes.
+ *
+ * Every entry gets the same timestamp, the same permissions (<code>0644</code>, <code>0755</code> for directories)
+ * and loses the extra fields recording times and owners. Unless told to keep their order, entries are sorted by name,
+ * behind <code>META-INF/</code> and the manifest, which have to come first. Timestamps are converted in UTC, so the
+ * result does not depend on the time zone of the build either.
+ */
+public class Reproducibility {
+
+    /**
+     * Leaves entries as they are.
+     */
+    public static final Reproducibility NONE = new Reproducibility(-1, false);
+
+    /**
+     * The timestamp used when none is configured, the earliest one a zip entry can carry.
+     */
+    public static final long DEFAULT_TIMESTAMP = 315532800000L; // 1980-01-01T00:00:00Z
+
+    private static final String META_INF = "META-INF/";
+    private static final String MANIFEST_ENTRY = "META-INF/MANIFEST.MF";
+
+    private static final int UNIX = 3;
+    private static final long FILE_ATTRIBUTES = 0100644L << 16;
+    private static final long DIRECTORY_ATTRIBUTES = (040755L << 16) | 0x10;
+
+    // extra fields holding times or owners, see the APPNOTE and the Info-ZIP extra field list
+    private static final int NTFS = 0x000A;
+    private static final int PKWARE_UNIX = 0x000D;
+    private static final int EXTENDED_TIMESTAMP = 0x5455;
+    private static final int INFO_ZIP_UNIX_OLD = 0x5855;
+    private static final int INFO_ZIP_UNIX = 0x7855;
+    private static final int INFO_ZIP_UNIX_NEW = 0x7875;
+
+    private static final Comparator<ZipArchiveEntry> BY_NAME = new Comparator<ZipArchiveEntry>() {
+        public int compare(ZipArchiveEntry left, ZipArchiveEntry right) {
+            final int rank = rank(left.getName()) - rank(right.getName());
+            return rank != 0 ? rank : left.getName().compareTo(right.getName());
+        }
+    };
+
+    private final long timestamp;
+    private final int dosTime;
+    private final boolean keepOrder;
+
+    private Reproducibility(long timestamp, boolean keepOrder) {
+        this.timestamp = timestamp;
+        this.dosTime = timestamp < 0 ? 0 : toDosTime(timestamp);
+        this.keepOrder = keepOrder;
+    }
+
+    /**
+     * Normalizes entries to the given timestamp, in milliseconds since the epoch.
+     */
+    public static Reproducibility at(long timestamp) {
+        if (timestamp < DEFAULT_TIMESTAMP) {
+            throw new IllegalArgumentException("Timestamps before 1980 do not fit a zip entry, got " + timestamp);
+        }
+        return new Reproducibility(timestamp, false);
+    }
+
+    /**
+     * Builds the normalization asked for by a <code>project.build.outputTimestamp</code> style value, either seconds
+     * since the epoch or an ISO 8601 date time such as <code>2020-01-01T00:00:00Z</code>. As in Maven, a missing
+     * value or one of a single character leaves entries as they are, unless normalizing is forced, in which case
+     * {@link #DEFAULT_TIMESTAMP} is used.
+     *
+     * @throws IllegalArgumentException if the value is neither
+     */
+    public static Reproducibility parse(String outputTimestamp, boolean force) {
+        if (outputTimestamp == null || outputTimestamp.trim().length() < 2) {
+            return force ? at(DEFAULT_TIMESTAMP) : NONE;
+        }
+        final String value = outputTimestamp.trim();
+        if (value.matches("[0-9]+")) {
+            return at(Long.parseLong(value) * 1000);
+        }
+        for (String pattern : new String[] {"yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXXX"}) {
+            final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ROOT);
+            format.setLenient(false);
+            try {
+                return at(format.parse(value).getTime());
+            } catch (ParseException e) {
+                // try the next pattern
+            }
+        }
+        throw new IllegalArgumentException("Invalid output timestamp '" + outputTimestamp
+                + "', expected seconds since the epoch or an ISO 8601 date time such as 2020-01-01T00:00:00Z");
+    }
+
+    /**
+     * The same normalization, leaving the order of entries as it is, e.g. for a jar laid out for startup.
+     */
+    public Reproducibility keepingOrder() {
+        return isEnabled() ? new Reproducibility(timestamp, true) : this;
+    }
+
+    public boolean isEnabled() {
+        return timestamp >= 0;
+    }
+
+    /**
+     * The timestamp of every entry, in milliseconds since the epoch, or -1 if entries are left as they are.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The given entries in the order to write them in.
+     */
+    List<ZipArchiveEntry> order(Collection<ZipArchiveEntry> entries) {
+        final List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>(entries);
+        if (isEnabled() && !keepOrder) {
+            Collections.sort(result, BY_NAME);
+        }
+        return result;
+    }
+
+    /**
+     * Rewrites the header fields of an entry that do not depend on its content. The body is left alone.
+     */
+    void normalize(ZipArchiveEntry entry) {
+        if (!isEnabled()) {
+            return;
+        }
+        entry.dosTime = dosTime;
+        entry.versionMadeBy = UNIX << 8 | ZipArchiveWriter.VERSION;
+        entry.externalAttributes = entry.isDirectory() ? DIRECTORY_ATTRIBUTES : FILE_ATTRIBUTES;
+        entry.extra = stripVolatileFields(entry.extra);
+        if (entry.localExtra != null) {
+            entry.localExtra = stripVolatileFields(entry.localExtra);
+        }
+    }
+
+    /**
+     * Copies the given jar to the target file normalized, entry bodies are copied as they are.
+     */
+    void rewrite(File jar, File target) throws IOException {
+        final ZipArchive source = new ZipArchive(jar);
+        try {
+            final ZipArchiveWriter writer = new ZipArchiveWriter(target, this);
+            try {
+                for (ZipArchiveEntry entry : order(source.entries())) {
+                    writer.copy(source, entry);
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+        } finally {
+            source.close();
+        }
+        target.setLastModified(timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return isEnabled() ? "reproducible at " + timestamp + (keepOrder ? " in original order" : "") : "none";
+    }
+
+    private static int rank(String name) {
+        if (META_INF.equals(name)) {
+            return 0;
+        }
+        return MANIFEST_ENTRY.equalsIgnoreCase(name) ? 1 : 2;
+    }
+
+    private static int toDosTime(long millis) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+        calendar.setTimeInMillis(millis);
+        return (calendar.get(Calendar.YEAR) - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Drops the extra fields recording times and owners, keeping the others (e.g. the jar marker) in their order.
+     * A malformed extra field is dropped as a whole.
+     */
+    private static byte[] stripVolatileFields(byte[] extra) {
+        if (extra.length == 0) {
+            return extra;
+        }
+        final ByteBuffer fields = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteArrayOutputStream kept = new ByteArrayOutputStream(extra.length);
+        while (fields.remaining() >= 4) {
+            final int start = fields.position();
+            final int id = fields.getShort() & 0xFFFF;
+            final int length = fields.getShort() & 0xFFFF;
+            if (length > fields.remaining()) {
+                return new byte[0];
+            }
+            fields.position(fields.position() + length);
+            if (id != NTFS && id != PKWARE_UNIX && id != EXTENDED_TIMESTAMP && id != INFO_ZIP_UNIX_OLD
+                    && id != INFO_ZIP_UNIX && id != INFO_ZIP_UNIX_NEW) {
+                kept.write(extra, start, 4 + length);
+            }
+        }
+        return fields.hasRemaining() ? new byte[0] : kept.toByteArray();
+    }
+}
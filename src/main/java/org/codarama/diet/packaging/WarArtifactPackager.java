@@ -1,50 +1,193 @@
 package org.codarama.diet.packaging;
 
-import com.google.common.collect.Sets;
 import org.apache.maven.artifact.Artifact;
-import org.zeroturnaround.zip.*;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
 import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * An {@link ArtifactPackager} for .war artifacts.
+ *
+ * Library jars are replaced by the minimized jar, packaged under <code>WEB-INF/lib</code> where servlet containers load
+ * it from, every other entry is streamed from the original WAR in its raw
+ * form unless the {@link CompressionPolicy} says otherwise. Entry bodies are transferred channel to channel, so memory
+ * usage does not depend on the size of the WAR.
+ *
+ * Given the jars slimmed one by one (see {@link DependencySlimmer}), they take the place of the libraries under
+ * <code>WEB-INF/lib</code>, each under its own name, instead of the minimized jar.
+ *
+ * Only the libraries depend on the minimized jar, so repackaging can be {@link #start(Artifact) started} before the
+ * minimized jar exists, copying the rest of the WAR while the dependencies are being minimized.
  */
 public class WarArtifactPackager extends AbstractArtifactPackager implements ArtifactPackager {
 
+    static final String LIBRARY_DIRECTORY = "WEB-INF/lib/";
+    static final String MINIMIZED_JAR_ENTRY = LIBRARY_DIRECTORY + "minimized.jar";
+
+    // jars under lib/ are not loaded by servlet containers, but they are libraries all the same
+    private static final String[] LIBRARY_PREFIXES = {LIBRARY_DIRECTORY, "lib/"};
+    private static final String JAR_SUFFIX = ".jar";
+
+    private final Map<String, File> slimmedLibraries;
+
+    public WarArtifactPackager() {
+        this(CompressionPolicy.KEEP);
+    }
+
+    public WarArtifactPackager(CompressionPolicy compression) {
+        this(compression, null);
+    }
+
+    /**
+     * @param slimmedLibraries the slimmed jars to package as libraries by their file names, or <code>null</code> to
+     * package the minimized jar instead
+     */
+    public WarArtifactPackager(CompressionPolicy compression, Map<String, File> slimmedLibraries) {
+        this(compression, Reproducibility.NONE, slimmedLibraries);
+    }
+
+    /**
+     * @param slimmedLibraries the slimmed jars to package as libraries by their file names, or <code>null</code> to
+     * package the minimized jar instead, see {@link DependencySlimmer} for how to make them reproducible
+     */
+    public WarArtifactPackager(CompressionPolicy compression, Reproducibility reproducibility,
+                               Map<String, File> slimmedLibraries) {
+        super(compression, reproducibility);
+        this.slimmedLibraries = slimmedLibraries;
+    }
+
     public File packageArtifact(Artifact currentArtifact, JarFile minimizedJar) throws IOException {
+        final Repackaging repackaging = start(currentArtifact);
+        try {
+            return repackaging.finish(minimizedJar, slimmedLibraries);
+        } finally {
+            repackaging.close();
+        }
+    }
+
+    /**
+     * Starts repackaging the given WAR, writing every entry but the libraries.
+     */
+    public Repackaging start(Artifact currentArtifact) throws IOException {
+        final File warFile = currentArtifact.getFile();
+        final File result = new File(appendUnderscoreMinimizedToArtifactName(warFile.getPath()));
+
+        final ZipArchive war = open(warFile);
+        ZipArchiveWriter writer = null;
+        ZipAssembler assembler = null;
+        boolean started = false;
+        try {
+            writer = writer(result);
+            assembler = assembler(writer);
+            copy(war, nonLibraries(war), assembler);
+            started = true;
+            return new Repackaging(result, war, writer, assembler);
+        } finally {
+            if (!started) {
+                new Repackaging(result, war, writer, assembler).close();
+            }
+        }
+    }
 
-        final Set<ZipEntrySource> resultEntriesSet = Sets.newHashSet();
-        ZipUtil.iterate(currentArtifact.getFile(), new ZipEntryCallback() {
+    /**
+     * A WAR being repackaged, whose libraries are still missing.
+     */
+    public final class Repackaging implements Closeable {
 
-            public void process(InputStream in, ZipEntry warEntry) throws IOException {
+        private final File result;
+        private final ZipArchive war;
+        private final ZipArchiveWriter writer;
+        private final ZipAssembler assembler;
+        private boolean finished;
 
-                final String warEntryName = warEntry.getName();
-                final boolean entryIsNotInLibDirs =
-                        !warEntry.isDirectory() && (warEntryName.startsWith("lib") || warEntryName.startsWith("WEB-INF/lib"));
+        private Repackaging(File result, ZipArchive war, ZipArchiveWriter writer, ZipAssembler assembler) {
+            this.result = result;
+            this.war = war;
+            this.writer = writer;
+            this.assembler = assembler;
+        }
 
-                if (entryIsNotInLibDirs) {
-                    resultEntriesSet.add(new ByteSource(warEntryName, readBytes(in)));
+        /**
+         * Adds the libraries and completes the repackaged WAR.
+         *
+         * @param slimmedLibraries the slimmed jars to package as libraries by their file names, or <code>null</code>
+         * to package the minimized jar instead
+         * @return the repackaged WAR
+         */
+        public File finish(JarFile minimizedJar, Map<String, File> slimmedLibraries) throws IOException {
+            // the minimized jar is packaged as a file, so its own entries have to be normalized too
+            final File minimizedJarFile = new File(minimizedJar.getName());
+            final File minimizedLibrary = reproducibility().isEnabled() && slimmedLibraries == null
+                    ? new File(result.getPath() + ".minimized.jar")
+                    : minimizedJarFile;
+            try {
+                if (slimmedLibraries == null) {
+                    if (minimizedLibrary != minimizedJarFile) {
+                        reproducibility().rewrite(minimizedJarFile, minimizedLibrary);
+                    }
+                    assembler.add(MINIMIZED_JAR_ENTRY, minimizedLibrary);
+                } else {
+                    for (Map.Entry<String, File> library : slimmedLibraries.entrySet()) {
+                        assembler.add(LIBRARY_DIRECTORY + library.getKey(), library.getValue());
+                    }
+                }
+                assembler.finish();
+            } finally {
+                if (minimizedLibrary != minimizedJarFile) {
+                    minimizedLibrary.delete();
                 }
             }
-        });
-        resultEntriesSet.add(new FileSource("lib/minimized.jar", new File(minimizedJar.getName())));
+            finished = true;
+            return result;
+        }
 
-        final ZipFile warFile = new ZipFile(currentArtifact.getFile());
-        final File result = new File(appendUnderscoreMinimizedToArtifactName(warFile.getName()));
+        /**
+         * Releases the WAR, deleting the repackaged one unless it was finished.
+         */
+        public void close() throws IOException {
+            try {
+                if (assembler != null) {
+                    assembler.close();
+                }
+            } finally {
+                try {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                } finally {
+                    war.close();
+                    if (!finished) {
+                        result.delete();
+                    }
+                }
+            }
+        }
+    }
 
-        final ZipEntrySource[] newEntries = resultEntriesSet.toArray(new ZipEntrySource[resultEntriesSet.size()]);
-        ZipUtil.addEntries(
-                currentArtifact.getFile(),
-                newEntries,
-                result
-        );
+    /**
+     * The entries of the WAR other than library jars, found by prefix in the name index of the WAR, so that only the
+     * names under the library directories are decoded.
+     */
+    private static List<ZipArchiveEntry> nonLibraries(ZipArchive war) {
+        final BitSet libraryDirectories = new BitSet();
+        for (String prefix : LIBRARY_PREFIXES) {
+            libraryDirectories.or(war.names().positionsWithPrefix(prefix));
+        }
 
+        final List<ZipArchiveEntry> entries = war.entries();
+        final List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final ZipArchiveEntry entry = entries.get(i);
+            if (!libraryDirectories.get(i) || entry.isDirectory() || !entry.nameEndsWith(JAR_SUFFIX)) {
+                result.add(entry);
+            }
+        }
         return result;
     }
 }
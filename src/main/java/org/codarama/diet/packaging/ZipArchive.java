@@ -0,0 +1,272 @@
+package org.codarama.diet.packaging;
+
+import org.codarama.diet.metrics.Phase;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a zip file, built from its central directory.
+ *
+ * Entry bodies are never inflated, they are exposed as raw byte ranges so that they can be copied to another
+ * archive as they are. Only the central directory is kept in memory, so the footprint depends on the number of
+ * entries and not on the size of the archive.
+ *
+ * Archives of more than 65535 entries, or whose central directory lies beyond 4 GB, are read through their ZIP64 end
+ * of central directory record, entries beyond 4 GB through their ZIP64 extra field.
+ *
+ * The central directory is read to the heap in one go, the file is never memory mapped: a mapping is only released
+ * once it is garbage collected, and until then Windows refuses to delete or overwrite the file. Headers are read with
+ * positional reads of the channel, which leave its position alone, so entry bodies can be transferred from it while
+ * other threads locate entries.
+ */
+class ZipArchive implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+
+    static final int LOCAL_HEADER_LENGTH = 30;
+    static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+    static final int ZIP64_LOCATOR_LENGTH = 20;
+
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final List<ZipArchiveEntry> entries;
+    private final Phase phase = Phase.current();
+    private EntryNames names;
+
+    ZipArchive(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    List<ZipArchiveEntry> entries() {
+        return entries;
+    }
+
+    /**
+     * The names of the entries, indexed on first use, see {@link EntryNames}.
+     */
+    synchronized EntryNames names() {
+        if (names == null) {
+            names = EntryNames.of(entries);
+        }
+        return names;
+    }
+
+    /**
+     * Reads the local header of the given entry, returning the offset at which its body starts. The entry is left
+     * alone, as entries are shared by every thread reading the archive.
+     */
+    long locateData(ZipArchiveEntry entry) throws IOException {
+        return locateData(entry, null);
+    }
+
+    /**
+     * Reads the local header of the given entry, returning the offset at which its body starts. The extra field of
+     * the local header, which may legitimately differ from the central one, is stored to the given copy of the entry
+     * unless it is <code>null</code>.
+     */
+    long locateData(ZipArchiveEntry entry, ZipArchiveEntry copy) throws IOException {
+        final ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_LENGTH);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry " + entry + " in " + file);
+        }
+        final int nameLength = header.getShort(26) & 0xFFFF;
+        final int extraLength = header.getShort(28) & 0xFFFF;
+        final long extraOffset = entry.localHeaderOffset + LOCAL_HEADER_LENGTH + nameLength;
+
+        if (copy != null) {
+            copy.localExtra = new byte[extraLength];
+            if (extraLength > 0) {
+                read(extraOffset, extraLength).get(copy.localExtra);
+            }
+        }
+        return extraOffset + extraLength;
+    }
+
+    /**
+     * The channel raw entry bodies are read from, see {@link #locateData(ZipArchiveEntry)}.
+     */
+    FileChannel channel() {
+        return raf.getChannel();
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private List<ZipArchiveEntry> readCentralDirectory() throws IOException {
+        final long endOffset = findEndOfCentralDirectory();
+        final ByteBuffer end = read(endOffset, END_OF_CENTRAL_DIRECTORY_LENGTH);
+        long totalEntries = end.getShort(10) & 0xFFFF;
+        long directorySize = end.getInt(12) & 0xFFFFFFFFL;
+        long directoryOffset = end.getInt(16) & 0xFFFFFFFFL;
+
+        if (totalEntries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            final ByteBuffer zip64End = findZip64EndOfCentralDirectory(endOffset);
+            if (zip64End != null) {
+                totalEntries = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+        }
+        if (totalEntries > Integer.MAX_VALUE || directorySize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large: " + file);
+        }
+
+        final ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        final List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>((int) totalEntries);
+        for (int i = 0; i < totalEntries; i++) {
+            if (directory.getInt() != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in " + file);
+            }
+            final ZipArchiveEntry entry = new ZipArchiveEntry();
+            entry.versionMadeBy = directory.getShort() & 0xFFFF;
+            entry.versionNeeded = directory.getShort() & 0xFFFF;
+            entry.flags = directory.getShort() & 0xFFFF;
+            entry.method = directory.getShort() & 0xFFFF;
+            entry.dosTime = directory.getInt();
+            entry.crc = directory.getInt() & 0xFFFFFFFFL;
+            entry.compressedSize = directory.getInt() & 0xFFFFFFFFL;
+            entry.size = directory.getInt() & 0xFFFFFFFFL;
+            final int nameLength = directory.getShort() & 0xFFFF;
+            final int extraLength = directory.getShort() & 0xFFFF;
+            final int commentLength = directory.getShort() & 0xFFFF;
+            directory.getShort(); // disk number start
+            entry.internalAttributes = directory.getShort() & 0xFFFF;
+            entry.externalAttributes = directory.getInt() & 0xFFFFFFFFL;
+            entry.localHeaderOffset = directory.getInt() & 0xFFFFFFFFL;
+
+            entry.rawName = new byte[nameLength];
+            directory.get(entry.rawName);
+            entry.extra = bytes(directory, extraLength);
+            entry.comment = bytes(directory, commentLength);
+
+            if (entry.size == 0xFFFFFFFFL || entry.compressedSize == 0xFFFFFFFFL
+                    || entry.localHeaderOffset == 0xFFFFFFFFL) {
+                readZip64Extra(entry);
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * The sizes and offset of the entry the central directory could not hold, in this order and only the ones it
+     * could not hold.
+     */
+    private void readZip64Extra(ZipArchiveEntry entry) throws ZipException {
+        final ByteBuffer extra = ByteBuffer.wrap(entry.extra).order(ByteOrder.LITTLE_ENDIAN);
+        while (extra.remaining() >= 4) {
+            final int id = extra.getShort() & 0xFFFF;
+            final int length = extra.getShort() & 0xFFFF;
+            if (id != ZIP64_EXTRA_ID) {
+                extra.position(Math.min(extra.limit(), extra.position() + length));
+                continue;
+            }
+            try {
+                if (entry.size == 0xFFFFFFFFL) {
+                    entry.size = extra.getLong();
+                }
+                if (entry.compressedSize == 0xFFFFFFFFL) {
+                    entry.compressedSize = extra.getLong();
+                }
+                if (entry.localHeaderOffset == 0xFFFFFFFFL) {
+                    entry.localHeaderOffset = extra.getLong();
+                }
+            } catch (BufferUnderflowException e) {
+                throw new ZipException("Invalid ZIP64 extra field of " + entry + " in " + file);
+            }
+            return;
+        }
+        throw new ZipException("Missing ZIP64 extra field of " + entry + " in " + file);
+    }
+
+    /**
+     * The offset of the end of central directory record.
+     */
+    private long findEndOfCentralDirectory() throws IOException {
+        final long length = raf.getChannel().size();
+        if (length < END_OF_CENTRAL_DIRECTORY_LENGTH) {
+            throw new ZipException("Not a zip file: " + file);
+        }
+
+        final int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        final ByteBuffer tail = read(length - tailLength, tailLength);
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return length - tailLength + i;
+            }
+        }
+        throw new ZipException("End of central directory not found in " + file);
+    }
+
+    /**
+     * The ZIP64 end of central directory record the locator right before the end of central directory points to, or
+     * <code>null</code> if there is none and the saturated fields are genuine.
+     */
+    private ByteBuffer findZip64EndOfCentralDirectory(long endOffset) throws IOException {
+        if (endOffset < ZIP64_LOCATOR_LENGTH) {
+            return null;
+        }
+        final ByteBuffer locator = read(endOffset - ZIP64_LOCATOR_LENGTH, ZIP64_LOCATOR_LENGTH);
+        if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+            return null;
+        }
+        final ByteBuffer end = read(locator.getLong(8), ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+        if (end.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            throw new ZipException("Invalid ZIP64 end of central directory in " + file);
+        }
+        return end;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int length) {
+        if (length == 0) {
+            return ZipArchiveEntry.NO_BYTES;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final FileChannel channel = raf.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of " + file);
+            }
+        }
+        phase.read(length);
+        buffer.flip();
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
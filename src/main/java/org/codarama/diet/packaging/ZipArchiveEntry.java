@@ -0,0 +1,114 @@
+package org.codarama.diet.packaging;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+
+/**
+ * A single record of a zip central directory.
+ *
+ * Holds everything needed to write the entry to another archive without touching its (possibly compressed) body.
+ */
+class ZipArchiveEntry {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    static final int FLAG_UTF8 = 1 << 11;
+
+    static final byte[] NO_BYTES = new byte[0];
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset CP437 = Charset.forName("IBM437");
+
+    int versionMadeBy;
+    int versionNeeded;
+    int flags;
+    int method;
+    int dosTime;
+    long crc;
+    long compressedSize;
+    long size;
+    int internalAttributes;
+    long externalAttributes;
+    long localHeaderOffset;
+
+    byte[] rawName;
+    byte[] extra = NO_BYTES;
+    byte[] comment = NO_BYTES;
+    byte[] localExtra;
+
+    private String name;
+
+    String getName() {
+        if (name == null) {
+            name = new String(rawName, (flags & FLAG_UTF8) != 0 ? UTF8 : CP437);
+        }
+        return name;
+    }
+
+    /**
+     * Whether the name ends with the given ASCII suffix, which does not need the name decoded.
+     */
+    boolean nameEndsWith(String suffix) {
+        final int offset = rawName.length - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (rawName[offset + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isDirectory() {
+        return rawName.length > 0 && rawName[rawName.length - 1] == '/';
+    }
+
+    ZipArchiveEntry copy() {
+        final ZipArchiveEntry copy = new ZipArchiveEntry();
+        copy.versionMadeBy = versionMadeBy;
+        copy.versionNeeded = versionNeeded;
+        copy.flags = flags;
+        copy.method = method;
+        copy.dosTime = dosTime;
+        copy.crc = crc;
+        copy.compressedSize = compressedSize;
+        copy.size = size;
+        copy.internalAttributes = internalAttributes;
+        copy.externalAttributes = externalAttributes;
+        copy.localHeaderOffset = localHeaderOffset;
+        copy.rawName = rawName;
+        copy.extra = extra;
+        copy.comment = comment;
+        copy.localExtra = localExtra;
+        copy.name = name;
+        return copy;
+    }
+
+    static byte[] encodeName(String name) {
+        return name.getBytes(UTF8);
+    }
+
+    static int toDosTime(long millis) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,397 @@
+package org.codarama.diet.packaging;
+
+import org.codarama.diet.metrics.Phase;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file in a single sequential pass.
+ *
+ * Entries are copied from a {@link ZipArchive} in their raw form, so already compressed bodies are never inflated
+ * and deflated again. Entry bodies are moved with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)} and never pass through the heap, only headers are buffered.
+ *
+ * The bytes moved and the entries written are reported to the {@link Phase} current when the writer was created.
+ * Headers are normalized by the given {@link Reproducibility} as they are written.
+ *
+ * Archives of more than 65535 entries, or whose central directory starts beyond 4 GB, get a ZIP64 end of central
+ * directory record. Entries themselves cannot be larger than 4 GB nor start beyond it.
+ */
+class ZipArchiveWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final int VERSION = 20;
+    static final int ZIP64_VERSION = 45;
+
+    private final FileOutputStream stream;
+    private final FileChannel out;
+    private final ByteBuffer headers = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final List<ZipArchiveEntry> written = new ArrayList<ZipArchiveEntry>();
+    private final Phase phase = Phase.current();
+    private final Reproducibility reproducibility;
+
+    private long position;
+    private boolean finished;
+
+    ZipArchiveWriter(File target) throws IOException {
+        this(target, Reproducibility.NONE);
+    }
+
+    ZipArchiveWriter(File target, Reproducibility reproducibility) throws IOException {
+        this.reproducibility = reproducibility;
+        this.stream = new FileOutputStream(target);
+        this.out = stream.getChannel();
+    }
+
+    /**
+     * Copies the given entry of the source archive, including its compressed body, to this archive.
+     */
+    void copy(ZipArchive source, ZipArchiveEntry sourceEntry) throws IOException {
+        final ZipArchiveEntry entry = sourceEntry.copy();
+        final long dataOffset = source.locateData(sourceEntry, entry);
+        // sizes and crc are known up front, so the local header carries them and no data descriptor is needed
+        entry.flags &= ~ZipArchiveEntry.FLAG_DATA_DESCRIPTOR;
+
+        writeLocalHeader(entry);
+        flushHeaders();
+        transfer(source.channel(), dataOffset, entry.compressedSize);
+        position += entry.compressedSize;
+    }
+
+    /**
+     * Copies the given entry of the source archive to this archive uncompressed, inflating its body if it is
+     * compressed. Stored entries can be read without inflating them, at the cost of a larger archive.
+     */
+    void copyStored(ZipArchive source, ZipArchiveEntry sourceEntry) throws IOException {
+        if (sourceEntry.method == ZipArchiveEntry.STORED) {
+            copy(source, sourceEntry);
+            return;
+        }
+        if (sourceEntry.method != ZipArchiveEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + sourceEntry.method + " of " + sourceEntry);
+        }
+        final ZipArchiveEntry entry = sourceEntry.copy();
+        final long dataOffset = source.locateData(sourceEntry, entry);
+        entry.flags &= ~ZipArchiveEntry.FLAG_DATA_DESCRIPTOR;
+        entry.method = ZipArchiveEntry.STORED;
+        entry.versionNeeded = VERSION;
+        entry.compressedSize = entry.size;
+
+        writeLocalHeader(entry);
+        flushHeaders();
+
+        inflate(source.channel(), dataOffset, sourceEntry.compressedSize, entry);
+        phase.read(sourceEntry.compressedSize);
+        phase.written(entry.size);
+        position += entry.size;
+    }
+
+    /**
+     * Adds an entry whose body has been prepared already, e.g. compressed by another thread. The entry has to carry
+     * the method, checksum and sizes matching the body.
+     */
+    void put(ZipArchiveEntry entry, byte[] body, int length) throws IOException {
+        entry.flags &= ~ZipArchiveEntry.FLAG_DATA_DESCRIPTOR;
+        entry.localExtra = null;
+
+        writeLocalHeader(entry);
+        flushHeaders();
+        final ByteBuffer content = ByteBuffer.wrap(body, 0, length);
+        while (content.hasRemaining()) {
+            out.write(content);
+        }
+        phase.written(length);
+        position += length;
+    }
+
+    /**
+     * Adds the given content as an uncompressed entry.
+     */
+    void putStored(String name, byte[] content, long time) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+
+        final ZipArchiveEntry entry = new ZipArchiveEntry();
+        entry.versionMadeBy = VERSION;
+        entry.versionNeeded = VERSION;
+        entry.flags = ZipArchiveEntry.FLAG_UTF8;
+        entry.method = ZipArchiveEntry.STORED;
+        entry.dosTime = ZipArchiveEntry.toDosTime(time);
+        entry.crc = crc.getValue();
+        entry.compressedSize = content.length;
+        entry.size = content.length;
+        entry.rawName = ZipArchiveEntry.encodeName(name);
+
+        writeLocalHeader(entry);
+        writeBytes(content);
+        flushHeaders();
+    }
+
+    /**
+     * Adds the given file as an uncompressed entry. The file is read once to compute its checksum and is then
+     * transferred to this archive channel to channel.
+     */
+    void putStored(String name, File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+
+            final ZipArchiveEntry entry = new ZipArchiveEntry();
+            entry.versionMadeBy = VERSION;
+            entry.versionNeeded = VERSION;
+            entry.flags = ZipArchiveEntry.FLAG_UTF8;
+            entry.method = ZipArchiveEntry.STORED;
+            entry.dosTime = ZipArchiveEntry.toDosTime(file.lastModified());
+            entry.crc = crc(channel);
+            entry.compressedSize = channel.size();
+            entry.size = channel.size();
+            entry.rawName = ZipArchiveEntry.encodeName(name);
+
+            writeLocalHeader(entry);
+            flushHeaders();
+            transfer(channel, 0, entry.size);
+            position += entry.size;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the central directory, completing the archive. No more entries can be added afterwards.
+     *
+     * @throws ZipException if two entries have the same name, which is only checked here, so that no name has to be
+     * held in a hash set while writing
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        final BitSet duplicates = EntryNames.of(written).duplicates();
+        if (!duplicates.isEmpty()) {
+            throw new ZipException("duplicate entry: " + written.get(duplicates.nextSetBit(0)).getName());
+        }
+
+        final long directoryOffset = position;
+        for (ZipArchiveEntry entry : written) {
+            writeCentralHeader(entry);
+        }
+        final long directorySize = position - directoryOffset;
+
+        final boolean zip64 = written.size() >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL
+                || directorySize >= 0xFFFFFFFFL;
+        if (zip64) {
+            final long zip64EndOffset = position;
+            writeInt(ZipArchive.ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            writeLong(ZipArchive.ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH - 12); // size of the rest of the record
+            writeShort(ZIP64_VERSION);
+            writeShort(ZIP64_VERSION);
+            writeInt(0); // number of this disk
+            writeInt(0); // disk where central directory starts
+            writeLong(written.size());
+            writeLong(written.size());
+            writeLong(directorySize);
+            writeLong(directoryOffset);
+
+            writeInt(ZipArchive.ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0); // disk where the ZIP64 end of central directory is
+            writeLong(zip64EndOffset);
+            writeInt(1); // total number of disks
+        }
+
+        writeInt(ZipArchive.END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        writeShort(0); // number of this disk
+        writeShort(0); // disk where central directory starts
+        writeShort(Math.min(written.size(), 0xFFFF));
+        writeShort(Math.min(written.size(), 0xFFFF));
+        writeInt(Math.min(directorySize, 0xFFFFFFFFL));
+        writeInt(Math.min(directoryOffset, 0xFFFFFFFFL));
+        writeShort(0); // comment length
+
+        flushHeaders();
+        finished = true;
+    }
+
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    private void writeLocalHeader(ZipArchiveEntry entry) throws IOException {
+        if (entry.compressedSize > 0xFFFFFFFFL || entry.size > 0xFFFFFFFFL || position > 0xFFFFFFFFL) {
+            throw new ZipException("Entry " + entry.getName() + " requires ZIP64 extensions, which are not supported");
+        }
+
+        reproducibility.normalize(entry);
+        entry.localHeaderOffset = position;
+        final byte[] extra = entry.localExtra != null ? entry.localExtra : entry.extra;
+
+        writeInt(ZipArchive.LOCAL_HEADER_SIGNATURE);
+        writeShort(entry.versionNeeded);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.rawName.length);
+        writeShort(extra.length);
+        writeBytes(entry.rawName);
+        writeBytes(extra);
+
+        written.add(entry);
+        phase.entries(1);
+    }
+
+    private void writeCentralHeader(ZipArchiveEntry entry) throws IOException {
+        writeInt(ZipArchive.CENTRAL_HEADER_SIGNATURE);
+        writeShort(entry.versionMadeBy);
+        writeShort(entry.versionNeeded);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.rawName.length);
+        writeShort(entry.extra.length);
+        writeShort(entry.comment.length);
+        writeShort(0); // disk number start
+        writeShort(entry.internalAttributes);
+        writeInt(entry.externalAttributes);
+        writeInt(entry.localHeaderOffset);
+        writeBytes(entry.rawName);
+        writeBytes(entry.extra);
+        writeBytes(entry.comment);
+    }
+
+    private void inflate(FileChannel source, long offset, long compressedSize, ZipArchiveEntry entry)
+            throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            final byte[] input = new byte[BUFFER_SIZE];
+            final byte[] output = new byte[BUFFER_SIZE];
+            long compressedRemaining = compressedSize;
+            long remaining = entry.size;
+            while (remaining > 0) {
+                if (inflater.needsInput()) {
+                    final int read = compressedRemaining <= 0 ? -1 : source.read(
+                            ByteBuffer.wrap(input, 0, (int) Math.min(input.length, compressedRemaining)), offset);
+                    if (read <= 0) {
+                        throw new ZipException("Unexpected end of input while inflating " + entry);
+                    }
+                    offset += read;
+                    compressedRemaining -= read;
+                    inflater.setInput(input, 0, read);
+                }
+
+                final int inflated;
+                try {
+                    inflated = inflater.inflate(output, 0, (int) Math.min(output.length, remaining));
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid compressed data of " + entry + " : " + e.getMessage());
+                }
+                if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    throw new ZipException("Unexpected end of compressed data of " + entry);
+                }
+
+                final ByteBuffer buffer = ByteBuffer.wrap(output, 0, inflated);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                remaining -= inflated;
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private long crc(FileChannel channel) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long offset = 0;
+        int read;
+        while ((read = channel.read(buffer, offset)) != -1) {
+            crc.update(buffer.array(), 0, read);
+            offset += read;
+            phase.read(read);
+            buffer.clear();
+        }
+        return crc.getValue();
+    }
+
+    private void transfer(FileChannel source, long offset, long length) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            final long count = source.transferTo(offset + transferred, length - transferred, out);
+            if (count <= 0) {
+                throw new ZipException("Unexpected end of input while writing entry");
+            }
+            transferred += count;
+        }
+        phase.read(length);
+        phase.written(length);
+    }
+
+    private void writeShort(int value) throws IOException {
+        ensureCapacity(2);
+        headers.putShort((short) value);
+        position += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        ensureCapacity(4);
+        headers.putInt((int) value);
+        position += 4;
+    }
+
+    private void writeLong(long value) throws IOException {
+        ensureCapacity(8);
+        headers.putLong(value);
+        position += 8;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > headers.capacity()) {
+            // too large to be buffered, e.g. the content of a stored entry
+            flushHeaders();
+            final ByteBuffer content = ByteBuffer.wrap(bytes);
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            phase.written(bytes.length);
+            position += bytes.length;
+            return;
+        }
+        ensureCapacity(bytes.length);
+        headers.put(bytes);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (headers.remaining() < length) {
+            flushHeaders();
+        }
+    }
+
+    private void flushHeaders() throws IOException {
+        headers.flip();
+        phase.written(headers.remaining());
+        while (headers.hasRemaining()) {
+            out.write(headers);
+        }
+        headers.clear();
+    }
+}
@@ -0,0 +1,332 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Assembles a zip file from entries of other archives and from files, compressing each entry as the
+ * {@link CompressionPolicy} says.
+ *
+ * Entries to compress are handed to a bounded pool of worker threads, while the entries are written in exactly the
+ * order they were added in, so the result does not depend on the number of threads or on how they are scheduled.
+ * Only a bounded number of compressed entries waits in memory for its turn. Entries kept as they are cost no CPU and
+ * are streamed straight to the writer, as are entries too large to be compressed in memory.
+ */
+class ZipAssembler implements Closeable {
+
+    // entries larger than this are streamed, and never compressed again
+    static final long MAX_BUFFERED_ENTRY = 64L * 1024 * 1024;
+
+    private static final long MAX_PENDING_BYTES = 128L * 1024 * 1024;
+    private static final int MAX_PENDING_ENTRIES_PER_THREAD = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ZipArchiveWriter writer;
+    private final CompressionPolicy policy;
+    private final ExecutorService workers;
+    private final int maxPendingEntries;
+
+    private final Deque<Pending> pending = new ArrayDeque<Pending>();
+    private long pendingBytes;
+
+    ZipAssembler(ZipArchiveWriter writer, CompressionPolicy policy) {
+        this.writer = writer;
+        this.policy = policy;
+        this.workers = policy.keepsAll() || policy.threads() == 1
+                ? MoreExecutors.newDirectExecutorService()
+                : Executors.newFixedThreadPool(policy.threads(),
+                        new ThreadFactoryBuilder().setNameFormat("diet-compress-%d").setDaemon(true).build());
+        this.maxPendingEntries = policy.threads() * MAX_PENDING_ENTRIES_PER_THREAD;
+    }
+
+    /**
+     * Adds the given entry of the source archive. The archive has to stay open until {@link #finish()}.
+     */
+    void add(final ZipArchive source, final ZipArchiveEntry entry) throws IOException {
+        final Compression compression = entry.isDirectory() ? Compression.KEEP : policy.of(entry.getName());
+        final boolean compressible = entry.method == ZipArchiveEntry.STORED || entry.method == ZipArchiveEntry.DEFLATED;
+
+        if (compression == Compression.KEEP || !compressible
+                || (compression == Compression.STORE && entry.method == ZipArchiveEntry.STORED)) {
+            enqueue(new Pending(0) {
+                void write() throws IOException {
+                    writer.copy(source, entry);
+                }
+            });
+        } else if (entry.size > MAX_BUFFERED_ENTRY) {
+            enqueue(new Pending(0) {
+                void write() throws IOException {
+                    if (compression == Compression.STORE) {
+                        writer.copyStored(source, entry);
+                    } else {
+                        writer.copy(source, entry);
+                    }
+                }
+            });
+        } else {
+            final long dataOffset = source.locateData(entry);
+            final FileChannel channel = source.channel();
+            submit(entry.size, new Callable<Compressed>() {
+                public Compressed call() throws IOException {
+                    return compress(entry.copy(), body(channel, dataOffset, entry), compression);
+                }
+            });
+        }
+        drain(false);
+    }
+
+    /**
+     * Adds the given file as an entry of the given name.
+     */
+    void add(final String name, final File file) throws IOException {
+        final Compression compression = policy.of(name);
+        if (compression == Compression.KEEP || compression == Compression.STORE || file.length() > MAX_BUFFERED_ENTRY) {
+            enqueue(new Pending(0) {
+                void write() throws IOException {
+                    writer.putStored(name, file);
+                }
+            });
+        } else {
+            submit(file.length(), new Callable<Compressed>() {
+                public Compressed call() throws IOException {
+                    final byte[] body = read(file);
+                    final CRC32 crc = new CRC32();
+                    crc.update(body);
+
+                    final ZipArchiveEntry entry = new ZipArchiveEntry();
+                    entry.versionMadeBy = ZipArchiveWriter.VERSION;
+                    entry.flags = ZipArchiveEntry.FLAG_UTF8;
+                    entry.dosTime = ZipArchiveEntry.toDosTime(file.lastModified());
+                    entry.crc = crc.getValue();
+                    entry.size = body.length;
+                    entry.rawName = ZipArchiveEntry.encodeName(name);
+                    return compress(entry, body, compression);
+                }
+            });
+        }
+        drain(false);
+    }
+
+    /**
+     * Adds the given file as an uncompressed entry of the given name, whatever the policy says, e.g. a nested jar
+     * that has to be read in place.
+     */
+    void addStored(final String name, final File file) throws IOException {
+        enqueue(new Pending(0) {
+            void write() throws IOException {
+                writer.putStored(name, file);
+            }
+        });
+        drain(false);
+    }
+
+    /**
+     * Adds the given content as an uncompressed entry of the given name.
+     */
+    void addStored(final String name, final byte[] content, final long time) throws IOException {
+        enqueue(new Pending(0) {
+            void write() throws IOException {
+                writer.putStored(name, content, time);
+            }
+        });
+        drain(false);
+    }
+
+    /**
+     * Writes all entries still pending and completes the archive.
+     */
+    void finish() throws IOException {
+        drain(true);
+        writer.finish();
+    }
+
+    /**
+     * Stops the workers, waiting for the ones still running so that no source archive is read after it is closed.
+     */
+    public void close() throws IOException {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(long weight, Callable<Compressed> task) {
+        final Future<Compressed> compressed = workers.submit(task);
+        enqueue(new Pending(weight) {
+            boolean isDone() {
+                return compressed.isDone();
+            }
+
+            void write() throws IOException {
+                final Compressed result = get(compressed);
+                writer.put(result.entry, result.body, result.length);
+            }
+        });
+    }
+
+    private void enqueue(Pending entry) {
+        pending.addLast(entry);
+        pendingBytes += entry.weight;
+    }
+
+    private void drain(boolean all) throws IOException {
+        while (!pending.isEmpty() && (all || pending.peekFirst().isDone()
+                || pendingBytes > MAX_PENDING_BYTES || pending.size() > maxPendingEntries)) {
+            final Pending head = pending.removeFirst();
+            pendingBytes -= head.weight;
+            head.write();
+        }
+    }
+
+    private static Compressed get(Future<Compressed> compressed) throws IOException {
+        try {
+            return compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing entries");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Compresses the uncompressed body of the entry, storing it if deflating does not make it any smaller.
+     */
+    private static Compressed compress(ZipArchiveEntry entry, byte[] body, Compression compression) {
+        entry.versionNeeded = ZipArchiveWriter.VERSION;
+        if (compression != Compression.STORE) {
+            final Deflater deflater = new Deflater(compression.level(), true);
+            try {
+                deflater.setInput(body);
+                deflater.finish();
+                final byte[] deflated = new byte[body.length];
+                int length = 0;
+                while (!deflater.finished() && length < deflated.length) {
+                    length += deflater.deflate(deflated, length, deflated.length - length);
+                }
+                if (deflater.finished() && length < body.length) {
+                    entry.method = ZipArchiveEntry.DEFLATED;
+                    entry.compressedSize = length;
+                    return new Compressed(entry, deflated, length);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        entry.method = ZipArchiveEntry.STORED;
+        entry.compressedSize = body.length;
+        return new Compressed(entry, body, body.length);
+    }
+
+    /**
+     * Reads the uncompressed body of an entry, with positional reads only, so that any number of threads can read
+     * the same archive at once.
+     */
+    static byte[] body(FileChannel channel, long offset, ZipArchiveEntry entry) throws IOException {
+        final byte[] raw = new byte[(int) entry.compressedSize];
+        final ByteBuffer buffer = ByteBuffer.wrap(raw);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of input while reading " + entry);
+            }
+        }
+        if (entry.method == ZipArchiveEntry.STORED) {
+            return raw;
+        }
+
+        final byte[] body = new byte[(int) entry.size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int length = 0;
+            while (length < body.length) {
+                final int inflated = inflater.inflate(body, length, body.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Unexpected end of compressed data of " + entry);
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data of " + entry + " : " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return body;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * An entry waiting for its turn to be written.
+     */
+    private abstract static class Pending {
+
+        private final long weight;
+
+        Pending(long weight) {
+            this.weight = weight;
+        }
+
+        boolean isDone() {
+            return true;
+        }
+
+        abstract void write() throws IOException;
+    }
+
+    private static class Compressed {
+
+        private final ZipArchiveEntry entry;
+        private final byte[] body;
+        private final int length;
+
+        Compressed(ZipArchiveEntry entry, byte[] body, int length) {
+            this.entry = entry;
+            this.body = body;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.codarama.diet;
+
+import org.codarama.diet.api.reporting.listener.EventListener;
+import org.codarama.diet.event.model.ComponentEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * <p>
+ * Unit tests for the {@link ComponentEventDispatcher}
+ * </p>
+ */
+public class ComponentEventDispatcherTest {
+
+    @After
+    public void tearDown() {
+        ComponentEventDispatcher.unbind();
+    }
+
+    @Test
+    public void testEventsOfOtherThreadsReachTheBoundListener() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener();
+        final ComponentEvent myEvent = mock(ComponentEvent.class);
+        final ComponentEvent workerEvent = mock(ComponentEvent.class);
+
+        ComponentEventDispatcher.bind(listener);
+        final Thread worker = new Thread(new Runnable() {
+            public void run() {
+                dispatch(workerEvent);
+            }
+        });
+        worker.start();
+        worker.join();
+        dispatch(myEvent);
+
+        assertEquals(2, listener.events.size());
+        assertTrue(listener.events.contains(myEvent));
+        assertTrue(listener.events.contains(workerEvent));
+    }
+
+    @Test
+    public void testEventsOnlyReachTheListenerOfTheirExecution() {
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final ComponentEvent firstEvent = mock(ComponentEvent.class);
+        final ComponentEvent secondEvent = mock(ComponentEvent.class);
+
+        ComponentEventDispatcher.bind(first);
+        dispatch(firstEvent);
+        ComponentEventDispatcher.unbind();
+        ComponentEventDispatcher.bind(second);
+        dispatch(secondEvent);
+
+        assertEquals(1, first.events.size());
+        assertTrue(first.events.contains(firstEvent));
+        assertEquals(1, second.events.size());
+        assertTrue(second.events.contains(secondEvent));
+    }
+
+    @Test
+    public void testNoEventsAfterUnbind() {
+        final RecordingListener listener = new RecordingListener();
+        ComponentEventDispatcher.bind(listener);
+        ComponentEventDispatcher.unbind();
+
+        dispatch(mock(ComponentEvent.class));
+
+        assertTrue(listener.events.isEmpty());
+    }
+
+    private static void dispatch(ComponentEvent event) {
+        // the same path the engine takes, through the single registered dispatcher
+        ComponentEventDispatcher.INSTANCE.on(event);
+    }
+
+    private static class RecordingListener implements EventListener<ComponentEvent> {
+
+        private final List<ComponentEvent> events = new ArrayList<ComponentEvent>();
+
+        public void on(ComponentEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.codarama.diet;
+
+import org.apache.maven.plugin.logging.Log;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * Unit tests for the {@link EventSink}
+ * </p>
+ */
+public class EventSinkTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testEventsAreNotTurnedIntoStringsWhenDebugIsOff() {
+        final Log log = mock(Log.class);
+        when(log.isInfoEnabled()).thenReturn(true);
+
+        final EventSink<Object> sink = new EventSink<Object>(log, "Minimizing", 0, NEVER, 10);
+        for (int i = 0; i < 100; i++) {
+            sink.on(new Object() {
+                @Override
+                public String toString() {
+                    throw new AssertionError("Event turned into a string");
+                }
+            });
+        }
+        sink.close();
+
+        assertEquals(100, sink.count());
+        verify(log, times(0)).debug(anyString());
+        verify(log).info(contains("Minimizing: 100 in "));
+    }
+
+    @Test
+    public void testEventsBeyondTheCapacityAreOnlyCounted() {
+        final Log log = mock(Log.class);
+        when(log.isDebugEnabled()).thenReturn(true);
+
+        final EventSink<String> sink = new EventSink<String>(log, "Minimizing", 0, NEVER, 2);
+        for (int i = 0; i < 5; i++) {
+            sink.on("event " + i);
+        }
+        sink.close();
+
+        assertEquals(5, sink.count());
+        verify(log).debug("event 0");
+        verify(log).debug("event 1");
+        verify(log, times(0)).debug("event 2");
+        verify(log).debug(eq("3 events not logged, the console could not keep up"));
+    }
+
+    @Test
+    public void testSummaryGivesPercentageAndTimeLeft() {
+        final long twoSeconds = TimeUnit.SECONDS.toNanos(2);
+        assertEquals("Minimizing: 500 of about 2000 (25%), 250/s, about 6 s left",
+                EventSink.summary("Minimizing", 500, 2000, twoSeconds));
+        assertEquals("Minimizing: 500, 250/s", EventSink.summary("Minimizing", 500, 0, twoSeconds));
+        assertEquals("Minimizing: 2500 of about 2000 (100%), 1250/s",
+                EventSink.summary("Minimizing", 2500, 2000, twoSeconds));
+    }
+}
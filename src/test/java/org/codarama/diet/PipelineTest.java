@@ -0,0 +1,74 @@
+package org.codarama.diet;
+
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Phase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>
+ * Unit tests for the {@link Pipeline}
+ * </p>
+ */
+public class PipelineTest {
+
+    @Test
+    public void testMapKeepsTheOrderOfTheInputs() throws IOException {
+        final List<Integer> inputs = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            inputs.add(i);
+        }
+
+        for (int threads = 1; threads <= 4; threads++) {
+            final BuildMetrics metrics = new BuildMetrics();
+            final Pipeline pipeline = new Pipeline(threads, metrics);
+            final Phase phase = metrics.start("test");
+            try {
+                final List<Integer> outputs = pipeline.map(inputs, new Pipeline.Step<Integer, Integer>() {
+                    public Integer apply(Integer input) {
+                        if (input % 7 == 0) {
+                            Thread.yield();
+                        }
+                        return input * 2;
+                    }
+                });
+                assertEquals(inputs.size(), outputs.size());
+                for (int i = 0; i < outputs.size(); i++) {
+                    assertEquals(i * 2, outputs.get(i).intValue());
+                }
+                // the steps leave the phase of the calling thread bound
+                assertSame(phase, Phase.current());
+            } finally {
+                phase.end();
+                pipeline.close();
+            }
+        }
+    }
+
+    @Test
+    public void testFailuresSurfaceWhereTheResultIsAwaited() {
+        final Pipeline pipeline = new Pipeline(2, null);
+        try {
+            final Pipeline.Stage<String> stage = pipeline.fork("failing", new Pipeline.Work<String>() {
+                public String run() throws IOException {
+                    throw new IOException("broken");
+                }
+            });
+            try {
+                stage.get();
+                fail("The failure of the stage should have been rethrown");
+            } catch (IOException e) {
+                assertEquals("broken", e.getMessage());
+            }
+        } finally {
+            pipeline.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.codarama.diet;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.codarama.diet.index.JarIndex;
+import org.codarama.diet.index.ReachableDependencies;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link TestClasspathMojo}
+ * </p>
+ */
+public class TestClasspathMojoTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeepsClassesTheTestRunnerLoadsByName() throws IOException, URISyntaxException {
+        final File junit = new File(JUnitCore.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        final File factories = folder.newFile("factories.jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(factories));
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/spring.factories"));
+            out.write("org.springframework.test.context.TestExecutionListener=org.junit.runners.Parameterized\n"
+                    .getBytes(Charsets.UTF_8));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+
+        final Set<String> kept = new ReachableDependencies(ImmutableMap.of(junit, JarIndex.build(junit)))
+                .classesFrom(TestClasspathMojo.entryPoints(Arrays.asList(junit, factories))).get(junit);
+
+        assertTrue(kept.contains("org/junit/runner/JUnitCore"));
+        assertTrue(kept.contains("org/junit/runners/BlockJUnit4ClassRunner"));
+        assertTrue(kept.contains("org/junit/runners/Parameterized"));
+    }
+}
@@ -0,0 +1,86 @@
+package org.codarama.diet.cds;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link ClassDataSharing}
+ * </p>
+ */
+public class ClassDataSharingTest {
+
+    static class Shared {
+    }
+
+    private static final String SHARED = Shared.class.getName().replace('.', '/');
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteClassList() throws IOException {
+        final File list = new File(folder.getRoot(), "target/" + ClassDataSharing.CLASS_LIST);
+
+        ClassDataSharing.writeClassList(Arrays.asList("java/lang/Object", SHARED), list);
+
+        assertEquals(Arrays.asList("java/lang/Object", SHARED), Files.readLines(list, Charsets.UTF_8));
+    }
+
+    @Test
+    public void testDumpArchiveWithRunningJdk() throws IOException {
+        // application classes can only be archived from Java 10 on
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."));
+
+        final File jar = jar(folder.newFile("app_minimized.jar"));
+        final File list = folder.newFile(ClassDataSharing.CLASS_LIST);
+        ClassDataSharing.writeClassList(Arrays.asList("java/lang/Object", SHARED), list);
+
+        final List<String> output = new ArrayList<String>();
+        final File archive = ClassDataSharing.dumpArchive(new File(System.getProperty("java.home")), list, jar,
+                new File(folder.getRoot(), "app_minimized.jsa"), output);
+
+        assertTrue(output.toString(), archive.length() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDumpArchiveFailsWithoutLauncher() throws IOException {
+        ClassDataSharing.dumpArchive(folder.newFolder("not-a-jdk"), folder.newFile(ClassDataSharing.CLASS_LIST),
+                folder.newFile("app.jar"), new File(folder.getRoot(), "app.jsa"), new ArrayList<String>());
+    }
+
+    private static File jar(File file) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry(SHARED + ".class"));
+            final InputStream in = Shared.class.getResourceAsStream("/" + SHARED + ".class");
+            try {
+                ByteStreams.copy(in, out);
+            } finally {
+                in.close();
+            }
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,37 @@
+package org.codarama.diet.fingerprint;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link FileDigests}
+ * </p>
+ */
+public class FileDigestsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFileWrittenAgainIsReadAgain() throws IOException {
+        final File file = folder.newFile("library-1.0.jar");
+        Files.write("first", file, Charsets.UTF_8);
+        file.setLastModified(1000000000000L);
+        assertEquals(Hashing.sha256().hashString("first", Charsets.UTF_8), FileDigests.sha256(file));
+
+        // same size, the modification time tells the content changed
+        Files.write("other", file, Charsets.UTF_8);
+        file.setLastModified(1000000001000L);
+        assertEquals(Hashing.sha256().hashString("other", Charsets.UTF_8), FileDigests.sha256(file));
+    }
+}
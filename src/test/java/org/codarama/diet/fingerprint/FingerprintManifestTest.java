@@ -0,0 +1,81 @@
+package org.codarama.diet.fingerprint;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * <p>
+ * Unit tests for the {@link FingerprintManifest} and the {@link Fingerprint} it records
+ * </p>
+ */
+public class FingerprintManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUpToDateArtifactWhenFingerprintMatches() throws IOException {
+        final File minimizedJar = write("minimized.jar", "jar");
+        final File minimizedArtifact = write("app_minimized.jar", "artifact");
+
+        final FingerprintManifest manifest = new FingerprintManifest(folder.getRoot());
+        manifest.record("abc", minimizedJar, minimizedArtifact);
+
+        assertEquals(minimizedArtifact.getAbsoluteFile(), new FingerprintManifest(folder.getRoot()).upToDateArtifact("abc"));
+        assertEquals(minimizedJar.getAbsoluteFile(), manifest.upToDateJar("abc"));
+        assertNull(manifest.upToDateArtifact("def"));
+    }
+
+    @Test
+    public void testNotUpToDateWhenOutputIsGone() throws IOException {
+        final File minimizedJar = write("minimized.jar", "jar");
+        final File minimizedArtifact = write("app_minimized.jar", "artifact");
+
+        final FingerprintManifest manifest = new FingerprintManifest(folder.getRoot());
+        manifest.record("abc", minimizedJar, minimizedArtifact);
+        minimizedJar.delete();
+
+        assertNull(manifest.upToDateArtifact("abc"));
+    }
+
+    @Test
+    public void testFingerprintFollowsContent() throws IOException {
+        final File sources = folder.newFolder("sources");
+        final File source = new File(sources, "Main.java");
+        Files.write("class Main {}", source, Charsets.UTF_8);
+
+        final String before = new Fingerprint().add("1").addContent(sources).hash();
+        assertEquals(before, new Fingerprint().add("1").addContent(sources).hash());
+
+        Files.write("class Main { int i; }", source, Charsets.UTF_8);
+        assertFalse(before.equals(new Fingerprint().add("1").addContent(sources).hash()));
+    }
+
+    @Test
+    public void testFingerprintFollowsClassPathOrder() throws IOException {
+        final File first = write("first.jar", "first");
+        final File second = write("second.jar", "second");
+
+        assertEquals(new Fingerprint().addContent(Arrays.asList(first, second)).hash(),
+                new Fingerprint().addContent(Arrays.asList(first, second)).hash());
+        assertFalse(new Fingerprint().addContent(Arrays.asList(first, second)).hash().equals(
+                new Fingerprint().addContent(Arrays.asList(second, first)).hash()));
+    }
+
+    private File write(String name, String content) throws IOException {
+        final File file = folder.newFile(name);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+}
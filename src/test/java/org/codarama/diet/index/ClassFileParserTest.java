@@ -0,0 +1,105 @@
+package org.codarama.diet.index;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.codarama.diet.index.IndexFixtures.internalName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link ClassFileParser}
+ * </p>
+ */
+public class ClassFileParserTest {
+
+    static class AfterInt {
+    }
+
+    static class AfterLong {
+    }
+
+    static class InArray {
+    }
+
+    static class Bound {
+    }
+
+    static class Argument {
+    }
+
+    static class Returned {
+    }
+
+    static class Outer<T> {
+        class Inner {
+        }
+    }
+
+    // no method has a body, so the parameter types are only named in descriptors and signatures
+    abstract static class Descriptors<T extends Bound & Serializable> {
+
+        abstract void mixed(int count, AfterInt afterInt, long time, AfterLong afterLong, boolean flag);
+
+        abstract InArray[][] arrays(double[] values, char c);
+
+        abstract Map<String, List<? extends Argument>> generic(List<? super T> list);
+
+        abstract <R extends Returned> R typeParameter(byte b, R[] values);
+
+        abstract Outer<String>.Inner inner();
+    }
+
+    @Test
+    public void testFindsClassesAfterPrimitivesArraysAndInSignatures() throws IOException {
+        final Set<String> references = new TreeSet<String>();
+        final InputStream in = Descriptors.class.getResourceAsStream(
+                "/" + internalName(Descriptors.class) + ".class");
+        try {
+            assertEquals(internalName(Descriptors.class), ClassFileParser.parse(in, references));
+        } finally {
+            in.close();
+        }
+
+        for (Class<?> type : new Class<?>[]{AfterInt.class, AfterLong.class, InArray.class, Bound.class,
+                Argument.class, Returned.class, Outer.class, Outer.Inner.class, Serializable.class}) {
+            assertTrue(internalName(type) + " in " + references, references.contains(internalName(type)));
+        }
+    }
+
+    @Test
+    public void testParsesDescriptorsAndSignatures() {
+        assertReferences("(ILfoo/Bar;)V", "foo/Bar");
+        assertReferences("(JLfoo/Bar;ZLfoo/Baz;)Lfoo/Qux;", "foo/Bar", "foo/Baz", "foo/Qux");
+        assertReferences("([[Lfoo/Bar;[IC)[Lfoo/Baz;", "foo/Bar", "foo/Baz");
+        assertReferences("Ljava/util/Map<Ljava/lang/String;Ljava/util/List<+Lfoo/Bar;>;>;",
+                "java/util/Map", "java/lang/String", "java/util/List", "foo/Bar");
+        assertReferences("<T:Ljava/lang/Object;U::Lfoo/Face;>Lfoo/Base<TT;>;Lfoo/Face;",
+                "java/lang/Object", "foo/Face", "foo/Base");
+        assertReferences("<R:Lfoo/Bar;>(BTR;[TR;)TR;^Lfoo/Failure;", "foo/Bar", "foo/Failure");
+        assertReferences("Lfoo/Outer<TT;>.Inner<*>;", "foo/Outer", "foo/Outer$Inner");
+    }
+
+    @Test
+    public void testIgnoresValuesThatOnlyLookLikeDescriptors() {
+        assertReferences("(see below)");
+        assertReferences("Lots of text");
+        assertReferences("(ILfoo/Bar;");
+        assertReferences("<html>");
+    }
+
+    private static void assertReferences(String descriptor, String... expected) {
+        final Set<String> references = new TreeSet<String>();
+        ClassFileParser.addDescriptorReferences(descriptor, references);
+        assertEquals(descriptor, new TreeSet<String>(Arrays.asList(expected)), references);
+    }
+}
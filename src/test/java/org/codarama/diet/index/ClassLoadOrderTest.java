@@ -0,0 +1,54 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.codarama.diet.index.IndexFixtures.internalName;
+import static org.codarama.diet.index.IndexFixtures.jar;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link ClassLoadOrder}
+ * </p>
+ */
+public class ClassLoadOrderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadUnderstandsClassLoadingLogs() throws IOException {
+        final File log = folder.newFile("classes.log");
+        Files.write("# recorded on startup\n"
+                + "[Loaded java.lang.Object from /usr/lib/jvm/rt.jar]\n"
+                + "[0.020s][info][class,load] org.codarama.First source: file:/app/minimized.jar\n"
+                + "[0.021s][info][gc] Using G1\n"
+                + "[0.022s][info][class,load] org.codarama.First$$Lambda$1/0x0000000800c00a08 source: org.codarama.First\n"
+                + "org/codarama/Second id: 42\n"
+                + "@lambda-proxy org/codarama/First run\n"
+                + "org.codarama.First\n"
+                + "\n"
+                + "org.codarama.Third\n", log, Charsets.UTF_8);
+
+        assertEquals(Arrays.asList("java/lang/Object", "org/codarama/First", "org/codarama/Second",
+                "org/codarama/Third"), ClassLoadOrder.read(log));
+    }
+
+    @Test
+    public void testEstimateWalksReferencesBreadthFirst() throws IOException {
+        final JarIndex index = JarIndex.build(jar(folder.newFile("dependency.jar"), IndexFixtures.Leaf.class,
+                IndexFixtures.Transitive.class, IndexFixtures.Unrelated.class));
+
+        assertEquals(Arrays.asList(internalName(IndexFixtures.Leaf.class), internalName(IndexFixtures.Transitive.class)),
+                ClassLoadOrder.estimate(index, Collections.singletonList(internalName(IndexFixtures.Leaf.class))));
+    }
+}
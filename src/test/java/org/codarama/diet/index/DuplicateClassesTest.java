@@ -0,0 +1,94 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link DuplicateClasses}
+ * </p>
+ */
+public class DuplicateClassesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTellsIdenticalCopiesFromConflictingOnes() throws IOException {
+        final File first = zip(folder.newFile("first-1.0.jar"),
+                "org/shared/Same.class", "same", "org/shared/Different.class", "first");
+        final File second = zip(folder.newFile("second-1.0.jar"),
+                "org/shared/Same.class", "same", "org/shared/Different.class", "second");
+        final File directory = folder.newFolder("classes");
+        new File(directory, "org/shared").mkdirs();
+        Files.write("same", new File(directory, "org/shared/Same.class"), Charsets.UTF_8);
+
+        final DuplicateClasses duplicates = DuplicateClasses.scan(Arrays.asList(first, second, directory),
+                ImmutableSet.of("org/shared/Same", "org/shared/Different"));
+
+        assertEquals(Collections.singletonMap("org/shared/Same", Arrays.asList(first, second, directory)),
+                duplicates.identical());
+        assertEquals(Collections.singletonMap("org/shared/Different",
+                Arrays.asList(Arrays.asList(first), Arrays.asList(second))), duplicates.conflicts());
+        assertTrue(duplicates.splitPackages().isEmpty());
+    }
+
+    @Test
+    public void testCopiesWithTheSameChecksumStillConflict() throws IOException {
+        // both contents have a CRC-32 of 4ddb0c25
+        final File first = zip(folder.newFile("first-1.0.jar"), "org/shared/Clash.class", "plumless");
+        final File second = zip(folder.newFile("second-1.0.jar"), "org/shared/Clash.class", "buckeroo");
+
+        final DuplicateClasses duplicates = DuplicateClasses.scan(Arrays.asList(first, second),
+                ImmutableSet.of("org/shared/Clash"));
+
+        assertEquals(Collections.singletonMap("org/shared/Clash",
+                Arrays.asList(Arrays.asList(first), Arrays.asList(second))), duplicates.conflicts());
+        assertTrue(duplicates.identical().isEmpty());
+    }
+
+    @Test
+    public void testReportsPackagesSplitAcrossDependencies() throws IOException {
+        final File first = zip(folder.newFile("first-1.0.jar"),
+                "org/split/A.class", "a", "org/whole/A.class", "a", "org/whole/Unused.class", "unused");
+        final File second = zip(folder.newFile("second-1.0.jar"),
+                "org/split/B.class", "b", "org/whole/A.class", "a", "org/other/Unused.class", "unused");
+
+        final DuplicateClasses duplicates = DuplicateClasses.scan(Arrays.asList(first, second),
+                ImmutableSet.of("org/split/A", "org/split/B", "org/whole/A"));
+
+        assertEquals(Collections.singletonMap("org/split", ImmutableSet.of(first, second)),
+                duplicates.splitPackages());
+        assertEquals(ImmutableSet.of("org/whole/A"), duplicates.identical().keySet());
+        assertTrue(duplicates.conflicts().isEmpty());
+    }
+
+    private static File zip(File file, String... namesAndContents) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,58 @@
+package org.codarama.diet.index;
+
+import java.io.FileOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class files to index, along with a way to pack them in jars.
+ */
+final class IndexFixtures {
+
+    static class Root {
+        Leaf leaf;
+    }
+
+    static class Leaf {
+        java.util.List<Transitive> transitive;
+    }
+
+    static class Transitive {
+    }
+
+    static class Unrelated {
+    }
+
+    private IndexFixtures() {
+    }
+
+    static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    static File jar(File file, Class<?>... classes) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (Class<?> type : classes) {
+                out.putNextEntry(new ZipEntry(internalName(type) + ".class"));
+                final InputStream in = type.getResourceAsStream("/" + internalName(type) + ".class");
+                try {
+                    final byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,91 @@
+package org.codarama.diet.index;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.codarama.diet.index.IndexFixtures.Leaf;
+import static org.codarama.diet.index.IndexFixtures.Root;
+import static org.codarama.diet.index.IndexFixtures.Transitive;
+import static org.codarama.diet.index.IndexFixtures.internalName;
+import static org.codarama.diet.index.IndexFixtures.jar;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link JarIndexCache}
+ * </p>
+ */
+public class JarIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexIsStoredAndReused() throws IOException {
+        final File cacheDirectory = folder.newFolder("cache");
+        final File dependency = jar(folder.newFile("dependency.jar"), Root.class, Leaf.class);
+
+        final JarIndex built = new JarIndexCache(cacheDirectory, Long.MAX_VALUE).get(dependency);
+        final File cached = new File(cacheDirectory, JarIndexCache.key(dependency) + ".idx");
+        assertTrue(cached.isFile());
+
+        final JarIndex loaded = new JarIndexCache(cacheDirectory, Long.MAX_VALUE).get(dependency);
+        assertEquals(built.classes(), loaded.classes());
+        assertTrue(loaded.referencesOf(internalName(Root.class)).contains(internalName(Leaf.class)));
+        assertTrue(loaded.referencesOf(internalName(Leaf.class)).contains(internalName(Transitive.class)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIndexIsEvicted() throws IOException {
+        final File cacheDirectory = folder.newFolder("cache");
+        final File first = jar(folder.newFile("first.jar"), Root.class);
+        final File second = jar(folder.newFile("second.jar"), Leaf.class);
+
+        new JarIndexCache(cacheDirectory, Long.MAX_VALUE).get(first);
+        final File firstCached = new File(cacheDirectory, JarIndexCache.key(first) + ".idx");
+        firstCached.setLastModified(System.currentTimeMillis() - 60000);
+
+        // big enough for a single index only
+        new JarIndexCache(cacheDirectory, firstCached.length() * 3 / 2).get(second);
+
+        assertEquals(1, cacheDirectory.listFiles().length);
+        assertTrue(new File(cacheDirectory, JarIndexCache.key(second) + ".idx").isFile());
+    }
+
+    @Test
+    public void testCorruptIndexIsRebuilt() throws IOException {
+        final File cacheDirectory = folder.newFolder("cache");
+        final File dependency = jar(folder.newFile("dependency.jar"), Root.class);
+        final JarIndexCache cache = new JarIndexCache(cacheDirectory, Long.MAX_VALUE);
+        cache.get(dependency);
+
+        final File cached = new File(cacheDirectory, JarIndexCache.key(dependency) + ".idx");
+        Files.write(new byte[]{1, 2, 3}, cached);
+
+        assertEquals(1, cache.get(dependency).size());
+    }
+
+    @Test
+    public void testIndexWithCorruptCountIsRebuilt() throws IOException {
+        final File cacheDirectory = folder.newFolder("cache");
+        final File dependency = jar(folder.newFile("dependency.jar"), Root.class);
+        final JarIndexCache cache = new JarIndexCache(cacheDirectory, Long.MAX_VALUE);
+        cache.get(dependency);
+
+        // a valid header followed by a negative number of symbols
+        final File cached = new File(cacheDirectory, JarIndexCache.key(dependency) + ".idx");
+        final byte[] content = Files.toByteArray(cached);
+        final int symbolCount = 4 + 4 + 2 + JarIndexCache.key(dependency).length();
+        Arrays.fill(content, symbolCount, symbolCount + 4, (byte) 0xFF);
+        Files.write(content, cached);
+
+        assertEquals(1, cache.get(dependency).size());
+    }
+}
@@ -0,0 +1,77 @@
+package org.codarama.diet.index;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.codarama.diet.index.IndexFixtures.Leaf;
+import static org.codarama.diet.index.IndexFixtures.Root;
+import static org.codarama.diet.index.IndexFixtures.Transitive;
+import static org.codarama.diet.index.IndexFixtures.Unrelated;
+import static org.codarama.diet.index.IndexFixtures.internalName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link ProjectClasses}
+ * </p>
+ */
+public class ProjectClassesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUpdateTellsWhetherReferencesChanged() throws IOException {
+        final File classes = folder.newFolder("classes");
+        final File root = copy(Root.class, classes);
+
+        final ProjectClasses projectClasses = ProjectClasses.scan(classes);
+        assertEquals(1, projectClasses.size());
+        assertTrue(projectClasses.references().contains(internalName(Leaf.class)));
+
+        // recompiled with the same references
+        copy(Root.class, classes);
+        assertFalse(projectClasses.update(Collections.singleton(root)));
+
+        // a new class referring to nothing Root does not refer to already
+        final File unrelated = copy(Unrelated.class, classes);
+        assertFalse(projectClasses.update(Collections.singleton(unrelated)));
+        assertEquals(2, projectClasses.size());
+
+        final File leaf = copy(Leaf.class, classes);
+        assertTrue(projectClasses.update(Collections.singleton(leaf.getParentFile())));
+        assertTrue(projectClasses.references().contains(internalName(Transitive.class)));
+
+        assertTrue(root.delete());
+        assertTrue(projectClasses.update(Collections.singleton(root)));
+        assertFalse(projectClasses.references().contains(internalName(Root.class)));
+        assertEquals(2, projectClasses.size());
+
+        assertTrue(leaf.delete() && unrelated.delete());
+        assertTrue(projectClasses.rescan());
+        assertEquals(0, projectClasses.size());
+        assertTrue(projectClasses.references().isEmpty());
+    }
+
+    private static File copy(Class<?> type, File classes) throws IOException {
+        final File file = new File(classes, internalName(type) + ".class");
+        file.getParentFile().mkdirs();
+        final InputStream in = type.getResourceAsStream("/" + internalName(type) + ".class");
+        try {
+            Files.write(ByteStreams.toByteArray(in), file);
+        } finally {
+            in.close();
+        }
+        return file;
+    }
+}
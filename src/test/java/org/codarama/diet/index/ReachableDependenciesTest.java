@@ -0,0 +1,47 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.codarama.diet.index.IndexFixtures.Leaf;
+import static org.codarama.diet.index.IndexFixtures.Root;
+import static org.codarama.diet.index.IndexFixtures.Transitive;
+import static org.codarama.diet.index.IndexFixtures.Unrelated;
+import static org.codarama.diet.index.IndexFixtures.internalName;
+import static org.codarama.diet.index.IndexFixtures.jar;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link ReachableDependencies}
+ * </p>
+ */
+public class ReachableDependenciesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyReachableDependenciesAreKept() throws IOException {
+        final File leaf = jar(folder.newFile("leaf.jar"), Leaf.class);
+        final File transitive = jar(folder.newFile("transitive.jar"), Transitive.class);
+        final File unrelated = jar(folder.newFile("unrelated.jar"), Unrelated.class);
+
+        final ReachableDependencies reachable = new ReachableDependencies(ImmutableMap.of(
+                leaf, JarIndex.build(leaf),
+                transitive, JarIndex.build(transitive),
+                unrelated, JarIndex.build(unrelated)));
+
+        assertEquals(Sets.newHashSet(leaf, transitive),
+                reachable.from(JarIndex.build(jar(folder.newFile("project.jar"), Root.class))
+                        .referencesOf(internalName(Root.class))));
+        assertEquals(Collections.<File>emptySet(), reachable.from(Collections.singleton("java/lang/String")));
+    }
+}
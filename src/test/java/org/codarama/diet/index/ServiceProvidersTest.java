@@ -0,0 +1,57 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link ServiceProviders}
+ * </p>
+ */
+public class ServiceProvidersTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsProvidersOfJarsAndDirectories() throws IOException {
+        final File jar = zip(folder.newFile("driver-1.0.jar"),
+                "META-INF/services/java.sql.Driver", "# the driver\norg.driver.Driver\n\n",
+                "META-INF/services/nested/not.a.Service", "org.driver.Ignored",
+                "org/driver/Driver.class", "bytecode");
+        final File directory = folder.newFolder("classes");
+        new File(directory, "META-INF/services").mkdirs();
+        Files.write("org.module.First  # comment\r\norg.module.Outer$Second\r\n",
+                new File(directory, "META-INF/services/org.module.Service"), Charsets.UTF_8);
+
+        assertEquals(ImmutableSet.of("org/driver/Driver", "org/module/First", "org/module/Outer$Second"),
+                ServiceProviders.of(Arrays.asList(jar, directory)));
+    }
+
+    private static File zip(File file, String... namesAndContents) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,48 @@
+package org.codarama.diet.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.codarama.diet.index.IndexFixtures.Leaf;
+import static org.codarama.diet.index.IndexFixtures.Root;
+import static org.codarama.diet.index.IndexFixtures.jar;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <p>
+ * Unit tests for the {@link SessionDependencyIndex}
+ * </p>
+ */
+public class SessionDependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexIsSharedWithinTheSession() throws IOException {
+        final File dependency = jar(folder.newFile("dependency.jar"), Root.class, Leaf.class);
+        final JarIndexCache persistentCache = new JarIndexCache(folder.newFolder("cache"), Long.MAX_VALUE);
+        final SessionDependencyIndex sessionIndex = new SessionDependencyIndex();
+
+        final JarIndex first = sessionIndex.get(dependency, persistentCache, Long.MAX_VALUE);
+
+        assertSame(first, sessionIndex.get(dependency, persistentCache, Long.MAX_VALUE));
+        assertNotSame(first, new SessionDependencyIndex().get(dependency, persistentCache, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testIndexesOverTheLimitAreEvicted() throws IOException {
+        final File dependency = jar(folder.newFile("dependency.jar"), Root.class, Leaf.class);
+        final JarIndexCache persistentCache = new JarIndexCache(folder.newFolder("cache"), Long.MAX_VALUE);
+        final SessionDependencyIndex sessionIndex = new SessionDependencyIndex();
+
+        final JarIndex first = sessionIndex.get(dependency, persistentCache, 1);
+
+        assertNotSame(first, sessionIndex.get(dependency, persistentCache, 1));
+    }
+}
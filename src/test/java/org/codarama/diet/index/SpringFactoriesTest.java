@@ -0,0 +1,67 @@
+package org.codarama.diet.index;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link SpringFactories}
+ * </p>
+ */
+public class SpringFactoriesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsFactoriesAndAutoConfigurationsOfJarsAndDirectories() throws IOException {
+        final File jar = zip(folder.newFile("starter-1.0.jar"),
+                "META-INF/spring.factories", "# listeners\norg.springframework.context.ApplicationListener=\\\n"
+                        + "  org.starter.FirstListener,\\\n  org.starter.Outer$SecondListener\n",
+                "META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports",
+                "org.starter.AutoConfiguration\n",
+                "META-INF/spring/nested/not.imports", "org.starter.Ignored",
+                "META-INF/services/java.sql.Driver", "org.starter.Driver");
+        final File directory = folder.newFolder("classes");
+        new File(directory, "META-INF/spring").mkdirs();
+        Files.write("org.module.Factory=org.module.First, org.module.Second\r\n",
+                new File(directory, "META-INF/spring.factories"), Charsets.UTF_8);
+        Files.write("org.module.Configuration # the module\r\n",
+                new File(directory, "META-INF/spring/org.module.Configuration.imports"), Charsets.UTF_8);
+
+        assertEquals(ImmutableSet.of("org/starter/FirstListener", "org/starter/Outer$SecondListener",
+                "org/starter/AutoConfiguration", "org/module/First", "org/module/Second",
+                "org/module/Configuration"),
+                SpringFactories.of(Arrays.asList(jar, directory)));
+        assertEquals(ImmutableSet.of("org/starter/FirstListener", "org/starter/Outer$SecondListener",
+                "org/starter/AutoConfiguration", "org/starter/Driver"),
+                SpringFactories.entryPoints(Arrays.asList(jar)));
+    }
+
+    private static File zip(File file, String... namesAndContents) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
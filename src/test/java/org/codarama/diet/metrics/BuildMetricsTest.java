@@ -0,0 +1,84 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link BuildMetrics}
+ * </p>
+ */
+public class BuildMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPhasesAreBoundToThreadAndReportedToListeners() {
+        final BuildMetrics metrics = new BuildMetrics();
+        final List<String> ended = new ArrayList<String>();
+        metrics.addListener(new PhaseListener() {
+            public void on(PhaseMetrics phase) {
+                ended.add(phase.getName());
+            }
+        });
+
+        final Phase outer = metrics.start("outer");
+        Phase.current().read(10);
+        final Phase inner = metrics.start("inner");
+        assertSame(inner, Phase.current());
+        Phase.current().written(5);
+        inner.end();
+        assertSame(outer, Phase.current());
+        outer.end();
+
+        assertEquals("detached", Phase.current().getName());
+        assertEquals(2, ended.size());
+        assertEquals("inner", ended.get(0));
+        assertEquals(5, metrics.phases().get(0).getBytesWritten());
+        assertEquals(10, metrics.phases().get(1).getBytesRead());
+        assertEquals(0, metrics.phases().get(1).getBytesWritten());
+    }
+
+    @Test
+    public void testNestedPhasesKeepTheHeapPeakOfTheirEnclosingPhase() throws InterruptedException {
+        final BuildMetrics metrics = new BuildMetrics();
+        final Phase outer = metrics.start("outer");
+        byte[] allocated = new byte[64 * 1024 * 1024];
+        Thread.sleep(2 * Phase.SAMPLE_MILLIS);
+        outer.read(allocated.length);
+        allocated = null;
+        System.gc();
+        metrics.start("inner").end();
+
+        assertTrue(outer.end().getPeakHeapBytes() >= 64 * 1024 * 1024);
+    }
+
+    @Test
+    public void testWriteProducesJsonReport() throws IOException {
+        final BuildMetrics metrics = new BuildMetrics();
+        final Phase phase = metrics.start("resolve");
+        phase.entries(3);
+        phase.end();
+
+        final File report = metrics.write(folder.getRoot(), "org.codarama:\"quoted\":1.0");
+
+        assertEquals(new File(folder.getRoot(), BuildMetrics.FILE_NAME), report);
+        final String json = Files.toString(report, Charsets.UTF_8);
+        assertTrue(json, json.contains("\"project\" : \"org.codarama:\\\"quoted\\\":1.0\""));
+        assertTrue(json, json.contains("{ \"name\" : \"resolve\""));
+        assertTrue(json, json.contains("\"entries\" : 3"));
+    }
+}
@@ -0,0 +1,54 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link FootprintBudget}
+ * </p>
+ */
+public class FootprintBudgetTest {
+
+    private static final Footprint BASELINE = new Footprint(1000, 100,
+            ImmutableMap.of("guava", 80, "commons-lang3", 20));
+
+    @Test
+    public void testFootprintWithinBudgetPasses() {
+        final Footprint footprint = new Footprint(1000, 105, ImmutableMap.of("guava", 88, "commons-lang3", 17));
+        assertTrue(new FootprintBudget(1000, 105, 10).check(footprint, BASELINE).isEmpty());
+        assertTrue(new FootprintBudget(0, 0, -1).isEmpty());
+    }
+
+    @Test
+    public void testEveryExceededLimitIsReported() {
+        final Footprint footprint = new Footprint(1001, 106,
+                ImmutableMap.of("guava", 89, "commons-lang3", 20, "jackson-core", 3));
+        final List<String> violations = new FootprintBudget(1000, 105, 10).check(footprint, BASELINE);
+
+        assertEquals(violations.toString(), 4, violations.size());
+        assertEquals("guava grew from 80 to 89 classes (+11.3%, 10% allowed)", violations.get(2));
+        assertEquals("jackson-core contributes 3 classes and is not part of the baseline", violations.get(3));
+    }
+
+    @Test
+    public void testBaselinesNamingArtifactIdsOnlyStillApply() {
+        final Footprint footprint = new Footprint(1000, 100,
+                ImmutableMap.of("com.google.guava:guava", 89, "org.apache.commons:commons-lang3", 20));
+        assertEquals(ImmutableList.of("com.google.guava:guava grew from 80 to 89 classes (+11.3%, 10% allowed)"),
+                new FootprintBudget(0, 0, 10).check(footprint, BASELINE));
+    }
+
+    @Test
+    public void testGrowthWithoutBaselineIsNotChecked() {
+        final Footprint footprint = new Footprint(1, 1, ImmutableMap.of("guava", 1));
+        assertTrue(new FootprintBudget(0, 0, 0).check(footprint, null).isEmpty());
+        assertEquals("-50.0%", FootprintBudget.growth(4, 2));
+    }
+}
@@ -0,0 +1,47 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link Footprint}
+ * </p>
+ */
+public class FootprintTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWrittenFootprintReadsBack() throws IOException {
+        final Footprint footprint = new Footprint(123456, 789,
+                ImmutableMap.of("guava", 500, "commons-lang3", 289, "odd \"name\".jar", 1));
+        final File file = new File(folder.getRoot(), "baseline/diet-footprint.json");
+        footprint.write(file);
+
+        final Footprint read = Footprint.read(file);
+        assertEquals(123456, read.artifactBytes());
+        assertEquals(789, read.reachableClasses());
+        assertEquals(footprint.dependencyClasses(), read.dependencyClasses());
+    }
+
+    @Test
+    public void testDependenciesAreNamedByGroupAndArtifactIdInRepositories() {
+        final File repository = new File("/repository");
+        assertEquals("com.google.guava:guava", Footprint.dependencyName(
+                new File("/repository/com/google/guava/guava/19.0/guava-19.0.jar"), repository));
+        assertEquals("org.other:guava", Footprint.dependencyName(
+                new File("/repository/org/other/guava/19.0/guava-19.0.jar"), repository));
+        assertEquals("guava", Footprint.dependencyName(
+                new File("/elsewhere/com/google/guava/guava/19.0/guava-19.0.jar"), repository));
+        assertEquals("library-1.0.jar", Footprint.dependencyName(new File("/lib/library-1.0.jar"), repository));
+    }
+}
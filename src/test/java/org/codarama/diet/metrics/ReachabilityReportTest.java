@@ -0,0 +1,56 @@
+package org.codarama.diet.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link ReachabilityReport}
+ * </p>
+ */
+public class ReachabilityReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testListsEveryDependencyInClassPathOrder() throws IOException {
+        final File used = new File("used.jar");
+        final File unused = new File("unused.jar");
+        final Map<File, Integer> defined = Maps.newLinkedHashMap();
+        defined.put(used, 3);
+        defined.put(unused, 2);
+        final Map<File, Set<String>> reachable = ImmutableMap.<File, Set<String>>of(used,
+                ImmutableSet.of("org/used/A", "org/used/B"));
+
+        final ReachabilityReport report = new ReachabilityReport(4, defined, reachable);
+        assertEquals(2, report.dependencies());
+        assertEquals(1, report.reachableDependencies());
+        assertEquals(5, report.definedClasses());
+        assertEquals(2, report.reachableClasses());
+
+        final File file = report.write(folder.getRoot(), "org.codarama:app:1.0");
+        assertEquals(ReachabilityReport.FILE_NAME, file.getName());
+        final String json = Files.toString(file, Charsets.UTF_8);
+        assertTrue(json, json.contains("\"rootClasses\" : 4"));
+        assertTrue(json, json.contains("{ \"file\" : \"used.jar\", \"bytes\" : 0, \"definedClasses\" : 3, "
+                + "\"reachableClasses\" : 2, \"classes\" : [\"org/used/A\", \"org/used/B\"] },"));
+        assertTrue(json, json.contains("{ \"file\" : \"unused.jar\", \"bytes\" : 0, \"definedClasses\" : 2, "
+                + "\"reachableClasses\" : 0, \"classes\" : [] }\n  ]"));
+        assertTrue(json, json.indexOf("used.jar") < json.indexOf("unused.jar"));
+    }
+}
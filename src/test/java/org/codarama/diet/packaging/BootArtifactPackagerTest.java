@@ -0,0 +1,218 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.bytes;
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link BootArtifactPackager}
+ * </p>
+ */
+public class BootArtifactPackagerTest {
+
+    private static final String MANIFEST = "Manifest-Version: 1.0\r\n"
+            + "Main-Class: org.springframework.boot.loader.JarLauncher\r\n"
+            + "Start-Class: org.app.App\r\n"
+            + "Spring-Boot-Classes: BOOT-INF/classes/\r\n"
+            + "Spring-Boot-Lib: BOOT-INF/lib/\r\n"
+            + "Spring-Boot-Classpath-Index: BOOT-INF/classpath.idx\r\n"
+            + "Spring-Boot-Layers-Index: BOOT-INF/layers.idx\r\n\r\n";
+
+    private static final String LAYERS = "- \"dependencies\":\n"
+            + "  - \"BOOT-INF/lib/used-1.0.jar\"\n"
+            + "  - \"BOOT-INF/lib/unused-1.0.jar\"\n"
+            + "- \"spring-boot-loader\":\n"
+            + "  - \"org/\"\n"
+            + "- \"application\":\n"
+            + "  - \"BOOT-INF/classes/\"\n"
+            + "  - \"BOOT-INF/classpath.idx\"\n"
+            + "  - \"BOOT-INF/layers.idx\"\n"
+            + "  - \"META-INF/\"\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLayoutIsToldByTheManifest() throws IOException {
+        final File boot = stored(folder.newFile("app.jar"), entries("META-INF/MANIFEST.MF", MANIFEST));
+        final File plain = zip(folder.newFile("plain.jar"), "org/app/App.class");
+
+        assertEquals("BOOT-INF/lib/", BootArtifactPackager.libraryDirectory(boot));
+        assertNull(BootArtifactPackager.libraryDirectory(plain));
+    }
+
+    @Test
+    public void testSlimsNestedLibrariesAndRewritesIndexes() throws IOException {
+        final File used = zip(folder.newFile("used-1.0.jar"),
+                "org/used/Used.class", "org/used/Unused.class", "org/used/messages.properties");
+        final File unused = zip(folder.newFile("unused-1.0.jar"), "org/unused/Unused.class");
+        final Map<String, byte[]> entries = entries(
+                "META-INF/MANIFEST.MF", MANIFEST,
+                "org/springframework/boot/loader/JarLauncher.class", "loader",
+                "BOOT-INF/classes/org/app/App.class", "app",
+                "BOOT-INF/classpath.idx", "- \"BOOT-INF/lib/unused-1.0.jar\"\n- \"BOOT-INF/lib/used-1.0.jar\"\n",
+                "BOOT-INF/layers.idx", LAYERS);
+        entries.put("BOOT-INF/lib/used-1.0.jar", bytes(used));
+        entries.put("BOOT-INF/lib/unused-1.0.jar", bytes(unused));
+        final File boot = stored(folder.newFile("app.jar"), entries);
+        final File minimizedInput = zip(folder.newFile("minimized-input.jar"),
+                "org/used/Used.class", "org/other/Other.class");
+
+        final JarFile minimized = new JarFile(minimizedInput);
+        final File packaged;
+        try {
+            packaged = new BootArtifactPackager(CompressionPolicy.KEEP, Reproducibility.NONE, 2,
+                    new File(folder.getRoot(), "work")).packageArtifact(artifact(boot), minimized);
+        } finally {
+            minimized.close();
+        }
+
+        final List<String> names = entryNames(packaged);
+        assertTrue(names.toString(), names.contains("BOOT-INF/classes/org/app/App.class"));
+        assertTrue(names.toString(), names.contains("org/springframework/boot/loader/JarLauncher.class"));
+        assertTrue(names.toString(), names.contains("BOOT-INF/lib/used-1.0.jar"));
+        assertTrue(names.toString(), names.contains("BOOT-INF/lib/minimized.jar"));
+        assertTrue(names.toString(), !names.contains("BOOT-INF/lib/unused-1.0.jar"));
+
+        final File slimmed = folder.newFile("slimmed.jar");
+        final FileOutputStream out = new FileOutputStream(slimmed);
+        try {
+            out.write(content(packaged, "BOOT-INF/lib/used-1.0.jar"));
+        } finally {
+            out.close();
+        }
+        assertEquals(ImmutableList.of("org/used/Used.class", "org/used/messages.properties"), entryNames(slimmed));
+
+        assertEquals("- \"BOOT-INF/lib/used-1.0.jar\"\n- \"BOOT-INF/lib/minimized.jar\"\n",
+                new String(content(packaged, "BOOT-INF/classpath.idx"), Charsets.UTF_8));
+        assertEquals(LAYERS.replace("  - \"BOOT-INF/lib/unused-1.0.jar\"\n", "  - \"BOOT-INF/lib/minimized.jar\"\n"),
+                new String(content(packaged, "BOOT-INF/layers.idx"), Charsets.UTF_8));
+    }
+
+    @Test
+    public void testKeepsClassesNestedLibrariesNameForSpring() throws IOException {
+        final Map<String, byte[]> library = entries(
+                "META-INF/spring.factories", "org.springframework.context.ApplicationListener=\\\n"
+                        + "  org.used.Listener, org.used.OtherListener\n",
+                "META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports",
+                "# auto-configurations\norg.used.AutoConfiguration\n",
+                "org/used/Used.class", "used",
+                "org/used/Listener.class", "listener",
+                "org/used/AutoConfiguration.class", "configuration",
+                "org/used/Unused.class", "unused");
+        final Map<String, byte[]> entries = entries("META-INF/MANIFEST.MF", MANIFEST,
+                "BOOT-INF/classes/org/app/App.class", "app");
+        entries.put("BOOT-INF/lib/used-1.0.jar", bytes(stored(folder.newFile("used-1.0.jar"), library)));
+        final File boot = stored(folder.newFile("app.jar"), entries);
+        final File minimizedInput = zip(folder.newFile("minimized-input.jar"), "org/used/Used.class");
+
+        final File packaged = packageArtifact(boot, minimizedInput);
+
+        assertEquals(ImmutableList.of("META-INF/spring.factories",
+                "META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports",
+                "org/used/Used.class", "org/used/Listener.class", "org/used/AutoConfiguration.class"),
+                entryNames(extract(packaged, "BOOT-INF/lib/used-1.0.jar")));
+    }
+
+    @Test
+    public void testNestedLibrariesKeepTheirPaths() throws IOException {
+        final File first = zip(folder.newFile("first.jar"), "org/first/First.class");
+        final File second = zip(folder.newFile("second.jar"), "org/second/Second.class");
+        final Map<String, byte[]> entries = entries("META-INF/MANIFEST.MF", MANIFEST,
+                "BOOT-INF/classpath.idx", "- \"BOOT-INF/lib/a/library.jar\"\n- \"BOOT-INF/lib/b/library.jar\"\n",
+                "BOOT-INF/layers.idx", "- \"dependencies\":\n  - \"BOOT-INF/lib/a/library.jar\"\n"
+                        + "  - \"BOOT-INF/lib/b/library.jar\"\n");
+        entries.put("BOOT-INF/lib/a/library.jar", bytes(first));
+        entries.put("BOOT-INF/lib/b/library.jar", bytes(second));
+        final File boot = stored(folder.newFile("app.jar"), entries);
+        final File minimizedInput = zip(folder.newFile("minimized-input.jar"),
+                "org/first/First.class", "org/second/Second.class");
+
+        final File packaged = packageArtifact(boot, minimizedInput);
+
+        assertEquals(ImmutableList.of("org/first/First.class"),
+                entryNames(extract(packaged, "BOOT-INF/lib/a/library.jar")));
+        assertEquals(ImmutableList.of("org/second/Second.class"),
+                entryNames(extract(packaged, "BOOT-INF/lib/b/library.jar")));
+        assertEquals("- \"BOOT-INF/lib/a/library.jar\"\n- \"BOOT-INF/lib/b/library.jar\"\n",
+                new String(content(packaged, "BOOT-INF/classpath.idx"), Charsets.UTF_8));
+        assertEquals("- \"dependencies\":\n  - \"BOOT-INF/lib/a/library.jar\"\n"
+                        + "  - \"BOOT-INF/lib/b/library.jar\"\n",
+                new String(content(packaged, "BOOT-INF/layers.idx"), Charsets.UTF_8));
+    }
+
+    private File packageArtifact(File boot, File minimizedInput) throws IOException {
+        final JarFile minimized = new JarFile(minimizedInput);
+        try {
+            return new BootArtifactPackager(CompressionPolicy.KEEP, Reproducibility.NONE, 2,
+                    new File(folder.getRoot(), "work")).packageArtifact(artifact(boot), minimized);
+        } finally {
+            minimized.close();
+        }
+    }
+
+    private File extract(File archive, String entry) throws IOException {
+        final File extracted = File.createTempFile("nested", ".jar", folder.getRoot());
+        final FileOutputStream out = new FileOutputStream(extracted);
+        try {
+            out.write(content(archive, entry));
+        } finally {
+            out.close();
+        }
+        return extracted;
+    }
+
+    private static Map<String, byte[]> entries(String... namesAndContents) {
+        final Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            result.put(namesAndContents[i], namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the entries uncompressed, like the Spring Boot plugin writes nested jars.
+     */
+    private static File stored(File file, Map<String, byte[]> entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                final CRC32 crc = new CRC32();
+                crc.update(entry.getValue());
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(entry.getValue().length);
+                zipEntry.setCrc(crc.getValue());
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
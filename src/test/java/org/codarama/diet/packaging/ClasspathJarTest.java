@@ -0,0 +1,42 @@
+package org.codarama.diet.packaging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link ClasspathJar}
+ * </p>
+ */
+public class ClasspathJarTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testManifestNamesTheClassPath() throws IOException {
+        final File library = folder.newFile("library with space-1.0.jar");
+        final File directory = folder.newFolder("classes");
+        final File target = new File(folder.getRoot(), "classpath.jar");
+
+        ClasspathJar.write(Arrays.asList(library, directory), target);
+
+        final JarFile jar = new JarFile(target);
+        try {
+            assertEquals(library.toURI().toASCIIString() + " " + directory.toURI().toASCIIString(),
+                    jar.getManifest().getMainAttributes().getValue(Attributes.Name.CLASS_PATH));
+            assertEquals(1, jar.size());
+        } finally {
+            jar.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.bytes;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link DependencySlimmer}
+ * </p>
+ */
+public class DependencySlimmerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSlimsEveryDependencyOnItsOwn() throws IOException {
+        final File first = zip(folder.newFile("first-1.0.jar"),
+                "META-INF/MANIFEST.MF", "org/first/Used.class", "org/first/Unused.class", "org/first/messages.properties",
+                "org/shared/Shared.class");
+        final File second = zip(folder.newFile("second-1.0.jar"),
+                "org/second/Used.class", "org/shared/Shared.class");
+        final File unused = zip(folder.newFile("unused-1.0.jar"), "org/unused/Unused.class");
+        final File minimized = zip(folder.newFile("minimized-input.jar"),
+                "org/first/Used.class", "org/second/Used.class", "org/shared/Shared.class", "org/project/Own.class");
+
+        final Map<String, File> slimmed = new DependencySlimmer(4)
+                .slim(ImmutableList.of(first, second, unused), minimized, new File(folder.getRoot(), "out"));
+
+        assertEquals(Arrays.asList("first-1.0.jar", "second-1.0.jar", DependencySlimmer.REMAINDER_JAR),
+                Lists.newArrayList(slimmed.keySet()));
+        // resources are kept, the first jar on the class path keeps a class defined twice
+        assertEquals(Arrays.asList("META-INF/MANIFEST.MF", "org/first/Used.class", "org/first/messages.properties",
+                "org/shared/Shared.class"), entryNames(slimmed.get("first-1.0.jar")));
+        assertEquals(Arrays.asList("org/second/Used.class"), entryNames(slimmed.get("second-1.0.jar")));
+        assertEquals(Arrays.asList("org/project/Own.class"), entryNames(slimmed.get(DependencySlimmer.REMAINDER_JAR)));
+        assertEquals(first.lastModified(), slimmed.get("first-1.0.jar").lastModified());
+    }
+
+    @Test
+    public void testTellsWhichDependencyEachSlimmedJarStandsFor() throws IOException {
+        final File first = zip(new File(folder.newFolder("first"), "library-1.0.jar"), "org/first/Used.class");
+        final File second = zip(new File(folder.newFolder("second"), "library-1.0.jar"), "org/second/Used.class");
+        final File minimized = zip(folder.newFile("minimized-input.jar"),
+                "org/first/Used.class", "org/second/Used.class", "org/project/Own.class");
+
+        final Map<File, File> slimmed = new DependencySlimmer(2)
+                .slimBySource(ImmutableList.of(first, second), minimized, new File(folder.getRoot(), "out"));
+
+        // jars of the same name are slimmed under different names, but each stays with its dependency
+        assertEquals(Arrays.asList(first, second, minimized), Lists.newArrayList(slimmed.keySet()));
+        assertEquals(Arrays.asList("org/first/Used.class"), entryNames(slimmed.get(first)));
+        assertEquals(Arrays.asList("org/second/Used.class"), entryNames(slimmed.get(second)));
+        assertEquals(Arrays.asList("org/project/Own.class"), entryNames(slimmed.get(minimized)));
+    }
+
+    @Test
+    public void testSlimmedJarsDoNotDependOnParallelism() throws IOException {
+        final List<File> dependencies = Lists.newArrayList();
+        final List<String> used = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            dependencies.add(zip(folder.newFile("library-" + i + ".jar"),
+                    "org/library" + i + "/A.class", "org/library" + i + "/B.class"));
+            used.add("org/library" + i + "/A.class");
+        }
+        final File minimized = zip(folder.newFile("minimized-input.jar"), used.toArray(new String[used.size()]));
+
+        final Map<String, File> sequential = new DependencySlimmer(1)
+                .slim(dependencies, minimized, new File(folder.getRoot(), "sequential"));
+        final Map<String, File> parallel = new DependencySlimmer(8)
+                .slim(dependencies, minimized, new File(folder.getRoot(), "parallel"));
+
+        assertEquals(Lists.newArrayList(sequential.keySet()), Lists.newArrayList(parallel.keySet()));
+        for (String name : sequential.keySet()) {
+            assertArrayEquals(name, bytes(sequential.get(name)), bytes(parallel.get(name)));
+        }
+    }
+
+    @Test
+    public void testWarKeepsSlimmedLibrariesUnderTheirNames() throws IOException {
+        final File library = zip(folder.newFile("library-1.0.jar"), "org/library/Used.class");
+        final File minimizedInput = zip(folder.newFile("minimized-input.jar"), "org/library/Used.class");
+        final File war = zip(folder.newFile("app.war"),
+                "WEB-INF/web.xml", "WEB-INF/classes/org/app/App.class", "WEB-INF/lib/library-1.0.jar");
+
+        final Map<String, File> slimmed = new DependencySlimmer(2)
+                .slim(ImmutableList.of(library), minimizedInput, new File(folder.getRoot(), "out"));
+        final JarFile minimized = new JarFile(minimizedInput);
+        final File packaged;
+        try {
+            packaged = new WarArtifactPackager(CompressionPolicy.KEEP, slimmed).packageArtifact(artifact(war), minimized);
+        } finally {
+            minimized.close();
+        }
+
+        final List<String> entries = entryNames(packaged);
+        assertTrue(entries.toString(), entries.contains("WEB-INF/lib/library-1.0.jar"));
+        assertTrue(entries.toString(), entries.contains("WEB-INF/classes/org/app/App.class"));
+        assertTrue(entries.toString(), !entries.contains(WarArtifactPackager.MINIMIZED_JAR_ENTRY));
+    }
+}
@@ -0,0 +1,89 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link EntryNames}
+ * </p>
+ */
+public class EntryNamesTest {
+
+    @Test
+    public void testFindsNamesByPositionInTheList() {
+        final EntryNames names = EntryNames.of(entries(
+                "org/codarama/B.class", "META-INF/MANIFEST.MF", "org/codarama/A.class", "org/codarama/"));
+
+        assertEquals(4, names.size());
+        assertEquals(0, names.positionOf("org/codarama/B.class"));
+        assertEquals(2, names.positionOf("org/codarama/A.class"));
+        assertEquals(3, names.positionOf("org/codarama/"));
+        assertEquals(-1, names.positionOf("org/codarama"));
+        assertEquals(-1, names.positionOf("org/codarama/C.class"));
+        assertTrue(names.contains("META-INF/MANIFEST.MF"));
+        assertFalse(names.contains(""));
+        assertEquals(1, names.positionOf(entries("META-INF/MANIFEST.MF").get(0)));
+    }
+
+    @Test
+    public void testFindsNamesByPrefix() {
+        final EntryNames names = EntryNames.of(entries(
+                "WEB-INF/lib/a.jar", "WEB-INF/classes/A.class", "WEB-INF/lib/", "WEB-INF/lib/b.jar", "WEB-INF/libs",
+                "lib/c.jar", "index.html"));
+
+        assertEquals(bits(0, 2, 3), names.positionsWithPrefix("WEB-INF/lib/"));
+        assertEquals(bits(0, 2, 3, 4), names.positionsWithPrefix("WEB-INF/lib"));
+        assertEquals(bits(5), names.positionsWithPrefix("lib"));
+        assertEquals(bits(0, 1, 2, 3, 4, 5, 6), names.positionsWithPrefix(""));
+        assertTrue(names.positionsWithPrefix("META-INF/").isEmpty());
+    }
+
+    @Test
+    public void testFindsTheFirstOfDuplicateNames() {
+        final EntryNames names = EntryNames.of(entries("b", "a", "b", "c", "a", "b"));
+
+        assertEquals(0, names.positionOf("b"));
+        assertEquals(1, names.positionOf("a"));
+        assertEquals(bits(2, 4, 5), names.duplicates());
+    }
+
+    @Test
+    public void testComparesNamesNotFlaggedUtf8ByTheirDecodedForm() {
+        // 0x82 is an e acute in code page 437, which names without the UTF-8 flag are encoded in
+        final ZipArchiveEntry legacy = new ZipArchiveEntry();
+        legacy.rawName = new byte[]{'c', 'a', 'f', (byte) 0x82};
+        final List<ZipArchiveEntry> entries = entries("caf\u00e9/menu.txt");
+        entries.add(legacy);
+
+        final EntryNames names = EntryNames.of(entries);
+        assertEquals(1, names.positionOf("caf\u00e9"));
+        assertEquals(0, names.positionOf("caf\u00e9/menu.txt"));
+    }
+
+    private static List<ZipArchiveEntry> entries(String... names) {
+        final List<ZipArchiveEntry> entries = Lists.newArrayList();
+        for (String name : names) {
+            final ZipArchiveEntry entry = new ZipArchiveEntry();
+            entry.flags = ZipArchiveEntry.FLAG_UTF8;
+            entry.rawName = ZipArchiveEntry.encodeName(name);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static BitSet bits(int... positions) {
+        final BitSet bits = new BitSet();
+        for (int position : positions) {
+            bits.set(position);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,97 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.io.Files;
+import org.codarama.diet.metrics.BuildMetrics;
+import org.codarama.diet.metrics.Phase;
+import org.codarama.diet.metrics.PhaseMetrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarFile;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link JarArtifactPackager}
+ * </p>
+ */
+public class JarArtifactPackagerTest {
+
+    private static final String CLASS_1 = "org/codarama/Used.class";
+    private static final String CLASS_2 = "org/codarama/AlsoUsed.class";
+    private static final String UNUSED_CLASS = "org/codarama/Unused.class";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPackageArtifactKeepsMinimizedEntriesOnly() throws IOException {
+        final File current = zip(folder.newFile("app.jar"), UNUSED_CLASS, CLASS_1);
+        final File minimized = zip(folder.newFile("minimized.jar"), CLASS_1, CLASS_2);
+
+        final File result = new JarArtifactPackager().packageArtifact(artifact(current), new JarFile(minimized));
+
+        assertEquals(new File(folder.getRoot(), "app_minimized.jar"), result);
+        assertEquals(entryNames(minimized), entryNames(result));
+        assertArrayEquals(content(minimized, CLASS_2), content(result, CLASS_2));
+    }
+
+    @Test
+    public void testPackageArtifactLeavesCurrentArtifactUntouched() throws IOException {
+        final File current = zip(folder.newFile("app.jar"), UNUSED_CLASS, CLASS_1);
+        final File minimized = zip(folder.newFile("minimized.jar"), CLASS_1);
+
+        new JarArtifactPackager().packageArtifact(artifact(current), new JarFile(minimized));
+
+        assertEquals(entryNames(zip(folder.newFile("expected.jar"), UNUSED_CLASS, CLASS_1)), entryNames(current));
+    }
+
+    @Test
+    public void testPackageArtifactReportsToCurrentPhase() throws IOException {
+        final File current = zip(folder.newFile("app.jar"), UNUSED_CLASS, CLASS_1);
+        final File minimized = zip(folder.newFile("minimized.jar"), CLASS_1, CLASS_2);
+
+        final BuildMetrics metrics = new BuildMetrics();
+        final Phase phase = metrics.start("package");
+        final File result;
+        try {
+            result = new JarArtifactPackager().packageArtifact(artifact(current), new JarFile(minimized));
+        } finally {
+            phase.end();
+        }
+        final PhaseMetrics packaging = metrics.phases().get(0);
+
+        assertEquals(2, packaging.getEntries());
+        assertEquals(result.length(), packaging.getBytesWritten());
+        assertTrue(packaging.getBytesRead() > 0);
+    }
+
+    @Test
+    public void testReadBytesReadsFilesFromTheirPosition() throws IOException {
+        final File minimized = zip(folder.newFile("minimized.jar"), CLASS_1, CLASS_2);
+        final byte[] expected = Files.toByteArray(minimized);
+
+        final FileInputStream in = new FileInputStream(minimized);
+        try {
+            assertEquals(expected[0], (byte) in.read());
+            final byte[] rest = new JarArtifactPackager().readBytes(in);
+            assertArrayEquals(Arrays.copyOfRange(expected, 1, expected.length), rest);
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(expected, new JarArtifactPackager().readBytes(new ByteArrayInputStream(expected)));
+    }
+}
@@ -0,0 +1,80 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link MinimizedJarWriter}
+ * </p>
+ */
+public class MinimizedJarWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesRequestedClassesOnlyFirstDependencyWins() throws IOException {
+        final File first = zip(folder.newFile("first.jar"), "a/Used.class", "a/Unused.class", "a/resource.txt");
+        final File second = zip(folder.newFile("second.jar"), "a/Used.class", "b/Other.class");
+        final File result = folder.newFile("minimized.jar");
+
+        final int written = MinimizedJarWriter.write(ImmutableMap.of(
+                first, Arrays.asList("a/Used"),
+                second, Arrays.asList("a/Used", "b/Other")), result);
+
+        assertEquals(2, written);
+        assertEquals(Arrays.asList("a/Used.class", "b/Other.class"), entryNames(result));
+        assertArrayEquals(content(first, "a/Used.class"), content(result, "a/Used.class"));
+    }
+
+    @Test
+    public void testWritesClassesFromDirectories() throws IOException {
+        final File classes = folder.newFolder("classes");
+        new File(classes, "a").mkdirs();
+        com.google.common.io.Files.write(new byte[]{1, 2, 3}, new File(classes, "a/Used.class"));
+        final File result = folder.newFile("minimized.jar");
+
+        MinimizedJarWriter.write(Collections.singletonMap(classes, Arrays.asList("a/Used", "a/Missing")), result);
+
+        assertEquals(Arrays.asList("a/Used.class"), entryNames(result));
+        assertArrayEquals(new byte[]{1, 2, 3}, content(result, "a/Used.class"));
+    }
+
+    @Test
+    public void testUpdateAddsAndRemovesChangedClassesOnly() throws IOException {
+        final File first = zip(folder.newFile("first.jar"), "a/Kept.class", "a/Dropped.class");
+        final File second = zip(folder.newFile("second.jar"), "b/Added.class");
+        final File result = new File(folder.getRoot(), "minimized.jar");
+
+        assertEquals(2, MinimizedJarWriter.update(ImmutableMap.of(
+                first, Arrays.asList("a/Kept", "a/Dropped")), result));
+        final long written = result.lastModified();
+
+        assertEquals(0, MinimizedJarWriter.update(ImmutableMap.of(
+                first, Arrays.asList("a/Kept", "a/Dropped")), result));
+        assertEquals(written, result.lastModified());
+
+        // the dependencies are assumed unchanged, so kept classes come from the jar itself
+        zip(first, "a/Kept.class", "a/Dropped.class", "a/Other.class");
+        assertEquals(2, MinimizedJarWriter.update(ImmutableMap.of(
+                first, Arrays.asList("a/Kept"),
+                second, Arrays.asList("b/Added")), result));
+        assertEquals(Arrays.asList("a/Kept.class", "b/Added.class"), entryNames(result));
+        assertArrayEquals(content(second, "b/Added.class"), content(result, "b/Added.class"));
+        assertEquals(Arrays.asList("minimized.jar", "first.jar", "second.jar").size(), folder.getRoot().list().length);
+    }
+}
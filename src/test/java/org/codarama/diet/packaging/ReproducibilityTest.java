@@ -0,0 +1,133 @@
+package org.codarama.diet.packaging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.bytes;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * <p>
+ * Unit tests for {@link Reproducibility}, as applied by the packagers
+ * </p>
+ */
+public class ReproducibilityTest {
+
+    private static final long TIMESTAMP = 1577836800000L; // 2020-01-01T00:00:00Z
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameContentGivesSameJar() throws IOException {
+        final File first = jar(folder.newFile("first.jar"), 1000000000000L,
+                "org/codarama/B.class", "META-INF/MANIFEST.MF", "org/codarama/A.class", "META-INF/");
+        final File second = jar(folder.newFile("second.jar"), 1400000000000L,
+                "META-INF/", "org/codarama/A.class", "META-INF/MANIFEST.MF", "org/codarama/B.class");
+
+        final File firstPackaged = packageJar(first, "first-app.jar");
+        final File secondPackaged = packageJar(second, "second-app.jar");
+
+        assertArrayEquals(bytes(firstPackaged), bytes(secondPackaged));
+        assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "org/codarama/A.class", "org/codarama/B.class"),
+                entryNames(firstPackaged));
+
+        final ZipFile zip = new ZipFile(firstPackaged);
+        try {
+            final ZipEntry entry = zip.getEntry("org/codarama/A.class");
+            assertEquals(0, entry.getExtra() == null ? 0 : entry.getExtra().length);
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testSameContentGivesSameWar() throws IOException {
+        final File war = zip(folder.newFile("app.war"), "WEB-INF/web.xml", "WEB-INF/lib/library.jar");
+        final File first = jar(folder.newFile("first.jar"), 1000000000000L, "org/codarama/A.class");
+        final File second = jar(folder.newFile("second.jar"), 1400000000000L, "org/codarama/A.class");
+
+        final byte[] firstPackaged = bytes(packageWar(war, first));
+        final byte[] secondPackaged = bytes(packageWar(war, second));
+
+        assertArrayEquals(firstPackaged, secondPackaged);
+        assertFalse(new File(folder.getRoot(), "app_minimized.war.minimized.jar").exists());
+    }
+
+    @Test
+    public void testParse() {
+        assertSame(Reproducibility.NONE, Reproducibility.parse(null, false));
+        assertSame(Reproducibility.NONE, Reproducibility.parse("a", false));
+        assertEquals(Reproducibility.DEFAULT_TIMESTAMP, Reproducibility.parse(null, true).timestamp());
+        assertEquals(TIMESTAMP, Reproducibility.parse("1577836800", false).timestamp());
+        assertEquals(TIMESTAMP, Reproducibility.parse("2020-01-01T00:00:00Z", false).timestamp());
+        assertEquals(TIMESTAMP, Reproducibility.parse("2020-01-01T02:00:00+02:00", false).timestamp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRejectsInvalidTimestamp() {
+        Reproducibility.parse("yesterday", false);
+    }
+
+    private File packageJar(File minimizedJar, String artifactName) throws IOException {
+        final File artifactFile = zip(folder.newFile(artifactName), "org/codarama/A.class");
+        final JarFile minimized = new JarFile(minimizedJar);
+        try {
+            return new JarArtifactPackager(CompressionPolicy.KEEP, Reproducibility.at(TIMESTAMP))
+                    .packageArtifact(artifact(artifactFile), minimized);
+        } finally {
+            minimized.close();
+        }
+    }
+
+    private File packageWar(File war, File minimizedJar) throws IOException {
+        final JarFile minimized = new JarFile(minimizedJar);
+        try {
+            return new WarArtifactPackager(CompressionPolicy.KEEP, Reproducibility.at(TIMESTAMP), null)
+                    .packageArtifact(artifact(war), minimized);
+        } finally {
+            minimized.close();
+        }
+    }
+
+    /**
+     * A jar whose entries carry the given time, along with an extended timestamp extra field.
+     */
+    private static File jar(File file, long time, String... entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String name : entries) {
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setTime(time);
+                final int seconds = (int) (time / 1000);
+                entry.setExtra(new byte[] {0x55, 0x54, 5, 0, 1,
+                        (byte) seconds, (byte) (seconds >> 8), (byte) (seconds >> 16), (byte) (seconds >> 24)});
+                out.putNextEntry(entry);
+                if (!name.endsWith("/")) {
+                    out.write(("content of " + name).getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        file.setLastModified(time);
+        return file;
+    }
+}
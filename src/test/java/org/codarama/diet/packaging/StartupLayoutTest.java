@@ -0,0 +1,70 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * <p>
+ * Unit tests for the {@link StartupLayout}
+ * </p>
+ */
+public class StartupLayoutTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRewriteOrdersClassesByLoadOrderAndStoresHotOnes() throws IOException {
+        final File jar = zip(folder.newFile("minimized.jar"), "org/codarama/Late.class", "config.properties",
+                "META-INF/", "META-INF/MANIFEST.MF", "org/codarama/First.class", "org/codarama/Second.class");
+        final File result = folder.newFile("startup.jar");
+
+        final int stored = new StartupLayout(Arrays.asList("org/codarama/First", "org/codarama/Missing",
+                "org/codarama/Second"), 1, null).rewrite(jar, result);
+
+        assertEquals(1, stored);
+        assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "org/codarama/First.class",
+                "org/codarama/Second.class", "org/codarama/Late.class", "config.properties"), entryNames(result));
+        for (String entry : entryNames(jar)) {
+            assertArrayEquals(entry, content(jar, entry), content(result, entry));
+        }
+
+        final ZipFile zip = new ZipFile(result);
+        try {
+            assertEquals(ZipEntry.STORED, zip.getEntry("org/codarama/First.class").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("org/codarama/Second.class").getMethod());
+            assertNull(zip.getEntry(StartupLayout.INDEX_ENTRY));
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testRewriteWritesJarIndex() throws IOException {
+        final File jar = zip(folder.newFile("minimized.jar"), "META-INF/MANIFEST.MF", "org/codarama/a/A.class",
+                "org/codarama/b/B.class", "org/codarama/b/C.class", "root.properties");
+        final File result = folder.newFile("startup.jar");
+
+        new StartupLayout(Collections.<String>emptyList(), 0, "app.jar").rewrite(jar, result);
+
+        assertEquals(StartupLayout.INDEX_ENTRY, entryNames(result).get(1));
+        assertEquals("JarIndex-Version: 1.0\n\napp.jar\norg/codarama/a\norg/codarama/b\nroot.properties\n\n",
+                new String(content(result, StartupLayout.INDEX_ENTRY), Charsets.UTF_8));
+    }
+}
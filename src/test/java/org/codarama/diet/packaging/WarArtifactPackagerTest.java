@@ -0,0 +1,180 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.io.Files;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * Unit tests for the {@link WarArtifactPackager}
+ * </p>
+ */
+public class WarArtifactPackagerTest {
+
+    private static final int MB = 1024 * 1024;
+
+    // 48 resources and 32 libraries of 4 MB each, a 320 MB WAR in total
+    private static final int LARGE_ENTRY_SIZE = 4 * MB;
+    private static final int LARGE_RESOURCE_COUNT = 48;
+    private static final int LARGE_LIBRARY_COUNT = 32;
+    private static final int LARGE_MINIMIZED_JAR_SIZE = 64 * MB;
+
+    // the heap the packager may allocate while repackaging the WAR above
+    private static final long HEAP_CEILING = 16 * MB;
+
+    // writes about 400 MB, so it only runs when asked to with -Ddiet.largeTests=true
+    private static final String LARGE_TESTS_PROPERTY = "diet.largeTests";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPackageArtifactReplacesLibrariesWithMinimizedJar() throws IOException {
+        final File war = zip(folder.newFile("app.war"),
+                "WEB-INF/", "WEB-INF/web.xml", "WEB-INF/lib/", "WEB-INF/lib/dependency.jar", "lib/other.jar",
+                "index.html");
+        final File minimized = zip(folder.newFile("minimized.jar"), "org/codarama/Used.class");
+
+        final File result = packageArtifact(new WarArtifactPackager(), war, minimized);
+
+        assertEquals(new File(folder.getRoot(), "app_minimized.war"), result);
+        assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/web.xml", "WEB-INF/lib/", "index.html",
+                WarArtifactPackager.MINIMIZED_JAR_ENTRY), entryNames(result));
+        assertArrayEquals(content(war, "index.html"), content(result, "index.html"));
+        assertArrayEquals(ZipFixtures.bytes(minimized), content(result, WarArtifactPackager.MINIMIZED_JAR_ENTRY));
+    }
+
+    @Test
+    public void testPackageArtifactKeepsEntriesOtherThanLibraryJars() throws IOException {
+        final File war = zip(folder.newFile("app.war"),
+                "WEB-INF/library.xml", "WEB-INF/lib/README.txt", "WEB-INF/lib/dependency.jar", "library.html",
+                "libs/app.js");
+        final File minimized = zip(folder.newFile("minimized.jar"), "org/codarama/Used.class");
+
+        final File result = packageArtifact(new WarArtifactPackager(), war, minimized);
+
+        assertEquals(Arrays.asList("WEB-INF/library.xml", "WEB-INF/lib/README.txt", "library.html", "libs/app.js",
+                WarArtifactPackager.MINIMIZED_JAR_ENTRY), entryNames(result));
+
+        // the minimized jar is a library a servlet container loads, a jar right under WEB-INF/lib
+        final String library = WarArtifactPackager.MINIMIZED_JAR_ENTRY;
+        assertTrue(library, library.startsWith("WEB-INF/lib/") && library.indexOf('/', "WEB-INF/lib/".length()) < 0);
+        final File extracted = new File(folder.getRoot(), "minimized-extracted.jar");
+        Files.write(content(result, library), extracted);
+        final JarFile loadable = new JarFile(extracted);
+        try {
+            assertTrue(loadable.getEntry("org/codarama/Used.class") != null);
+        } finally {
+            loadable.close();
+        }
+    }
+
+    @Test
+    public void testPackageArtifactHeapDoesNotDependOnWarSize() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean(LARGE_TESTS_PROPERTY));
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        final File war = largeWar(folder.newFile("large.war"));
+        final File minimized = filled(folder.newFile("minimized.jar"), LARGE_MINIMIZED_JAR_SIZE);
+        final JarFile minimizedJar = new JarFile(minimized, false);
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = allocations.getThreadAllocatedBytes(threadId);
+        final File result;
+        final long allocated;
+        try {
+            result = new WarArtifactPackager().packageArtifact(artifact(war), minimizedJar);
+            allocated = allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        } finally {
+            minimizedJar.close();
+        }
+
+        assertTrue("Repackaging a " + war.length() / MB + " MB WAR allocated " + allocated / MB + " MB",
+                allocated < HEAP_CEILING);
+
+        final ZipFile resultZip = new ZipFile(result);
+        try {
+            assertEquals(LARGE_RESOURCE_COUNT + 1, resultZip.size());
+            assertEquals(minimized.length(), resultZip.getEntry(WarArtifactPackager.MINIMIZED_JAR_ENTRY).getSize());
+        } finally {
+            resultZip.close();
+        }
+    }
+
+    private static File packageArtifact(WarArtifactPackager packager, File war, File minimized) throws IOException {
+        final JarFile minimizedJar = new JarFile(minimized);
+        try {
+            return packager.packageArtifact(artifact(war), minimizedJar);
+        } finally {
+            minimizedJar.close();
+        }
+    }
+
+    private File largeWar(File file) throws IOException {
+        final byte[] payload = new byte[LARGE_ENTRY_SIZE];
+        new Random(42).nextBytes(payload);
+
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), MB));
+        try {
+            out.setLevel(Deflater.NO_COMPRESSION);
+            for (int i = 0; i < LARGE_RESOURCE_COUNT; i++) {
+                out.putNextEntry(new ZipEntry("static/resource-" + i + ".bin"));
+                out.write(payload);
+                out.closeEntry();
+            }
+            for (int i = 0; i < LARGE_LIBRARY_COUNT; i++) {
+                out.putNextEntry(new ZipEntry("WEB-INF/lib/dependency-" + i + ".jar"));
+                out.write(payload);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File filled(File file, int size) throws IOException {
+        // a valid, if not very useful, jar padded up to the requested size by a single stored entry
+        final byte[] payload = new byte[size];
+        new Random(7).nextBytes(payload);
+
+        final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), MB));
+        try {
+            out.setLevel(Deflater.NO_COMPRESSION);
+            out.putNextEntry(new ZipEntry("org/codarama/Padding.class"));
+            out.write(payload);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
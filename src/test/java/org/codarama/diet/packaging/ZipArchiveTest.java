@@ -0,0 +1,101 @@
+package org.codarama.diet.packaging;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.zip;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>
+ * Unit tests for the {@link ZipArchive} and the {@link ZipArchiveWriter}
+ * </p>
+ */
+public class ZipArchiveTest {
+
+    // one more than the end of central directory record can count
+    private static final int ZIP64_ENTRIES = 0x10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesAndReadsArchivesOfMoreEntriesThanZip64Requires() throws IOException {
+        final File large = folder.newFile("large.jar");
+        final ZipArchiveWriter writer = new ZipArchiveWriter(large);
+        try {
+            for (int i = 0; i < ZIP64_ENTRIES; i++) {
+                writer.putStored("org/codarama/Entry" + i + ".class", new byte[]{(byte) i}, 0);
+            }
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+
+        final ZipArchive archive = new ZipArchive(large);
+        try {
+            assertEquals(ZIP64_ENTRIES, archive.entries().size());
+            assertEquals(ZIP64_ENTRIES - 1, archive.names().positionOf("org/codarama/Entry65535.class"));
+        } finally {
+            archive.close();
+        }
+
+        final ZipFile zip = new ZipFile(large);
+        try {
+            assertEquals(ZIP64_ENTRIES, zip.size());
+        } finally {
+            zip.close();
+        }
+        assertArrayEquals(new byte[]{(byte) 65535}, content(large, "org/codarama/Entry65535.class"));
+    }
+
+    @Test
+    public void testRejectsDuplicateEntries() throws IOException {
+        final File source = zip(folder.newFile("source.jar"), "org/codarama/A.class", "org/codarama/B.class");
+        final ZipArchive archive = new ZipArchive(source);
+        try {
+            final ZipArchiveWriter writer = new ZipArchiveWriter(folder.newFile("duplicates.jar"));
+            try {
+                writer.copy(archive, archive.entries().get(0));
+                writer.copy(archive, archive.entries().get(1));
+                writer.copy(archive, archive.entries().get(0));
+                writer.finish();
+                fail("Duplicate entries written");
+            } catch (ZipException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("org/codarama/A.class"));
+            } finally {
+                writer.close();
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testLocatingDataLeavesTheSharedEntryAlone() throws IOException {
+        final File source = zip(folder.newFile("source.jar"), "org/codarama/Used.class");
+        final ZipArchive archive = new ZipArchive(source);
+        try {
+            final ZipArchiveEntry entry = archive.entries().get(0);
+            final long offset = archive.locateData(entry);
+            assertEquals(null, entry.localExtra);
+
+            final ZipArchiveEntry copy = entry.copy();
+            assertEquals(offset, archive.locateData(entry, copy));
+            assertEquals(null, entry.localExtra);
+            assertTrue(copy.localExtra != null);
+        } finally {
+            archive.close();
+        }
+    }
+}
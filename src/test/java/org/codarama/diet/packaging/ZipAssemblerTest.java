@@ -0,0 +1,155 @@
+package org.codarama.diet.packaging;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.codarama.diet.packaging.ZipFixtures.artifact;
+import static org.codarama.diet.packaging.ZipFixtures.bytes;
+import static org.codarama.diet.packaging.ZipFixtures.content;
+import static org.codarama.diet.packaging.ZipFixtures.entryNames;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>
+ * Unit tests for the {@link ZipAssembler}, as used by the packagers
+ * </p>
+ */
+public class ZipAssemblerTest {
+
+    private static final int ENTRIES = 300;
+
+    private static final Map<String, Compression> BY_TYPE = ImmutableMap.of(
+            "class", Compression.BEST,
+            "png", Compression.STORE,
+            "txt", Compression.KEEP);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompressedJarDoesNotDependOnThreadCount() throws IOException {
+        final File minimized = mixed(folder.newFile("minimized.jar"));
+
+        final File sequential = packageJar(minimized, 1, "sequential");
+        final File parallel = packageJar(minimized, 8, "parallel");
+
+        assertArrayEquals(bytes(sequential), bytes(parallel));
+        assertEquals(entryNames(minimized), entryNames(parallel));
+        for (String entry : entryNames(minimized)) {
+            assertArrayEquals(entry, content(minimized, entry), content(parallel, entry));
+        }
+
+        final ZipFile zip = new ZipFile(parallel);
+        try {
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("org/codarama/Entry0.class").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("images/entry1.png").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("docs/entry2.txt").getMethod());
+            // random content does not get any smaller, so it is stored rather than deflated
+            assertEquals(ZipEntry.STORED, zip.getEntry("org/codarama/Random3.class").getMethod());
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testCompressedWarDoesNotDependOnThreadCount() throws IOException {
+        final File war = mixed(folder.newFile("app.war"));
+        final File minimized = mixed(folder.newFile("minimized.jar"));
+        final CompressionPolicy sequential = new CompressionPolicy(Compression.FAST, BY_TYPE, 1);
+        final CompressionPolicy parallel = new CompressionPolicy(Compression.FAST, BY_TYPE, 4);
+
+        final JarFile minimizedJar = new JarFile(minimized);
+        final File first;
+        final File second;
+        try {
+            first = copy(new WarArtifactPackager(sequential).packageArtifact(artifact(war), minimizedJar), "first.war");
+            second = new WarArtifactPackager(parallel).packageArtifact(artifact(war), minimizedJar);
+        } finally {
+            minimizedJar.close();
+        }
+
+        assertArrayEquals(bytes(first), bytes(second));
+        assertArrayEquals(bytes(minimized), content(second, WarArtifactPackager.MINIMIZED_JAR_ENTRY));
+    }
+
+    @Test
+    public void testPolicyChoosesCompressionByExtension() {
+        final CompressionPolicy policy = CompressionPolicy.parse("keep",
+                ImmutableMap.of("CLASS", "best", "png", "Store"), 2);
+
+        assertEquals(Compression.BEST, policy.of("org/codarama/Used.class"));
+        assertEquals(Compression.STORE, policy.of("images/logo.PNG"));
+        assertEquals(Compression.KEEP, policy.of("META-INF/MANIFEST.MF"));
+        assertEquals(Compression.KEEP, policy.of("org.codarama/README"));
+        assertEquals(false, policy.keepsAll());
+        assertEquals(true, CompressionPolicy.KEEP.keepsAll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolicyRejectsUnknownCompression() {
+        CompressionPolicy.parse("fastest", null, 1);
+    }
+
+    private File packageJar(File minimized, int threads, String name) throws IOException {
+        final File current = ZipFixtures.zip(folder.newFile(name + ".jar"), "org/codarama/Unused.class");
+        final JarFile minimizedJar = new JarFile(minimized);
+        try {
+            return new JarArtifactPackager(new CompressionPolicy(Compression.STORE, BY_TYPE, threads))
+                    .packageArtifact(artifact(current), minimizedJar);
+        } finally {
+            minimizedJar.close();
+        }
+    }
+
+    private File copy(File file, String name) throws IOException {
+        final File copy = new File(folder.getRoot(), name);
+        if (!file.renameTo(copy)) {
+            throw new IOException("Unable to move " + file);
+        }
+        return copy;
+    }
+
+    private static File mixed(File file) throws IOException {
+        final Random random = new Random(13);
+        final String[] names = {"org/codarama/Entry%d.class", "images/entry%d.png", "docs/entry%d.txt",
+                "org/codarama/Random%d.class"};
+
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/"));
+            out.closeEntry();
+            for (int i = 0; i < ENTRIES; i++) {
+                final String name = String.format(names[i % names.length], i);
+                final byte[] body = new byte[1024 + random.nextInt(8192)];
+                if (name.contains("Random")) {
+                    random.nextBytes(body);
+                } else {
+                    for (int j = 0; j < body.length; j++) {
+                        body[j] = (byte) ('a' + (j * 7 + i) % 13);
+                    }
+                }
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setTime(1500000000000L);
+                out.putNextEntry(entry);
+                out.write(body);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
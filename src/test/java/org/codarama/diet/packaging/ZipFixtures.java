@@ -0,0 +1,94 @@
+package org.codarama.diet.packaging;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Helpers for building and inspecting the archives used by the packaging tests.
+ */
+final class ZipFixtures {
+
+    private ZipFixtures() {
+    }
+
+    static Artifact artifact(File file) {
+        final String name = file.getName();
+        final String type = name.substring(name.lastIndexOf('.') + 1);
+        final Artifact artifact = new DefaultArtifact("org.codarama", "app", "1.0", Artifact.SCOPE_COMPILE,
+                type, null, new DefaultArtifactHandler(type));
+        artifact.setFile(file);
+        return artifact;
+    }
+
+    static File zip(File file, String... entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write(("content of " + entry).getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static List<String> entryNames(File file) throws IOException {
+        final ZipFile zip = new ZipFile(file);
+        try {
+            final List<String> result = new ArrayList<String>();
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                result.add(entries.nextElement().getName());
+            }
+            return result;
+        } finally {
+            zip.close();
+        }
+    }
+
+    static byte[] content(File file, String entry) throws IOException {
+        final ZipFile zip = new ZipFile(file);
+        try {
+            return read(zip.getInputStream(zip.getEntry(entry)));
+        } finally {
+            zip.close();
+        }
+    }
+
+    static byte[] bytes(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}